@@ -0,0 +1,148 @@
+package textclassifier2.benchmarks;
+
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableFactory;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.model.modelimp.DefClassifiableFactory;
+import textclassifier2.testdata.TestDataReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Russian-like texts for benchmarks. Words are stems made of Cyrillic syllables followed by Russian endings, so the
+ * stemmer has endings to remove, and are drawn with a Zipf-like skew, so a few words repeat much and most are rare as
+ * in real texts. Every text belongs to one of several values of a characteristic and is mixed with keywords of its
+ * value, so classifiers have something to learn. The same seed gives the same corpus.
+ *
+ * @author ripreal
+ */
+public final class SyntheticCorpus {
+
+    public static final String CHARACTERISTIC_NAME = "Результат";
+    private static final String[] SYLLABLES = {"ра", "бо", "та", "ко", "ми", "ле", "ны", "ст", "про", "ва", "де", "за",
+            "пе", "ре", "сто", "гр", "до", "ки", "лу", "че"};
+    private static final String[] ENDINGS = {"", "а", "ы", "ой", "ого", "ами", "ение", "ать", "ил", "ует", "ая", "ому",
+            "ях", "ость", "ивши", "ейший", "ся", "ов"};
+    private static final int DICTIONARY_SIZE = 20_000;
+    private static final int KEYWORDS_PER_VALUE = 30;
+    private static final int WORDS_PER_TEXT = 25;
+
+    private final ClassifiableFactory factory = new DefClassifiableFactory();
+    private final Characteristic characteristic;
+    private final List<CharacteristicValue> values = new ArrayList<>();
+    private final List<ClassifiableText> texts;
+
+    /**
+     * @param textCount  number of texts
+     * @param valueCount number of possible values of the characteristic
+     */
+    public SyntheticCorpus(int textCount, int valueCount, long seed) {
+        Random random = new Random(seed);
+        String[] dictionary = new String[DICTIONARY_SIZE];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = newStem(random);
+        }
+
+        this.characteristic = factory.newCharacteristic(CHARACTERISTIC_NAME);
+        String[][] keywords = new String[valueCount][KEYWORDS_PER_VALUE];
+        for (int k = 0; k < valueCount; k++) {
+            CharacteristicValue value = factory.newCharacteristicValue("значение" + (k + 1), k + 1, characteristic);
+            characteristic.addPossibleValue(value);
+            values.add(value);
+            for (int j = 0; j < KEYWORDS_PER_VALUE; j++) {
+                keywords[k][j] = newStem(random);
+            }
+        }
+
+        this.texts = new ArrayList<>(textCount);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < textCount; i++) {
+            int k = random.nextInt(valueCount);
+            text.setLength(0);
+            for (int j = 0; j < WORDS_PER_TEXT; j++) {
+                String stem = random.nextInt(4) == 0 ? keywords[k][random.nextInt(KEYWORDS_PER_VALUE)] :
+                        dictionary[(int) (Math.pow(random.nextDouble(), 3) * DICTIONARY_SIZE)];
+                text.append(j == 0 ? Character.toUpperCase(stem.charAt(0)) + stem.substring(1) : stem)
+                        .append(ENDINGS[random.nextInt(ENDINGS.length)])
+                        .append(j % 7 == 6 ? ", " : j == WORDS_PER_TEXT - 1 ? "." : " ");
+            }
+            Set<CharacteristicValue> textValues = new HashSet<>();
+            textValues.add(values.get(k));
+            texts.add(factory.newClassifiableText(text.toString(), textValues));
+        }
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * @return words of the texts in order of appearance
+     */
+    public List<String> getWords() {
+        List<String> words = new ArrayList<>();
+        for (ClassifiableText text : texts) {
+            for (String word : text.getText().split("[ ,.]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word.toLowerCase());
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @return reader returning all texts at once, as read from a file
+     */
+    public TestDataReader toReader() {
+        return new TestDataReader() {
+            private boolean hasNext = true;
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public ClassifiableData next() {
+                return readAll();
+            }
+
+            @Override
+            public ClassifiableData readAll() {
+                hasNext = false;
+                Set<Characteristic> characteristics = new HashSet<>();
+                characteristics.add(characteristic);
+                return new ClassifiableData(texts, characteristics, new LinkedHashSet<>(values));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // PRIVATE SECTION
+
+    private static String newStem(Random random) {
+        StringBuilder stem = new StringBuilder();
+        int length = 2 + random.nextInt(3);
+        for (int i = 0; i < length; i++) {
+            stem.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return stem.toString();
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    public ClassifiableFactory getFactory() {return this.factory;}
+
+    public Characteristic getCharacteristic() {return this.characteristic;}
+
+    public List<ClassifiableText> getTexts() {return Collections.unmodifiableList(this.texts);}
+}
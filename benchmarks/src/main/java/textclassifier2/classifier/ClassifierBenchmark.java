@@ -0,0 +1,90 @@
+package textclassifier2.classifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import textclassifier2.benchmarks.SyntheticCorpus;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.NGramStrategy;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classification of texts one at a time and in batches by a built classifier. Units are trained for a few iterations
+ * only, the time of classification does not depend on how well they are trained.
+ *
+ * @author ripreal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassifierBenchmark {
+
+    @Param({"NERO", "LOGISTIC_REGRESSION", "NAIVE_BAYES"})
+    private String unitType;
+
+    @Param({"1000", "10000"})
+    private int textCount;
+
+    @Param({"256"})
+    private int batchSize;
+
+    private Classifier classifier;
+    private List<ClassifiableText> texts;
+    private List<ClassifiableText> batch;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(textCount, 5, 42);
+        NGramStrategy nGramStrategy = NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.FILTERED_UNIGRAM);
+        ClassifierBuilder builder = ClassifierBuilder.fromReader(corpus.toReader(), corpus.getFactory())
+                .withTrainingController(new TrainingController().withMaxIterations(3));
+        switch (unitType) {
+            case "NERO":
+                builder.addNeroClassifierUnit(SyntheticCorpus.CHARACTERISTIC_NAME, nGramStrategy);
+                break;
+            case "LOGISTIC_REGRESSION":
+                builder.addLogisticRegressionClassifierUnit(SyntheticCorpus.CHARACTERISTIC_NAME, nGramStrategy);
+                break;
+            default:
+                builder.addNaiveBayesClassifierUnit(SyntheticCorpus.CHARACTERISTIC_NAME, nGramStrategy);
+        }
+
+        classifier = builder.build();
+        texts = corpus.getTexts();
+        batch = texts.subList(0, Math.min(batchSize, texts.size()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        classifier.shutdown();
+    }
+
+    @Benchmark
+    public List<CharacteristicValue> classify() {
+        ClassifiableText text = texts.get(next);
+        next = next + 1 == texts.size() ? 0 : next + 1;
+        return classifier.classify(text);
+    }
+
+    @Benchmark
+    public List<List<CharacteristicValue>> classifyBatch() {
+        return classifier.classifyBatch(batch);
+    }
+}
@@ -0,0 +1,101 @@
+package textclassifier2.classifier;
+
+import org.encog.engine.network.activation.ActivationSigmoid;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.layers.BasicLayer;
+import org.encog.neural.networks.training.propagation.Propagation;
+import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
+import org.encog.util.concurrency.EngineConcurrency;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import textclassifier2.benchmarks.SyntheticCorpus;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.NGramStrategy;
+import textclassifier2.ngram.VocabularyBuilder;
+import textclassifier2.ngram.VocabularyFeatureExtractor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One RPROP iteration over the training set of a network shaped as the one of {@link NeroClassifierUnit}: hidden
+ * layers of 1/6 and 1/24 of the vocabulary size.
+ *
+ * @author ripreal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrainingBenchmark {
+
+    @Param({"500", "2000"})
+    private int textCount;
+
+    @Param({"1000", "3000"})
+    private int vocabularySize;
+
+    @Param({"1", "4"})
+    private int threadCount;
+
+    private Propagation train;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(textCount, 5, 42);
+        NGramStrategy nGramStrategy = NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.FILTERED_UNIGRAM);
+        VocabularyFeatureExtractor extractor = new VocabularyFeatureExtractor(nGramStrategy,
+                new VocabularyBuilder(nGramStrategy).withMinDocumentFrequency(1).withMaxSize(vocabularySize)
+                        .getVocabulary(corpus.getTexts(), corpus.getFactory()));
+        int inputSize = extractor.getDimension();
+        int outputSize = corpus.getCharacteristic().getPossibleValues().size();
+
+        List<ClassifiableText> texts = corpus.getTexts();
+        int[][] features = extractor.extract(texts);
+        double[][] input = new double[texts.size()][inputSize];
+        double[][] ideal = new double[texts.size()][outputSize];
+        for (int i = 0; i < features.length; i++) {
+            for (int column : features[i]) {
+                input[i][column] = 1;
+            }
+            ideal[i][texts.get(i).getCharacteristicValue(SyntheticCorpus.CHARACTERISTIC_NAME).getOrderNumber() - 1] = 1;
+        }
+
+        BasicNetwork network = new BasicNetwork();
+        network.addLayer(new BasicLayer(null, true, inputSize));
+        network.addLayer(new BasicLayer(new ActivationSigmoid(), true, inputSize / 6));
+        network.addLayer(new BasicLayer(new ActivationSigmoid(), true, inputSize / 6 / 4));
+        network.addLayer(new BasicLayer(new ActivationSigmoid(), false, outputSize));
+        network.getStructure().finalizeStructure();
+        network.reset(42);
+
+        EngineConcurrency.getInstance().setThreadCount(threadCount);
+        train = new ResilientPropagation(network, new BasicMLDataSet(input, ideal));
+        train.setThreadCount(threadCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        train.finishTraining();
+    }
+
+    @Benchmark
+    public double iteration() {
+        train.iteration();
+        return train.getError();
+    }
+}
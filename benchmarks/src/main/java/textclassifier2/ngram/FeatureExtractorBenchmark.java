@@ -0,0 +1,68 @@
+package textclassifier2.ngram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import textclassifier2.benchmarks.SyntheticCorpus;
+import textclassifier2.model.ClassifiableText;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning texts into the input vectors of classifier units. Texts are vectors of their non-zero columns (see
+ * {@link FeatureExtractor}), so this is what the dense vector of words of a text used to be.
+ *
+ * @author ripreal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeatureExtractorBenchmark {
+
+    @Param({"VOCABULARY", "HASHING"})
+    private String extractorType;
+
+    @Param({"1000", "10000"})
+    private int textCount;
+
+    private List<ClassifiableText> texts;
+    private TokenizedCorpus tokenizedCorpus;
+    private FeatureExtractor featureExtractor;
+
+    @Setup
+    public void setUp() {
+        NGramStrategy nGramStrategy = NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.FILTERED_UNIGRAM);
+        SyntheticCorpus corpus = new SyntheticCorpus(textCount, 5, 42);
+        texts = corpus.getTexts();
+        tokenizedCorpus = TokenizedCorpus.tokenize(texts, nGramStrategy, 1);
+        featureExtractor = extractorType.equals("VOCABULARY") ?
+                new VocabularyFeatureExtractor(nGramStrategy, new VocabularyBuilder(nGramStrategy)
+                        .getVocabulary(tokenizedCorpus, corpus.getFactory())) :
+                new HashingFeatureExtractor(nGramStrategy);
+    }
+
+    @Benchmark
+    public void extractText(Blackhole blackhole) {
+        for (ClassifiableText text : texts) {
+            blackhole.consume(featureExtractor.extract(text.getText()));
+        }
+    }
+
+    @Benchmark
+    public int[][] extractTokenizedCorpus() {
+        return featureExtractor.extract(tokenizedCorpus);
+    }
+}
@@ -0,0 +1,61 @@
+package textclassifier2.ngram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import textclassifier2.benchmarks.SyntheticCorpus;
+import textclassifier2.model.ClassifiableText;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting of texts into n-grams, one text at a time as classification does and the whole corpus at once as
+ * training does.
+ *
+ * @author ripreal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NGramBenchmark {
+
+    @Param({"UNIGRAM", "FILTERED_UNIGRAM", "BIGRAM"})
+    private NGramStrategy.NGRAM_TYPES nGramType;
+
+    @Param({"1000", "10000"})
+    private int textCount;
+
+    private NGramStrategy nGramStrategy;
+    private List<ClassifiableText> texts;
+
+    @Setup
+    public void setUp() {
+        nGramStrategy = NGramStrategy.getNGramStrategy(nGramType);
+        texts = new SyntheticCorpus(textCount, 5, 42).getTexts();
+    }
+
+    @Benchmark
+    public void getNGram(Blackhole blackhole) {
+        for (ClassifiableText text : texts) {
+            blackhole.consume(nGramStrategy.getNGram(text.getText()));
+        }
+    }
+
+    @Benchmark
+    public TokenizedCorpus tokenizeCorpus() {
+        return TokenizedCorpus.tokenize(texts, nGramStrategy, 1);
+    }
+}
@@ -0,0 +1,51 @@
+package textclassifier2.ngram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import textclassifier2.benchmarks.SyntheticCorpus;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stemming of all words of a corpus. Words repeat as in real texts, so after the first iteration most of them are
+ * taken from the cache of the stemmer, which is what a long running classifier sees.
+ *
+ * @author ripreal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PorterStemmerBenchmark {
+
+    @Param({"1000", "10000"})
+    private int textCount;
+
+    private String[] words;
+
+    @Setup
+    public void setUp() {
+        List<String> corpusWords = new SyntheticCorpus(textCount, 5, 42).getWords();
+        words = corpusWords.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void doStem(Blackhole blackhole) {
+        for (String word : words) {
+            blackhole.consume(PorterStemmer.doStem(word));
+        }
+    }
+}
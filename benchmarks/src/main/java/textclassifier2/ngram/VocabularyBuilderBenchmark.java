@@ -0,0 +1,64 @@
+package textclassifier2.ngram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import textclassifier2.benchmarks.SyntheticCorpus;
+import textclassifier2.model.VocabularyWord;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of a vocabulary from texts, tokenization included, and from an already tokenized corpus, which is what
+ * {@link textclassifier2.classifier.ClassifierBuilder} does.
+ *
+ * @author ripreal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VocabularyBuilderBenchmark {
+
+    @Param({"FILTERED_UNIGRAM", "BIGRAM"})
+    private NGramStrategy.NGRAM_TYPES nGramType;
+
+    @Param({"1000", "10000"})
+    private int textCount;
+
+    @Param({"1", "4"})
+    private int threadCount;
+
+    private SyntheticCorpus corpus;
+    private TokenizedCorpus tokenizedCorpus;
+    private VocabularyBuilder vocabularyBuilder;
+
+    @Setup
+    public void setUp() {
+        NGramStrategy nGramStrategy = NGramStrategy.getNGramStrategy(nGramType);
+        corpus = new SyntheticCorpus(textCount, 5, 42);
+        tokenizedCorpus = TokenizedCorpus.tokenize(corpus.getTexts(), nGramStrategy, threadCount);
+        vocabularyBuilder = new VocabularyBuilder(nGramStrategy).withThreadCount(threadCount);
+    }
+
+    @Benchmark
+    public List<VocabularyWord> getVocabulary() {
+        return vocabularyBuilder.getVocabulary(corpus.getTexts(), corpus.getFactory());
+    }
+
+    @Benchmark
+    public List<VocabularyWord> getVocabularyOfTokenizedCorpus() {
+        return vocabularyBuilder.getVocabulary(tokenizedCorpus, corpus.getFactory());
+    }
+}
@@ -0,0 +1,180 @@
+package textclassifier2.server;
+
+import textclassifier2.benchmarks.SyntheticCorpus;
+import textclassifier2.classifier.Classifier;
+import textclassifier2.classifier.ClassifierBuilder;
+import textclassifier2.classifier.TrainingController;
+import textclassifier2.metrics.LatencyHistogram;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.NGramStrategy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load generator for {@link ClassificationServer}: every client thread sends a classify request, waits for
+ * the response and sends the next one, for the given time. Prints throughput and latency percentiles of answered
+ * requests, the number of shed ones and what the server reports on /health. JMH measures code in a loop of one JVM and
+ * does not fit load over HTTP, so this is a plain program run from the benchmarks jar:
+ * <p>
+ * {@code java -cp benchmarks.jar textclassifier2.server.ServerLoadGenerator <clients> <seconds> <texts per request> [url]}
+ * <p>
+ * Without url a server with a naive Bayes unit trained on a synthetic corpus is started in the same JVM.
+ *
+ * @author ripreal
+ */
+public final class ServerLoadGenerator {
+
+    private final URL classifyUrl;
+    private final URL healthUrl;
+    private final List<String> texts;
+    private final int textsPerRequest;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder answered = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    // CONSTRUCTORS
+
+    private ServerLoadGenerator(String baseUrl, List<String> texts, int textsPerRequest) throws IOException {
+        this.classifyUrl = new URL(baseUrl + "/classify");
+        this.healthUrl = new URL(baseUrl + "/health");
+        this.texts = texts;
+        this.textsPerRequest = textsPerRequest;
+    }
+
+    // CLIENT SECTION
+
+    public static void main(String... args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int textsPerRequest = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        if (clients < 1 || seconds < 1 || textsPerRequest < 1)
+            throw new IllegalArgumentException("clients, seconds and texts per request should be positive");
+
+        SyntheticCorpus corpus = new SyntheticCorpus(2000, 5, 42);
+        List<String> texts = new ArrayList<>();
+        for (ClassifiableText text : corpus.getTexts()) {
+            texts.add(text.getText());
+        }
+
+        Classifier classifier = null;
+        ClassificationServer server = null;
+        String baseUrl;
+        if (args.length > 3) {
+            baseUrl = args[3];
+        } else {
+            classifier = ClassifierBuilder.fromReader(corpus.toReader(), corpus.getFactory())
+                    .withTrainingController(new TrainingController().withMaxIterations(3))
+                    .addNaiveBayesClassifierUnit(SyntheticCorpus.CHARACTERISTIC_NAME,
+                            NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.FILTERED_UNIGRAM))
+                    .build();
+            server = new ClassificationServer(classifier, corpus.getFactory()).withPort(0).start();
+            baseUrl = "http://localhost:" + server.getPort();
+        }
+
+        try {
+            new ServerLoadGenerator(baseUrl, texts, textsPerRequest).run(clients, TimeUnit.SECONDS.toNanos(seconds));
+        } finally {
+            if (server != null) {
+                server.stop(1, TimeUnit.SECONDS);
+                classifier.shutdown();
+            }
+        }
+    }
+
+    // PRIVATE SECTION
+
+    private void run(int clients, long durationNanos) throws Exception {
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> sendUntil(end), "load-client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%d clients, %d text(s) per request, %.1f s", clients, textsPerRequest, elapsed));
+        System.out.println(String.format("answered %d (%.1f requests/s, %.1f texts/s), shed %d, failed %d",
+                answered.sum(), answered.sum() / elapsed, answered.sum() * textsPerRequest / elapsed,
+                shed.sum(), failed.sum()));
+        System.out.println(String.format("latency us: mean %.0f, p50 %.0f, p90 %.0f, p99 %.0f, p99.9 %.0f, max %.0f",
+                latency.getMean(), latency.get50thPercentile(), latency.get90thPercentile(),
+                latency.get99thPercentile(), latency.get999thPercentile(), latency.getMax()));
+        System.out.println("server: " + get(healthUrl));
+    }
+
+    private void sendUntil(long end) {
+        byte[] buffer = new byte[8192];
+        while (System.nanoTime() < end) {
+            byte[] request = newRequest();
+            long sent = System.nanoTime();
+            try {
+                HttpURLConnection connection = (HttpURLConnection) classifyUrl.openConnection();
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(request);
+                }
+                int status = connection.getResponseCode();
+                // responses are read to the end, so connections are kept alive and reused
+                try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                    while (in != null && in.read(buffer) != -1) {
+                    }
+                }
+
+                if (status == 200) {
+                    latency.record(System.nanoTime() - sent);
+                    answered.increment();
+                } else if (status == 503) {
+                    shed.increment();
+                } else {
+                    failed.increment();
+                }
+            } catch (IOException e) {
+                failed.increment();
+            }
+        }
+    }
+
+    private byte[] newRequest() {
+        StringBuilder json = new StringBuilder("{\"texts\":[");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < textsPerRequest; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            JsonCodec.appendString(json, texts.get(random.nextInt(texts.size())));
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String get(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
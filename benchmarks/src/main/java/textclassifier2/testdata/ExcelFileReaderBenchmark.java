@@ -0,0 +1,95 @@
+package textclassifier2.testdata;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import textclassifier2.benchmarks.SyntheticCorpus;
+import textclassifier2.model.ClassifiableFactory;
+import textclassifier2.model.ClassifiableText;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading of an xlsx training set: all texts at once and chunk by chunk. The sheet is written once per trial from a
+ * synthetic corpus, texts in the first column and values of the characteristic in the second.
+ *
+ * @author ripreal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExcelFileReaderBenchmark {
+
+    @Param({"1000", "10000"})
+    private int textCount;
+
+    private File file;
+    private ClassifiableFactory factory;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(textCount, 5, 42);
+        factory = corpus.getFactory();
+        file = File.createTempFile("texts", ".xlsx");
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook();
+        try (OutputStream stream = new FileOutputStream(file)) {
+            org.apache.poi.ss.usermodel.Sheet sheet = workbook.createSheet();
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Текст");
+            header.createCell(1).setCellValue(SyntheticCorpus.CHARACTERISTIC_NAME);
+
+            List<ClassifiableText> texts = corpus.getTexts();
+            for (int i = 0; i < texts.size(); i++) {
+                Row row = sheet.createRow(i + 1);
+                row.createCell(0).setCellValue(texts.get(i).getText());
+                row.createCell(1).setCellValue(
+                        texts.get(i).getCharacteristicValue(SyntheticCorpus.CHARACTERISTIC_NAME).getValue());
+            }
+            workbook.write(stream);
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public TestDataReader.ClassifiableData readAll() throws Exception {
+        try (ExcelFileReader reader = new ExcelFileReader(file, 1, factory)) {
+            return reader.readAll();
+        }
+    }
+
+    @Benchmark
+    public void readChunks(Blackhole blackhole) throws Exception {
+        try (ExcelFileReader reader = new ExcelFileReader(file, 1, factory, 1000)) {
+            while (reader.hasNext()) {
+                blackhole.consume(reader.next());
+            }
+        }
+    }
+}
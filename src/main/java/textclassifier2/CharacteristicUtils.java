@@ -1,8 +1,14 @@
 package textclassifier2;
 
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableText;
+
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 public class CharacteristicUtils {
@@ -15,4 +21,55 @@ public class CharacteristicUtils {
             return null;
         }
     }
+
+    /**
+     * @return snapshot of possible values of the characteristic indexed by order number - 1, so decoding of
+     * classification results neither scans nor iterates the shared value set
+     */
+    public static CharacteristicValue[] getValuesByOrder(Characteristic characteristic) {
+        CharacteristicValue[] values = new CharacteristicValue[characteristic.getPossibleValues().size()];
+
+        for (CharacteristicValue c : characteristic.getPossibleValues()) {
+            int orderNumber = c.getOrderNumber();
+            if (orderNumber >= 1 && orderNumber <= values.length && values[orderNumber - 1] == null) {
+                values[orderNumber - 1] = c;
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * @return order numbers of the values indexed by order number - 1, keyed by the values themselves
+     */
+    public static Map<String, Integer> getOrderNumbersByValue(CharacteristicValue[] valuesByOrder) {
+        Map<String, Integer> orderNumbers = new HashMap<>();
+        for (int i = 0; i < valuesByOrder.length; i++) {
+            if (valuesByOrder[i] != null) {
+                orderNumbers.put(valuesByOrder[i].getValue(), i + 1);
+            }
+        }
+        return orderNumbers;
+    }
+
+    /**
+     * Finds the order number a classifier unit gives the characteristic value of the text. The value is looked up by
+     * its name: the order number the text carries is given by the reader it came from, which numbers values as they
+     * appear in its file, so texts of another file may number the same values differently.
+     *
+     * @param orderNumbers order numbers of the unit, see {@link #getOrderNumbersByValue(CharacteristicValue[])}
+     * @throws IllegalArgumentException if the text has no value of the characteristic or the unit does not know it
+     */
+    public static int getOrderNumber(ClassifiableText classifiableText, Characteristic characteristic,
+                                     Map<String, Integer> orderNumbers) {
+        CharacteristicValue value = classifiableText.getCharacteristicValue(characteristic.getName());
+        if (value == null)
+            throw new IllegalArgumentException("text has no value of '" + characteristic.getName() + "' characteristic");
+
+        Integer orderNumber = orderNumbers.get(value.getValue());
+        if (orderNumber == null)
+            throw new IllegalArgumentException("value '" + value.getValue() + "' is not a possible value of '"
+                    + characteristic.getName() + "' characteristic the classifier was built with");
+        return orderNumber;
+    }
 }
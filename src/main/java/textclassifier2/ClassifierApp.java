@@ -1,32 +1,61 @@
 package textclassifier2;
 
 
+import textclassifier2.classifier.BulkClassificationReport;
+import textclassifier2.classifier.BulkClassifier;
 import textclassifier2.classifier.Classifier;
 import textclassifier2.classifier.ClassifierBuilder;
+import textclassifier2.classifier.QuantizedNeroClassifierUnit;
 import textclassifier2.model.CharacteristicValue;
 import textclassifier2.model.ClassifiableText;
 import textclassifier2.model.modelimp.DefClassifiableFactory;
 import textclassifier2.ngram.NGramStrategy;
+import textclassifier2.server.ClassificationServer;
+import textclassifier2.testdata.DelimitedFileReader;
 import textclassifier2.testdata.ExcelFileReader;
+import textclassifier2.testdata.JsonLinesFileReader;
+import textclassifier2.testdata.TestDataReader;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class ClassifierApp {
 
     private final static String CONFIG_PATH = "./config/config.ini";
-    private final static Config CONFIG = new Config(CONFIG_PATH);
+    private final static String SERVE_COMMAND = "serve";
+    private final static String BULK_COMMAND = "bulk";
+    private final static String QUANTIZE_COMMAND = "quantize";
 
-    public static void main(String... args) throws IOException {
+    public static void main(String... args) throws Exception {
+        if (args.length > 0 && args[0].equals(SERVE_COMMAND)) {
+            serve(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(BULK_COMMAND)) {
+            bulk(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(QUANTIZE_COMMAND)) {
+            quantize(args);
+            return;
+        }
+
+        Config config = new Config(CONFIG_PATH);
+        if (!config.isLoaded()) {
+            System.out.println(String.format(
+                "Config file on %s is not found or it is empty.", CONFIG_PATH));
+            System.exit(1);
+        }
 
         Classifier classifier = ClassifierBuilder
-                .fromExcel(new File(CONFIG.getTestDataPath()), new DefClassifiableFactory())
+                .fromExcel(new File(config.getTestDataPath()), new DefClassifiableFactory())
                 //.addNeroClassifierUnit("Длительность", NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.FILTERED_BIGRAM))
                 .addNeroClassifierUnit("Результат", NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.FILTERED_UNIGRAM))
                 .build();
 
-        ExcelFileReader reader = new ExcelFileReader(new File(CONFIG.getTestDataPath()), 1, new DefClassifiableFactory());
+        ExcelFileReader reader = new ExcelFileReader(new File(config.getTestDataPath()), 1, new DefClassifiableFactory());
         ClassifiableText text = reader.toClassifiableTexts().get(0);
         List<CharacteristicValue> charact = classifier.classify(text);
         System.out.println(String.format("Classified text %s", text.getText()));
@@ -34,11 +63,79 @@ public class ClassifierApp {
 
     }
 
-    static {
-        if (!CONFIG.isLoaded()) {
+    // example:
+    // java -jar textclassifier2.jar serve ./models 8080
+    private static void serve(String... args) throws IOException {
+        if (args.length < 2) {
+            System.out.println(String.format("Usage: %s <models directory> [port]", SERVE_COMMAND));
+            System.exit(1);
+        }
+
+        Classifier classifier = ClassifierBuilder.fromSavedModels(new File(args[1]), new DefClassifiableFactory());
+        ClassificationServer server = new ClassificationServer(classifier, new DefClassifiableFactory())
+                .withPort(args.length > 2 ? Integer.parseInt(args[2]) : 8080)
+                .start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(5, TimeUnit.SECONDS);
+            classifier.shutdown();
+        }));
+        System.out.println(String.format("Serving classifier on port %d", server.getPort()));
+    }
+
+    // example:
+    // java -jar textclassifier2.jar bulk ./models archive.xlsx labelled.xlsx
+    // java -jar textclassifier2.jar bulk ./models archive.csv labelled.csv 250000
+    private static void bulk(String... args) throws IOException {
+        if (args.length < 4) {
+            System.out.println(String.format("Usage: %s <models directory> <input> <output> [start row]", BULK_COMMAND));
+            System.exit(1);
+        }
+
+        Classifier classifier = ClassifierBuilder.fromSavedModels(new File(args[1]), new DefClassifiableFactory());
+        try {
+            BulkClassificationReport report = new BulkClassifier(classifier, new DefClassifiableFactory())
+                    .withStartRow(args.length > 4 ? Long.parseLong(args[4]) : 0)
+                    .classify(new File(args[2]), new File(args[3]));
+            System.out.println(report);
+        } finally {
+            classifier.shutdown();
+        }
+    }
+
+    // example:
+    // java -jar textclassifier2.jar quantize ./models held-out.xlsx ./models-int8
+    // java -jar textclassifier2.jar quantize ./models held-out.csv ./models-float32 float32 0.005
+    private static void quantize(String... args) throws Exception {
+        if (args.length < 4) {
             System.out.println(String.format(
-                "Config file on %s is not found or it is empty.", CONFIG_PATH));
+                    "Usage: %s <models directory> <held out texts> <output directory> [int8|float32] [max accuracy loss]",
+                    QUANTIZE_COMMAND));
             System.exit(1);
         }
+
+        File heldOut = new File(args[2]);
+        String name = heldOut.getName().toLowerCase();
+        List<ClassifiableText> heldOutTexts;
+        try (TestDataReader reader = name.endsWith(".xlsx") ? new ExcelFileReader(heldOut, 1, new DefClassifiableFactory()) :
+                name.endsWith(".jsonl") || name.endsWith(".json") ? new JsonLinesFileReader(heldOut, new DefClassifiableFactory()) :
+                name.endsWith(".tsv") ? new DelimitedFileReader(heldOut, new DefClassifiableFactory(), '\t') :
+                new DelimitedFileReader(heldOut, new DefClassifiableFactory())) {
+            heldOutTexts = reader.readAll().getClassifiableTexts();
+        }
+
+        File outDir = new File(args[3]);
+        if (!outDir.isDirectory() && !outDir.mkdirs())
+            throw new IOException("cannot create directory " + outDir);
+
+        Classifier classifier = ClassifierBuilder.fromSavedModels(new File(args[1]), new DefClassifiableFactory());
+        try {
+            List<String> quantized = classifier.quantize(
+                    QuantizedNeroClassifierUnit.Precision.valueOf((args.length > 4 ? args[4] : "int8").toUpperCase()),
+                    heldOutTexts, args.length > 5 ? Double.parseDouble(args[5]) : 0.01);
+            classifier.saveClassifiers(outDir);
+            System.out.println(String.format("Quantized %s", quantized));
+        } finally {
+            classifier.shutdown();
+        }
     }
 }
@@ -0,0 +1,52 @@
+package textclassifier2.classifier;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a run of {@link BulkClassifier}.
+ *
+ * @author ripreal
+ */
+public final class BulkClassificationReport {
+
+    private final long startRow;
+    private final long rowCount;
+    private final long elapsedNanos;
+
+    // CONSTRUCTORS
+
+    BulkClassificationReport(long startRow, long rowCount, long elapsedNanos) {
+        this.startRow = startRow;
+        this.rowCount = rowCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * @return row a run continuing this one starts from, see {@link BulkClassifier#withStartRow(long)}
+     */
+    public long getNextRow() {
+        return startRow + rowCount;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowCount * 1e9 / elapsedNanos;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    @Override
+    public String toString() {
+        return String.format("Classified %d rows from row %d in %.1f s, %.0f rows/s", rowCount, startRow,
+                elapsedNanos / 1e9, getRowsPerSecond());
+    }
+
+    public long getStartRow() {return this.startRow;}
+
+    public long getRowCount() {return this.rowCount;}
+}
@@ -0,0 +1,390 @@
+package textclassifier2.classifier;
+
+import org.slf4j.Logger;
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableFactory;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.FeatureExtractor;
+import textclassifier2.testdata.DelimitedFileReader;
+import textclassifier2.testdata.ExcelFileReader;
+import textclassifier2.testdata.JsonLinesFileReader;
+import textclassifier2.testdata.ResultWriter;
+import textclassifier2.testdata.TestDataReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Classifies every text of a file and writes them with the values they were classified as into another file, for
+ * re-labelling archives too large to hold in memory. Input is xlsx, csv, tsv or JSON lines as the readers of
+ * {@link textclassifier2.testdata} read them, output is chosen by extension the same way, see {@link ResultWriter}.
+ * <p>
+ * Work runs as a pipeline of stages connected by bounded queues of chunks of texts:
+ * <ul>
+ * <li>one thread reads texts and deals them into chunks</li>
+ * <li>tokenizer threads extract features of chunks, see {@link Classifier#extractFeatures(List)}</li>
+ * <li>inference threads classify chunks by their features, see {@link Classifier#classifyFeatures(List, Map)}</li>
+ * <li>one thread writes chunks in the order of the input</li>
+ * </ul>
+ * Reading and writing overlap classification instead of taking turns with it, and the number of chunks taken from
+ * the input and not yet written is bounded, so heap use stays flat whatever the size of the input.
+ * <p>
+ * A run can be resumed: rows before {@link #withStartRow(long)} are read but not classified, and csv, tsv and JSON
+ * lines output is appended to then. An xlsx file cannot be appended to, so rows of a resumed run go into another xlsx
+ * file, an existing one is refused rather than overwritten. Rows are counted from the first text of the input, the
+ * header is not a row. The output of a failed run ends with the row before the one its exception tells to resume from:
+ * csv, tsv and JSON lines output is cut back to the last chunk written whole.
+ *
+ * @author ripreal
+ */
+public final class BulkClassifier {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(BulkClassifier.class);
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    // bytes parsed by a text file reader per read, a few thousand texts
+    private static final int READ_RANGE_SIZE = 1 << 20;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Classifier classifier;
+    private final ClassifiableFactory textFactory;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int queueCapacity = 4;
+    private int tokenizerCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int inferenceCount = Math.max(1, Runtime.getRuntime().availableProcessors() - tokenizerCount);
+    private long startRow;
+
+    // CONSTRUCTORS
+
+    /**
+     * @param textFactory factory to create texts read from input with
+     */
+    public BulkClassifier(Classifier classifier, ClassifiableFactory textFactory) {
+        if (classifier == null || textFactory == null)
+            throw new IllegalArgumentException();
+        this.classifier = classifier;
+        this.textFactory = textFactory;
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * @param chunkSize texts passed between stages at once, {@value #DEFAULT_CHUNK_SIZE} by default
+     */
+    public BulkClassifier withChunkSize(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize should be positive");
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * @param queueCapacity chunks waiting between two stages, 4 by default
+     */
+    public BulkClassifier withQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("queueCapacity should be positive");
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * @param tokenizerCount threads extracting features, half of the processors by default
+     * @param inferenceCount threads classifying by features, the other half by default
+     */
+    public BulkClassifier withThreadCount(int tokenizerCount, int inferenceCount) {
+        if (tokenizerCount < 1 || inferenceCount < 1)
+            throw new IllegalArgumentException("thread counts should be positive");
+        this.tokenizerCount = tokenizerCount;
+        this.inferenceCount = inferenceCount;
+        return this;
+    }
+
+    /**
+     * @param startRow rows of the input to skip, {@link BulkClassificationReport#getNextRow()} of an earlier run or
+     *                 the row given by the exception of a failed one
+     */
+    public BulkClassifier withStartRow(long startRow) {
+        if (startRow < 0)
+            throw new IllegalArgumentException("startRow should not be negative");
+        this.startRow = startRow;
+        return this;
+    }
+
+    /**
+     * @throws IOException              if the input cannot be read or the output written; the message tells the row to
+     *                                  resume from
+     * @throws IllegalArgumentException if a resumed run is to write into an existing xlsx file
+     */
+    public BulkClassificationReport classify(File input, File output) throws IOException {
+        if (input == null || output == null)
+            throw new IllegalArgumentException();
+
+        List<Characteristic> characteristics = classifier.getCharacteristics();
+        List<String> names = new ArrayList<>(characteristics.size());
+        characteristics.forEach(characteristic -> names.add(characteristic.getName()));
+
+        long start = System.nanoTime();
+        log.info("Classifying " + input + " into " + output + " from row " + startRow + ". Wait...");
+        TestDataReader reader = openReader(input);
+        Pipeline pipeline = new Pipeline(reader, output, characteristics, start);
+        try (ResultWriter writer = ResultWriter.forFile(output, names, startRow > 0)) {
+            pipeline.run(writer);
+        } catch (IOException e) {
+            // the writer is closed by now and may have written rows after the row to resume from
+            try {
+                pipeline.cutUnflushed();
+            } catch (IOException cutFailure) {
+                e.addSuppressed(cutFailure);
+            }
+            throw e;
+        } finally {
+            try {
+                reader.close();
+            } catch (Exception e) {
+                log.warn("Reader of " + input + " was not closed", e);
+            }
+        }
+
+        BulkClassificationReport report = new BulkClassificationReport(startRow, pipeline.written, System.nanoTime() - start);
+        log.info(report.toString());
+        return report;
+    }
+
+    // PRIVATE SECTION
+
+    private TestDataReader openReader(File input) {
+        String name = input.getName().toLowerCase();
+        if (name.endsWith(".xlsx")) {
+            return new ExcelFileReader(input, 1, textFactory, chunkSize);
+        } else if (name.endsWith(".tsv")) {
+            return new DelimitedFileReader(input, textFactory, '\t', 1, READ_RANGE_SIZE);
+        } else if (name.endsWith(".csv")) {
+            return new DelimitedFileReader(input, textFactory, ',', 1, READ_RANGE_SIZE);
+        } else if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return new JsonLinesFileReader(input, textFactory, JsonLinesFileReader.DEFAULT_TEXT_FIELD, 1, READ_RANGE_SIZE);
+        }
+        throw new IllegalArgumentException("input should be an xlsx, csv, tsv or jsonl file");
+    }
+
+    // state of one run
+    private final class Pipeline {
+
+        private final Chunk end = new Chunk(-1, Collections.emptyList());
+        private final TestDataReader reader;
+        private final File output;
+        // xlsx is written on close with every row it was given, other outputs get rows as buffers are flushed
+        private final boolean keepsAllRows;
+        private final Map<Characteristic, Integer> columns = new HashMap<>();
+        private final long start;
+        private final BlockingQueue<Chunk> tokenizeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        private final BlockingQueue<Chunk> inferenceQueue = new ArrayBlockingQueue<>(queueCapacity);
+        private final BlockingQueue<Chunk> writeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        // chunks read and not written yet, the writer keeps chunks coming out of order until their turn
+        private final Semaphore inFlight = new Semaphore(queueCapacity * 3 + tokenizerCount + inferenceCount + 2);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final List<Thread> threads = new ArrayList<>();
+        private ResultWriter writer;
+        // rows the output keeps if the run fails, by the writer thread
+        private long written;
+        // length of the output after the last flushed chunk, by the writer thread
+        private long flushedLength = -1;
+
+        Pipeline(TestDataReader reader, File output, List<Characteristic> characteristics, long start) {
+            this.reader = reader;
+            this.output = output;
+            this.keepsAllRows = output.getName().toLowerCase().endsWith(".xlsx");
+            this.start = start;
+            for (int i = 0; i < characteristics.size(); i++) {
+                columns.put(characteristics.get(i), i);
+            }
+        }
+
+        void run(ResultWriter writer) throws IOException {
+            this.writer = writer;
+            flushedLength = output.length();
+            threads.add(new Thread(() -> runStage(this::read), "bulk-reader"));
+            AtomicInteger tokenizers = new AtomicInteger(tokenizerCount);
+            for (int i = 0; i < tokenizerCount; i++) {
+                threads.add(new Thread(() -> runStage(() -> transform(tokenizeQueue, inferenceQueue, tokenizers,
+                        chunk -> chunk.features = classifier.extractFeatures(chunk.texts))), "bulk-tokenizer-" + i));
+            }
+            AtomicInteger inferences = new AtomicInteger(inferenceCount);
+            for (int i = 0; i < inferenceCount; i++) {
+                threads.add(new Thread(() -> runStage(() -> transform(inferenceQueue, writeQueue, inferences,
+                        chunk -> chunk.values = classifier.classifyFeatures(chunk.texts, chunk.features))), "bulk-inference-" + i));
+            }
+            threads.add(new Thread(() -> runStage(this::write), "bulk-writer"));
+
+            threads.forEach(Thread::start);
+            boolean interrupted = false;
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        fail(e);
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            Throwable cause = failure.get();
+            if (cause != null)
+                throw new IOException("Bulk classification failed, resume from row " + (startRow + written), cause);
+        }
+
+        private void read() throws IOException, InterruptedException {
+            long row = 0;
+            long sequence = 0;
+            List<ClassifiableText> texts = new ArrayList<>(chunkSize);
+            while (reader.hasNext()) {
+                for (ClassifiableText text : reader.next().getClassifiableTexts()) {
+                    if (row++ < startRow) {
+                        continue;
+                    }
+                    texts.add(text);
+                    if (texts.size() == chunkSize) {
+                        inFlight.acquire();
+                        tokenizeQueue.put(new Chunk(sequence++, texts));
+                        texts = new ArrayList<>(chunkSize);
+                    }
+                }
+            }
+            if (!texts.isEmpty()) {
+                inFlight.acquire();
+                tokenizeQueue.put(new Chunk(sequence, texts));
+            }
+            tokenizeQueue.put(end);
+        }
+
+        // takes chunks until the end, the last thread of the stage passes the end on
+        private void transform(BlockingQueue<Chunk> in, BlockingQueue<Chunk> out, AtomicInteger running,
+                               ChunkStep step) throws InterruptedException {
+            while (true) {
+                Chunk chunk = in.take();
+                if (chunk == end) {
+                    // for the other threads of the stage
+                    in.put(end);
+                    break;
+                }
+                step.apply(chunk);
+                out.put(chunk);
+            }
+            if (running.decrementAndGet() == 0) {
+                out.put(end);
+            }
+        }
+
+        private void write() throws IOException, InterruptedException {
+            Map<Long, Chunk> waiting = new HashMap<>();
+            long next = 0;
+            long lastProgress = start;
+            while (true) {
+                Chunk chunk = writeQueue.take();
+                if (chunk == end) {
+                    return;
+                }
+                waiting.put(chunk.sequence, chunk);
+                for (Chunk ready; (ready = waiting.remove(next)) != null; next++) {
+                    writeChunk(ready);
+                    inFlight.release();
+
+                    long now = System.nanoTime();
+                    if (now - lastProgress > PROGRESS_INTERVAL_NANOS) {
+                        lastProgress = now;
+                        log.info(String.format("Classified %d rows, %.0f rows/s. Wait...", written,
+                                written * 1e9 / (now - start)));
+                    }
+                }
+            }
+        }
+
+        private void writeChunk(Chunk chunk) throws IOException {
+            String[] row = new String[columns.size()];
+            for (int i = 0; i < chunk.texts.size(); i++) {
+                Arrays.fill(row, null);
+                for (CharacteristicValue value : chunk.values.get(i)) {
+                    Integer column = columns.get(value.getCharacteristic());
+                    // the first unit of a characteristic has the say
+                    if (column != null && row[column] == null) {
+                        row[column] = value.getValue();
+                    }
+                }
+                writer.write(chunk.texts.get(i).getText(), Arrays.asList(row));
+                if (keepsAllRows) {
+                    written++;
+                }
+            }
+            writer.flush();
+            if (!keepsAllRows) {
+                written += chunk.texts.size();
+                flushedLength = output.length();
+            }
+        }
+
+        // a buffer filled up in the middle of a chunk has put a part of it into the output, the part is cut off for
+        // the output to end with the row to resume from
+        void cutUnflushed() throws IOException {
+            if (keepsAllRows || flushedLength < 0 || output.length() <= flushedLength) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(flushedLength);
+            }
+        }
+
+        private void runStage(StageTask task) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                // an InterruptedException comes from a stage stopped by the failure of another one and is ignored
+                fail(e);
+            }
+        }
+
+        // the first failure stops all stages
+        private void fail(Throwable e) {
+            if (failure.compareAndSet(null, e)) {
+                threads.forEach(Thread::interrupt);
+            }
+        }
+    }
+
+    private interface StageTask {
+        void run() throws Exception;
+    }
+
+    private interface ChunkStep {
+        void apply(Chunk chunk);
+    }
+
+    private static final class Chunk {
+        private final long sequence;
+        private final List<ClassifiableText> texts;
+        private Map<FeatureExtractor, int[][]> features;
+        private List<List<CharacteristicValue>> values;
+
+        Chunk(long sequence, List<ClassifiableText> texts) {
+            this.sequence = sequence;
+            this.texts = texts;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package textclassifier2.classifier;
+
+import org.slf4j.Logger;
+import textclassifier2.CharacteristicUtils;
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.FeatureExtractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Classifies texts of one characteristic with a fast unit first and falls through to a slow unit only when the fast
+ * one is not confident. The fast unit is confident when its best score exceeds the second best by at least the margin
+ * (see {@link ClassifierUnit#score(int[])}), then its answer is returned and the slow unit is not run at all.
+ * <p>
+ * Margin 0 never falls through, the greater the margin the more texts fall through. The share of texts that fell
+ * through is counted, so the margin can be tuned between latency and accuracy, see {@link #getFallthroughRate()}.
+ * <p>
+ * Both units have to share one feature extractor, so a text is turned into features once for both of them. Both are
+ * built and updated together.
+ *
+ * @author ripreal
+ */
+public class CascadeClassifierUnit implements ClassifierUnit {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(CascadeClassifierUnit.class);
+    private final ClassifierUnit fastUnit;
+    private final ClassifierUnit slowUnit;
+    private final double margin;
+    // possible characteristic values indexed by order number - 1
+    private final CharacteristicValue[] valuesByOrder;
+    private final LongAdder classified = new LongAdder();
+    private final LongAdder fellThrough = new LongAdder();
+
+    // CONSTRUCTORS
+
+    /**
+     * @param fastUnit unit to ask first, for example {@link LogisticRegressionClassifierUnit}
+     * @param slowUnit unit to ask when the fast unit is not confident, for example {@link NeroClassifierUnit}
+     * @param margin   least difference between the best and the second best score of the fast unit to trust it, in
+     *                 range [0, 1]
+     */
+    public CascadeClassifierUnit(ClassifierUnit fastUnit, ClassifierUnit slowUnit, double margin) {
+        if (fastUnit == null || slowUnit == null || !(margin >= 0 && margin <= 1))
+            throw new IllegalArgumentException();
+        if (!fastUnit.getCharacteristic().getName().equals(slowUnit.getCharacteristic().getName()))
+            throw new IllegalArgumentException("units of a cascade should classify the same characteristic");
+        if (fastUnit.getFeatureExtractor() != slowUnit.getFeatureExtractor())
+            throw new IllegalArgumentException("units of a cascade should share one feature extractor");
+
+        this.fastUnit = fastUnit;
+        this.slowUnit = slowUnit;
+        this.margin = margin;
+        this.valuesByOrder = CharacteristicUtils.getValuesByOrder(fastUnit.getCharacteristic());
+    }
+
+    // CLIENT SECTION
+
+    @Override
+    public void build(List<ClassifiableText> classifiableTexts, int[][] features) {
+        fastUnit.build(classifiableTexts, features);
+        slowUnit.build(classifiableTexts, features);
+    }
+
+    @Override
+    public void update(List<ClassifiableText> classifiableTexts, int[][] features) {
+        fastUnit.update(classifiableTexts, features);
+        slowUnit.update(classifiableTexts, features);
+    }
+
+    @Override
+    public ClassifierUnit withFeatureExtractor(FeatureExtractor featureExtractor, int[] columnMapping) {
+        return new CascadeClassifierUnit(fastUnit.withFeatureExtractor(featureExtractor, columnMapping),
+                slowUnit.withFeatureExtractor(featureExtractor, columnMapping), margin);
+    }
+
+    @Override
+    public void setThreadCount(int threadCount) {
+        fastUnit.setThreadCount(threadCount);
+        slowUnit.setThreadCount(threadCount);
+    }
+
+    @Override
+    public void setTrainingController(TrainingController trainingController) {
+        fastUnit.setTrainingController(trainingController);
+        slowUnit.setTrainingController(trainingController);
+    }
+
+    /**
+     * @return report of the slow unit, or of the fast unit if the slow one does not train iteratively
+     */
+    @Override
+    public Optional<TrainingReport> getTrainingReport() {
+        Optional<TrainingReport> report = slowUnit.getTrainingReport();
+        return report.isPresent() ? report : fastUnit.getTrainingReport();
+    }
+
+    @Override
+    public Optional<CharacteristicValue> classify(int[] features) {
+        classified.increment();
+        double[] scores = fastUnit.score(features);
+        if (isConfident(scores)) {
+            return Optional.ofNullable(valuesByOrder[getIndexOfMaxValue(scores)]);
+        }
+
+        fellThrough.increment();
+        return slowUnit.classify(features);
+    }
+
+    /**
+     * Scores the whole batch with the fast unit, then passes texts it is not confident about to the slow unit in one
+     * batch.
+     */
+    @Override
+    public List<Optional<CharacteristicValue>> classifyBatch(int[][] features) {
+        double[][] scores = fastUnit.scoreBatch(features);
+        List<Optional<CharacteristicValue>> values = new ArrayList<>(features.length);
+        List<Integer> hard = new ArrayList<>();
+        for (int i = 0; i < features.length; i++) {
+            if (isConfident(scores[i])) {
+                values.add(Optional.ofNullable(valuesByOrder[getIndexOfMaxValue(scores[i])]));
+            } else {
+                values.add(Optional.empty());
+                hard.add(i);
+            }
+        }
+
+        if (!hard.isEmpty()) {
+            int[][] hardFeatures = new int[hard.size()][];
+            for (int i = 0; i < hardFeatures.length; i++) {
+                hardFeatures[i] = features[hard.get(i)];
+            }
+            List<Optional<CharacteristicValue>> hardValues = slowUnit.classifyBatch(hardFeatures);
+            for (int i = 0; i < hardFeatures.length; i++) {
+                values.set(hard.get(i), hardValues.get(i));
+            }
+        }
+
+        classified.add(features.length);
+        fellThrough.add(hard.size());
+        return values;
+    }
+
+    /**
+     * @return scores of the fast unit if it is confident, scores of the slow unit otherwise
+     */
+    @Override
+    public double[] score(int[] features) {
+        double[] scores = fastUnit.score(features);
+        return isConfident(scores) ? scores : slowUnit.score(features);
+    }
+
+    /**
+     * @return share of texts classified since creation or {@link #resetStatistics()} which fell through to the slow
+     * unit, NaN if no texts were classified
+     */
+    public double getFallthroughRate() {
+        long count = classified.sum();
+        return count == 0 ? Double.NaN : (double) fellThrough.sum() / count;
+    }
+
+    public long getClassifiedCount() {
+        return classified.sum();
+    }
+
+    public long getFallthroughCount() {
+        return fellThrough.sum();
+    }
+
+    public void resetStatistics() {
+        classified.reset();
+        fellThrough.reset();
+    }
+
+    /**
+     * Saves the cascade with both units into a bundle named after it, see {@link ModelBundle}.
+     */
+    public void saveClassifier(File dir) {
+        ModelBundle.write(this, dir);
+        log.info("Trained Classifier for '" + getCharacteristic().getName() + "' characteristic saved. Wait...");
+    }
+
+    public void saveClassifier(OutputStream stream) {
+        ModelBundle.write(this, stream);
+        log.info("Trained Classifier for '" + getCharacteristic().getName() + "' characteristic saved. Wait...");
+    }
+
+    public void shutdown() {
+        fastUnit.shutdown();
+        slowUnit.shutdown();
+    }
+
+    // INNER SECTION
+
+    void writeBundle(ModelBundle.Writer out) {
+        out.writeDouble(margin);
+        ModelBundle.writeUnit(fastUnit, out);
+        ModelBundle.writeUnit(slowUnit, out);
+    }
+
+    static CascadeClassifierUnit readBundle(ModelBundle.Reader in, Characteristic characteristic,
+                                            FeatureExtractor featureExtractor) throws IOException {
+        double margin = in.readDouble();
+        ClassifierUnit fastUnit = ModelBundle.readUnit(in, characteristic, featureExtractor);
+        ClassifierUnit slowUnit = ModelBundle.readUnit(in, characteristic, featureExtractor);
+        return new CascadeClassifierUnit(fastUnit, slowUnit, margin);
+    }
+
+    // PRIVATE SECTION
+
+    // example:
+    // margin = 0.3; scores = {0.6, 0.25, 0.15}
+    // 0.6 - 0.25 >= 0.3, confident
+    private boolean isConfident(double[] scores) {
+        double best = Double.NEGATIVE_INFINITY;
+        double second = Double.NEGATIVE_INFINITY;
+        for (double score : scores) {
+            if (score > best) {
+                second = best;
+                best = score;
+            } else if (score > second) {
+                second = score;
+            }
+        }
+        return scores.length < 2 || best - second >= margin;
+    }
+
+    private static int getIndexOfMaxValue(double[] scores) {
+        int best = 0;
+        for (int i = 1; i < scores.length; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    @Override
+    public String toString() {
+        return getCharacteristic().getName() + "CascadeClassifier";
+    }
+
+    public Characteristic getCharacteristic() {return fastUnit.getCharacteristic();}
+
+    public FeatureExtractor getFeatureExtractor() {return fastUnit.getFeatureExtractor();}
+
+    public ClassifierUnit getFastUnit() {return this.fastUnit;}
+
+    public ClassifierUnit getSlowUnit() {return this.slowUnit;}
+
+    public double getMargin() {return this.margin;}
+}
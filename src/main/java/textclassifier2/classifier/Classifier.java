@@ -1,31 +1,77 @@
 package textclassifier2.classifier;
 
 import org.slf4j.Logger;
+import textclassifier2.metrics.ClassifierMetrics;
+import textclassifier2.metrics.Stage;
+import textclassifier2.metrics.StageProbe;
 import textclassifier2.model.Characteristic;
 import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableFactory;
 import textclassifier2.model.ClassifiableText;
+import textclassifier2.model.VocabularyWord;
+import textclassifier2.ngram.FeatureExtractor;
+import textclassifier2.ngram.VocabularyBuilder;
+import textclassifier2.ngram.VocabularyFeatureExtractor;
 
+import javax.management.ObjectName;
 import java.io.File;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Implementation of composite pattern that aggregates one or several classifier units and handles all client requests
  * to classify texts. You should not explicitly create instances of <this class. Instead prefer using
  * {@link ClassifierBuilder} to construct Classifier.
+ * <p>
+ * Metrics: the classifier and every unit keep latencies of the stages of classification, counts of requests and
+ * errors and the share of n-grams out of vocabulary, see {@link ClassifierMetrics}. They are off by default and cost
+ * a volatile read per unit and request then; switch them on with {@link #setMetricsEnabled(boolean)} or over JMX after
+ * {@link #registerMetrics(String)}, metrics of the classifier and of every unit one by one.
  *
  * @author Ripreal
  */
 public final class Classifier {
 
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(Classifier.class);
-    private final List<ClassifierUnit> classifierUnits;
+    // upper bound of texts classified by one task of a batch, it bounds the size of the batch matrix as well
+    private static final int MAX_BATCH_CHUNK_SIZE = 256;
+    private volatile List<ClassifierUnit> classifierUnits;
+    private final ForkJoinPool pool;
+    private final ClassifierMetrics metrics = new ClassifierMetrics();
+    // metrics of the unit with the same index, units replaced by update keep metrics of their predecessors
+    private final List<ClassifierMetrics> unitMetrics;
 
     @java.beans.ConstructorProperties({"classifierUnits"})
     public Classifier(List<ClassifierUnit> classifierUnits) {
+        this(classifierUnits, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param classifierUnits units to classify texts with
+     * @param threadCount     number of threads {@link #classifyBatch(List)} splits its work across
+     */
+    public Classifier(List<ClassifierUnit> classifierUnits, int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount should be positive");
+
         this.classifierUnits = classifierUnits;
+        this.pool = new ForkJoinPool(threadCount);
+        List<ClassifierMetrics> unitMetrics = new ArrayList<>(classifierUnits.size());
+        for (int i = 0; i < classifierUnits.size(); i++) {
+            unitMetrics.add(new ClassifierMetrics());
+        }
+        this.unitMetrics = Collections.unmodifiableList(unitMetrics);
     }
 
     /**
@@ -34,16 +80,119 @@ public final class Classifier {
      *  @param texts {@link ClassifiableText} source of texts to build classifier untis from.
      */
     public void build(List<ClassifiableText> texts) {
-        classifierUnits.forEach((item) -> item.build(texts));
+        Map<FeatureExtractor, int[][]> features = new IdentityHashMap<>();
+        classifierUnits.forEach((item) -> item.build(texts,
+                features.computeIfAbsent(item.getFeatureExtractor(), extractor -> extractor.extract(texts))));
+    }
+
+    /**
+     * Goes on training all classifier units on new texts instead of rebuilding them from the whole source, see
+     * {@link ClassifierUnit#update(List, int[][])}. Vocabularies of units grow by the words of new texts which pass
+     * the default pruning of {@link VocabularyBuilder}; such units are replaced by copies working with the grown
+     * vocabulary, which keep what was learned about known words. Units not based on a vocabulary keep their
+     * extractors. Units are trained side by side within the threads of this classifier.
+     * <p>
+     * Units are never trained in place: every unit is copied (see
+     * {@link ClassifierUnit#withFeatureExtractor(FeatureExtractor, int[])}), the copies are trained, and all of them
+     * replace the units at once when training is over. So texts may go on being classified during the update, with
+     * the units as they were before it, at the cost of memory for a second copy of every unit. Updates of one
+     * classifier run one after another.
+     *
+     * @param texts   new correctly classified texts
+     * @param factory factory to create words of grown vocabularies with
+     */
+    public synchronized void update(List<ClassifiableText> texts, ClassifiableFactory factory) {
+        List<ClassifierUnit> units = new ArrayList<>(classifierUnits);
+        int threadCount = pool.getParallelism();
+
+        // units sharing an extractor go on sharing the grown one
+        Map<FeatureExtractor, VocabularyFeatureExtractor> grownExtractors = new IdentityHashMap<>();
+        Map<FeatureExtractor, int[]> columnMappings = new IdentityHashMap<>();
+        for (int i = 0; i < units.size(); i++) {
+            ClassifierUnit unit = units.get(i);
+            if (!(unit.getFeatureExtractor() instanceof VocabularyFeatureExtractor))
+                continue;
+
+            VocabularyFeatureExtractor extractor = (VocabularyFeatureExtractor) unit.getFeatureExtractor();
+            VocabularyFeatureExtractor grown = grownExtractors.computeIfAbsent(extractor, key -> {
+                List<VocabularyWord> words = new VocabularyBuilder(extractor.getNGramStrategy())
+                        .withThreadCount(threadCount)
+                        .getVocabulary(texts, factory);
+                return extractor.extend(words);
+            });
+            if (grown != extractor) {
+                int[] columnMapping = columnMappings.computeIfAbsent(extractor, key -> extractor.getColumnMapping(grown));
+                units.set(i, unit.withFeatureExtractor(grown, columnMapping));
+                log.info("Vocabulary of " + unit + " grown from " + extractor.getDimension() + " to "
+                        + grown.getDimension() + " words");
+            }
+        }
+
+        // units still serving classification are copied to be trained
+        Map<FeatureExtractor, int[]> identityMappings = new IdentityHashMap<>();
+        for (int i = 0; i < units.size(); i++) {
+            ClassifierUnit unit = units.get(i);
+            if (unit == classifierUnits.get(i)) {
+                units.set(i, unit.withFeatureExtractor(unit.getFeatureExtractor(),
+                        identityMappings.computeIfAbsent(unit.getFeatureExtractor(),
+                                extractor -> getIdentityMapping(extractor.getDimension()))));
+            }
+        }
+
+        Map<FeatureExtractor, int[][]> featuresByExtractor = new IdentityHashMap<>();
+        List<int[][]> features = new ArrayList<>(units.size());
+        for (ClassifierUnit unit : units) {
+            features.add(featuresByExtractor.computeIfAbsent(unit.getFeatureExtractor(), extractor -> extractor.extract(texts)));
+        }
+        new TrainingScheduler(threadCount).update(units, new int[units.size()], texts, features);
+
+        classifierUnits = units;
+    }
+
+    /**
+     * Replaces every {@link NeroClassifierUnit} by its copy with weights reduced to the precision, see
+     * {@link NeroClassifierUnit#quantize(QuantizedNeroClassifierUnit.Precision, List, double)}. A unit whose copy loses
+     * more accuracy on the held out texts than allowed is kept as it is. Replaced units keep their metrics. Other
+     * units and units already quantized are not touched.
+     *
+     * @param heldOutTexts    correctly classified texts the units were not trained on
+     * @param maxAccuracyLoss largest allowed drop of the share of correctly classified texts, 0.01 for a percent
+     * @return names of the replaced units as they were before the replacement, see {@link #getUnitMetrics()}
+     */
+    public synchronized List<String> quantize(QuantizedNeroClassifierUnit.Precision precision,
+                                              List<ClassifiableText> heldOutTexts, double maxAccuracyLoss) {
+        if (precision == null || heldOutTexts == null || heldOutTexts.isEmpty() || maxAccuracyLoss < 0)
+            throw new IllegalArgumentException();
+
+        List<ClassifierUnit> units = new ArrayList<>(classifierUnits);
+        List<String> names = getUnitNames(units);
+        List<String> replaced = new ArrayList<>();
+        for (int i = 0; i < units.size(); i++) {
+            if (!(units.get(i) instanceof NeroClassifierUnit))
+                continue;
+
+            try {
+                units.set(i, ((NeroClassifierUnit) units.get(i)).quantize(precision, heldOutTexts, maxAccuracyLoss));
+                replaced.add(names.get(i));
+            } catch (IllegalStateException e) {
+                log.warn(units.get(i) + " is kept in full precision: " + e.getMessage());
+            }
+        }
+
+        classifierUnits = units;
+        return replaced;
     }
 
     /**
      *  Stops all jobs that some classifier units might be doing. It can be helpful in case needed to prevent redundant
      *  server memory space consumption. Classifier does not shutdown its own ClassifierUnits. It simply
-     *  delegates this task to them.
+     *  delegates this task to them. Batch classification is not possible after shutdown.
      */
     public void shutdown() {
         classifierUnits.forEach(ClassifierUnit::shutdown);
+        pool.shutdown();
+        metrics.unregister();
+        unitMetrics.forEach(ClassifierMetrics::unregister);
     }
 
     /**
@@ -55,16 +204,139 @@ public final class Classifier {
      * @return {@link List} based on classification with classifier units. Can be empty.
      */
     public List<CharacteristicValue> classify( ClassifiableText classifiableText) {
+        if (isMeasured()) {
+            List<List<CharacteristicValue>> values = Collections.singletonList(new ArrayList<>());
+            classifyChunkMeasured(Collections.singletonList(classifiableText), values);
+            return values.get(0);
+        }
+
         List<CharacteristicValue> values = new ArrayList<>();
+        // the text is tokenized once for all units sharing an extractor
+        Map<FeatureExtractor, int[]> features = new IdentityHashMap<>();
         classifierUnits.forEach(unit -> {
-            unit.classify(classifiableText).map(values::add);
+            int[] unitFeatures = features.computeIfAbsent(unit.getFeatureExtractor(),
+                    extractor -> extractor.extract(classifiableText.getText()));
+            unit.classify(unitFeatures).map(values::add);
         });
         return values;
     }
 
+    /**
+     * Performs classification of several texts at once. Texts are split into chunks classified in parallel on the
+     * thread pool of this classifier, and every {@link ClassifierUnit} gets the whole chunk in one
+     * {@link ClassifierUnit#classifyBatch(int[][])} call. A chunk is tokenized once for all units sharing a
+     * {@link FeatureExtractor}.
+     *
+     * @param classifiableTexts - texts you want to classify
+     * @return {@link List} of classification results in the same order as passed texts. Every result is the list
+     * {@link #classify(ClassifiableText)} would return for the text.
+     */
+    public List<List<CharacteristicValue>> classifyBatch(List<ClassifiableText> classifiableTexts) {
+        int size = classifiableTexts.size();
+        List<List<CharacteristicValue>> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(new ArrayList<>(classifierUnits.size()));
+        }
+
+        // a few chunks per thread to even out the load
+        int chunkSize = Math.max(1, Math.min(MAX_BATCH_CHUNK_SIZE, size / (pool.getParallelism() * 4)));
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int from = 0; from < size; from += chunkSize) {
+            int chunkFrom = from;
+            int chunkTo = Math.min(size, from + chunkSize);
+            List<ClassifiableText> chunk = classifiableTexts.subList(chunkFrom, chunkTo);
+            List<List<CharacteristicValue>> chunkValues = values.subList(chunkFrom, chunkTo);
+            tasks.add(pool.submit(() -> {
+                if (isMeasured()) {
+                    classifyChunkMeasured(chunk, chunkValues);
+                } else {
+                    classifyChunk(chunk, new IdentityHashMap<>(), chunkValues);
+                }
+            }));
+        }
+        tasks.forEach(ForkJoinTask::join);
+
+        return values;
+    }
+
+    /**
+     * @return why and when the last build of every unit stopped, keyed by unit name. Units not trained iteratively
+     * are left out.
+     */
+    public Map<String, TrainingReport> getTrainingReports() {
+        Map<String, TrainingReport> reports = new LinkedHashMap<>();
+        for (ClassifierUnit unit : classifierUnits) {
+            unit.getTrainingReport().ifPresent(report -> reports.put(unit.toString(), report));
+        }
+        return reports;
+    }
+
+    /**
+     * @return share of texts that fell through to the slow unit of every cascade, keyed by unit name, see
+     * {@link CascadeClassifierUnit#getFallthroughRate()}
+     */
+    public Map<String, Double> getFallthroughRates() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (ClassifierUnit unit : classifierUnits) {
+            if (unit instanceof CascadeClassifierUnit) {
+                rates.put(unit.toString(), ((CascadeClassifierUnit) unit).getFallthroughRate());
+            }
+        }
+        return rates;
+    }
+
+    public ClassifierMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return metrics of every unit keyed by unit name. Stages of extraction are measured once per text for all units
+     * sharing an extractor, and every such unit counts them.
+     */
+    public Map<String, ClassifierMetrics> getUnitMetrics() {
+        Map<String, ClassifierMetrics> metricsByName = new LinkedHashMap<>();
+        List<String> names = getUnitNames(classifierUnits);
+        for (int i = 0; i < names.size(); i++) {
+            metricsByName.put(names.get(i), unitMetrics.get(i));
+        }
+        return metricsByName;
+    }
+
+    /**
+     * Switches metrics of the classifier and of all its units on or off.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        metrics.setEnabled(enabled);
+        unitMetrics.forEach(unitMetric -> unitMetric.setEnabled(enabled));
+    }
+
+    /**
+     * Publishes metrics of the classifier and of its units as MBeans of the platform MBean server until
+     * {@link #shutdown()}, see {@link ClassifierMetrics#register(String)}.
+     *
+     * @param name name distinguishing this classifier from others of the same JVM
+     */
+    // example:
+    // name = news
+    // textclassifier2:type=Classifier,name="news"
+    // textclassifier2:type=Classifier,name="news",stage=compute
+    // textclassifier2:type=ClassifierUnit,classifier="news",name="РезультатNeuralNetworkClassifier"
+    public void registerMetrics(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException();
+
+        metrics.register("type=Classifier,name=" + ObjectName.quote(name));
+        List<String> unitNames = getUnitNames(classifierUnits);
+        for (int i = 0; i < unitNames.size(); i++) {
+            unitMetrics.get(i).register("type=ClassifierUnit,classifier=" + ObjectName.quote(name)
+                    + ",name=" + ObjectName.quote(unitNames.get(i)));
+        }
+    }
+
     /**
      * Saves current state of every {@link ClassifierUnit} into separate files. Saved classifer units
-     * can be loaded from files into new Classifier via {@link ClassifierBuilder}.
+     * can be loaded from files into new Classifier via {@link ClassifierBuilder#fromSavedModels(File, ClassifiableFactory)}.
      *
      * @param dir {@link File} in which classifier will store its classifier units state.
      */
@@ -78,8 +350,9 @@ public final class Classifier {
     }
 
     /**
-     * Saves current state of every {@link ClassifierUnit} into separate files. Saved classifer units
-     * can be loaded from files into new Classifier via {@link ClassifierBuilder}.
+     * Saves current state of every {@link ClassifierUnit} into the stream one after another. Saved classifer units
+     * can be loaded from the stream into new Classifier via
+     * {@link ClassifierBuilder#fromSavedModels(java.io.InputStream, ClassifiableFactory)}.
      *
      * @param stream {@link OutputStream} stream classifier will store its classifier units state to
      */
@@ -92,30 +365,207 @@ public final class Classifier {
     /**
      * Check to see if the classifier units are ready to classify texts. You must pass correctly classified texts to
      *  know classifier accurancy. Accuracy persentage outputs for every {@link ClassifierUnit} and dispatches to
-     *  listeners.
+     *  listeners. See {@link #evaluate(List)} to get the results as data.
      *
      * @param textForTesting - correctly classified texts for testing on each {@link ClassifierUnit}
      */
     public void checkClassifiersAccuracy(List<ClassifiableText> textForTesting) {
+        for (ConfusionMatrix matrix : evaluate(textForTesting).values()) {
+            log.info(String.format("Accuracy of Classifier for '" + matrix.getCharacteristic().getName()
+                    + "' characteristic: %.2f%%", matrix.getAccuracy() * 100));
+        }
+    }
+
+    /**
+     * Classifies correctly classified texts with every unit and counts the results. Texts are split into chunks
+     * classified in parallel as in {@link #classifyBatch(List)}.
+     *
+     * @param textForTesting correctly classified texts
+     * @return confusion matrix of every unit keyed by unit name, see {@link ConfusionMatrix}
+     */
+    public Map<String, ConfusionMatrix> evaluate(List<ClassifiableText> textForTesting) {
+        List<ClassifierUnit> units = classifierUnits;
+        int size = textForTesting.size();
+        int chunkSize = Math.max(1, Math.min(MAX_BATCH_CHUNK_SIZE, size / (pool.getParallelism() * 4)));
+
+        List<ForkJoinTask<List<ConfusionMatrix>>> tasks = new ArrayList<>();
+        for (int from = 0; from < size; from += chunkSize) {
+            List<ClassifiableText> chunk = textForTesting.subList(from, Math.min(size, from + chunkSize));
+            tasks.add(pool.submit(() -> evaluateChunk(units, chunk)));
+        }
+
+        List<String> names = getUnitNames(units);
+        Map<String, ConfusionMatrix> matrices = new LinkedHashMap<>();
+        for (int i = 0; i < units.size(); i++) {
+            matrices.put(names.get(i), new ConfusionMatrix(units.get(i).getCharacteristic()));
+        }
+        for (ForkJoinTask<List<ConfusionMatrix>> task : tasks) {
+            List<ConfusionMatrix> chunkMatrices = task.join();
+            for (int i = 0; i < units.size(); i++) {
+                matrices.get(names.get(i)).addAll(chunkMatrices.get(i));
+            }
+        }
+        return matrices;
+    }
+
+    // INNER SECTION
+
+    /**
+     * @return names of the units in the same order, units of the same kind for the same characteristic are told apart
+     * by number
+     */
+    // example:
+    // units = {NeroA, NaiveBayesA, NeroA}
+    // names = {"NeroA", "NaiveBayesA", "NeroA#2"}
+    static List<String> getUnitNames(List<ClassifierUnit> units) {
+        Set<String> taken = new HashSet<>();
+        List<String> names = new ArrayList<>(units.size());
+        for (ClassifierUnit unit : units) {
+            String name = unit.toString();
+            for (int number = 2; !taken.add(name); number++) {
+                name = unit + "#" + number;
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * @return characteristics of the units in order of units, each once
+     */
+    List<Characteristic> getCharacteristics() {
+        Set<Characteristic> characteristics = new LinkedHashSet<>();
+        classifierUnits.forEach(unit -> characteristics.add(unit.getCharacteristic()));
+        return new ArrayList<>(characteristics);
+    }
 
+    /**
+     * Tokenizing half of classification, for callers running tokenizing and inference on different threads.
+     *
+     * @return features of the texts for every extractor of the units
+     */
+    Map<FeatureExtractor, int[][]> extractFeatures(List<ClassifiableText> classifiableTexts) {
+        Map<FeatureExtractor, int[][]> features = new IdentityHashMap<>();
         for (ClassifierUnit unit : classifierUnits) {
-            Characteristic characteristic = unit.getCharacteristic();
-            int correctlyClassified = 0;
+            features.computeIfAbsent(unit.getFeatureExtractor(), extractor -> extractor.extract(classifiableTexts));
+        }
+        return features;
+    }
 
-            for (ClassifiableText classifiableText : textForTesting) {
-                CharacteristicValue idealValue = classifiableText.getCharacteristicValue(characteristic.getName());
-                Optional<CharacteristicValue> classifiedValue = unit.classify(classifiableText);
+    /**
+     * Inference half of classification, on the calling thread. Units replaced by
+     * {@link #update(List, ClassifiableFactory)} after the features were extracted extract their own.
+     *
+     * @param features features given by {@link #extractFeatures(List)}
+     * @return results of the texts as {@link #classifyBatch(List)} gives them
+     */
+    List<List<CharacteristicValue>> classifyFeatures(List<ClassifiableText> classifiableTexts,
+                                                     Map<FeatureExtractor, int[][]> features) {
+        List<List<CharacteristicValue>> values = new ArrayList<>(classifiableTexts.size());
+        for (int i = 0; i < classifiableTexts.size(); i++) {
+            values.add(new ArrayList<>(classifierUnits.size()));
+        }
+        classifyChunk(classifiableTexts, features, values);
+        return values;
+    }
 
-                if (classifiedValue.isPresent() && classifiedValue.get().getValue().equals(idealValue.getValue())) {
-                    correctlyClassified++;
-                }
+    // PRIVATE SECTION
+
+    // every column stays where it is
+    // example:
+    // dimension = 3
+    // columnMapping = {0, 1, 2}
+    private static int[] getIdentityMapping(int dimension) {
+        int[] columnMapping = new int[dimension];
+        for (int column = 0; column < dimension; column++) {
+            columnMapping[column] = column;
+        }
+        return columnMapping;
+    }
+
+    private static List<ConfusionMatrix> evaluateChunk(List<ClassifierUnit> units, List<ClassifiableText> classifiableTexts) {
+        Map<FeatureExtractor, int[][]> features = new IdentityHashMap<>();
+        List<ConfusionMatrix> matrices = new ArrayList<>(units.size());
+        for (ClassifierUnit unit : units) {
+            matrices.add(ConfusionMatrix.of(unit, classifiableTexts, features.computeIfAbsent(unit.getFeatureExtractor(),
+                    extractor -> extractor.extract(classifiableTexts))));
+        }
+        return matrices;
+    }
+
+    // metrics of the classifier or of a unit are on, every metrics records only while on
+    private boolean isMeasured() {
+        if (metrics.isEnabled()) {
+            return true;
+        }
+        for (ClassifierMetrics unitMetric : unitMetrics) {
+            if (unitMetric.isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void classifyChunk(List<ClassifiableText> classifiableTexts, Map<FeatureExtractor, int[][]> features,
+                               List<List<CharacteristicValue>> values) {
+        for (ClassifierUnit unit : classifierUnits) {
+            int[][] unitFeatures = features.computeIfAbsent(unit.getFeatureExtractor(),
+                    extractor -> extractor.extract(classifiableTexts));
+            List<Optional<CharacteristicValue>> unitValues = unit.classifyBatch(unitFeatures);
+            for (int i = 0; i < unitValues.size(); i++) {
+                unitValues.get(i).ifPresent(values.get(i)::add);
             }
+        }
+    }
+
+    // same as classifyChunk, measuring every stage for the classifier and for every unit; a single text is classified
+    // with ClassifierUnit#classify as the classify method does
+    private void classifyChunkMeasured(List<ClassifiableText> classifiableTexts, List<List<CharacteristicValue>> values) {
+        long start = System.nanoTime();
+        int size = classifiableTexts.size();
+        StageProbe probe = new StageProbe();
+        Map<FeatureExtractor, int[][]> features = new IdentityHashMap<>();
+        Map<FeatureExtractor, StageProbe> extractionProbes = new IdentityHashMap<>();
+
+        try {
+            List<ClassifierUnit> units = classifierUnits;
+            for (int u = 0; u < units.size(); u++) {
+                ClassifierUnit unit = units.get(u);
+                int[][] unitFeatures = features.computeIfAbsent(unit.getFeatureExtractor(), extractor -> {
+                    StageProbe extractionProbe = new StageProbe();
+                    int[][] extracted = new int[size][];
+                    for (int i = 0; i < size; i++) {
+                        extracted[i] = extractor.extract(classifiableTexts.get(i).getText(), extractionProbe);
+                    }
+                    extractionProbes.put(extractor, extractionProbe);
+                    probe.addAll(extractionProbe);
+                    return extracted;
+                });
 
-            double accuracy =((double) correctlyClassified / textForTesting.size()) * 100;
+                StageProbe unitProbe = new StageProbe();
+                unitProbe.addAll(extractionProbes.get(unit.getFeatureExtractor()));
+                List<Optional<CharacteristicValue>> unitValues;
+                try {
+                    unitValues = size == 1 ? Collections.singletonList(unit.classify(unitFeatures[0], unitProbe))
+                            : unit.classifyBatch(unitFeatures, unitProbe);
+                } catch (RuntimeException e) {
+                    unitMetrics.get(u).recordError(size);
+                    throw e;
+                }
+                unitMetrics.get(u).record(unitProbe, unitProbe.getTotal(), size);
+                probe.add(Stage.COMPUTE, unitProbe.get(Stage.COMPUTE));
+                probe.add(Stage.DECODE, unitProbe.get(Stage.DECODE));
 
-            log.info(String.format("Accuracy of Classifier for '" + characteristic.getName()
-                    + "' characteristic: %.2f%%", accuracy));
+                for (int i = 0; i < unitValues.size(); i++) {
+                    unitValues.get(i).ifPresent(values.get(i)::add);
+                }
+            }
+        } catch (RuntimeException e) {
+            metrics.recordError(size);
+            throw e;
         }
+
+        metrics.record(probe, System.nanoTime() - start, size);
     }
 
 }
@@ -3,18 +3,41 @@ package textclassifier2.classifier;
 import org.slf4j.Logger;
 import textclassifier2.CharacteristicUtils;
 import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
 import textclassifier2.model.ClassifiableFactory;
+import textclassifier2.model.ClassifiableText;
 import textclassifier2.model.VocabularyWord;
+import textclassifier2.ngram.FeatureExtractor;
+import textclassifier2.ngram.HashingFeatureExtractor;
 import textclassifier2.ngram.NGramStrategy;
+import textclassifier2.ngram.TokenizedCorpus;
 import textclassifier2.ngram.VocabularyBuilder;
+import textclassifier2.ngram.VocabularyFeatureExtractor;
+import textclassifier2.testdata.DelimitedFileReader;
 import textclassifier2.testdata.ExcelFileReader;
+import textclassifier2.testdata.JsonLinesFileReader;
 import textclassifier2.testdata.TestDataReader;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 // BUILDER + COMPOSITE
 public final class ClassifierBuilder {
@@ -27,7 +50,17 @@ public final class ClassifierBuilder {
 
     private final List<ClassifierUnitProxy> classifierUnits = new ArrayList<>();
 
-    private final int AMOUNT_OF_TEXTS_FOR_CHECKING = 5;
+    private static final int DEFAULT_FOLD_COUNT = 5;
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    private int minDocumentFrequency = 4;
+
+    private double maxDocumentFrequency = 1;
+
+    private int maxVocabularySize = Integer.MAX_VALUE;
+
+    private TrainingController trainingController;
 
     public ClassifierBuilder(TestDataReader reader, ClassifiableFactory textFactory) {
 
@@ -44,10 +77,96 @@ public final class ClassifierBuilder {
         return new ClassifierBuilder(new ExcelFileReader(file, 1, factory), factory);
     }
 
+    public static ClassifierBuilder fromCsv(File file, ClassifiableFactory factory) {
+        return new ClassifierBuilder(new DelimitedFileReader(file, factory), factory);
+    }
+
+    public static ClassifierBuilder fromJsonLines(File file, ClassifiableFactory factory) {
+        return new ClassifierBuilder(new JsonLinesFileReader(file, factory), factory);
+    }
+
     public static ClassifierBuilder fromReader(TestDataReader reader, ClassifiableFactory factory) {
         return new ClassifierBuilder(reader, factory);
     }
 
+    /**
+     * Restores a ready {@link Classifier} from units saved into bundles with {@link Classifier#saveClassifiers(File)},
+     * without training data and training. Bundles are read in parallel, units saved with the same vocabulary share one
+     * feature extractor again, so texts are tokenized once for them.
+     *
+     * @param dir directory holding bundles of units, units are ordered by file names
+     */
+    public static Classifier fromSavedModels(File dir, ClassifiableFactory factory) throws IOException {
+        return fromSavedModels(dir, factory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threadCount number of threads to read bundles with and the built {@link Classifier} classifies batches with
+     */
+    public static Classifier fromSavedModels(File dir, ClassifiableFactory factory, int threadCount) throws IOException {
+        if (dir == null || factory == null || !dir.isDirectory())
+            throw new IllegalArgumentException("need directory not a file!");
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount should be positive");
+
+        File[] files = dir.listFiles((parent, name) -> name.endsWith(ModelBundle.FILE_EXTENSION));
+        if (files == null || files.length == 0)
+            throw new IllegalArgumentException("Error. No saved classifier units found in " + dir);
+        Arrays.sort(files);
+
+        Map<ByteBuffer, FeatureExtractor> extractors = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threadCount, files.length));
+        try {
+            List<ForkJoinTask<ClassifierUnit>> tasks = new ArrayList<>(files.length);
+            for (File file : files) {
+                tasks.add(pool.submit(() -> {
+                    try (InputStream stream = new FileInputStream(file)) {
+                        return ModelBundle.read(stream, factory, extractors);
+                    }
+                }));
+            }
+
+            List<ClassifierUnit> units = new ArrayList<>(files.length);
+            for (ForkJoinTask<ClassifierUnit> task : tasks) {
+                units.add(task.get());
+            }
+            log.info("Restored " + units.size() + " classifier unit(s) from " + dir);
+            return new Classifier(units, threadCount);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reading of classifier units was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Reading of classifier units failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Restores a ready {@link Classifier} from units saved with {@link Classifier#saveClassifiers(OutputStream)}. The
+     * stream is read to its end.
+     */
+    public static Classifier fromSavedModels(InputStream stream, ClassifiableFactory factory) throws IOException {
+        if (stream == null || factory == null)
+            throw new IllegalArgumentException();
+
+        Map<ByteBuffer, FeatureExtractor> extractors = new HashMap<>();
+        List<ClassifierUnit> units = new ArrayList<>();
+        PushbackInputStream in = new PushbackInputStream(stream);
+        int next;
+        while ((next = in.read()) != -1) {
+            in.unread(next);
+            units.add(ModelBundle.read(in, factory, extractors));
+        }
+        if (units.isEmpty())
+            throw new IllegalArgumentException("Error. No saved classifier units found in the stream");
+        return new Classifier(units);
+    }
+
     // CLIENT SECTION
 
     public ClassifierBuilder addNeroClassifierUnit(String characteristicName, NGramStrategy nGramStrategy) {
@@ -55,15 +174,161 @@ public final class ClassifierBuilder {
         return this;
     }
 
+    /**
+     * @param threadCount number of threads to train the unit with, 0 to take an equal share of the thread budget
+     */
+    public ClassifierBuilder addNeroClassifierUnit(String characteristicName, NGramStrategy nGramStrategy, int threadCount) {
+        addNeroClassifierUnit(null, characteristicName, null, nGramStrategy, threadCount);
+        return this;
+    }
+
     public ClassifierBuilder addNeroClassifierUnit(File trainedClassifier, String characteristicName, List<VocabularyWord> vocabulary, NGramStrategy nGramStrategy) {
-        classifierUnits.add(
-                new ClassifierUnitProxy(
-                        NeroClassifierUnit::new,
-                        trainedClassifier,
-                        nGramStrategy,
-                        vocabulary,
-                        textFactory.newCharacteristic(characteristicName)
-                ));
+        addNeroClassifierUnit(trainedClassifier, characteristicName, vocabulary, nGramStrategy, 0);
+        return this;
+    }
+
+    public ClassifierBuilder addNeroClassifierUnit(File trainedClassifier, String characteristicName, List<VocabularyWord> vocabulary, NGramStrategy nGramStrategy, int threadCount) {
+        addClassifierUnit(NeroClassifierUnit::new, trainedClassifier, characteristicName, vocabulary, nGramStrategy, threadCount);
+        return this;
+    }
+
+    /**
+     * Adds a unit turning texts into features with the given extractor instead of a vocabulary built from the texts,
+     * for example {@link HashingFeatureExtractor} to keep the input layer of a fixed size.
+     */
+    public ClassifierBuilder addNeroClassifierUnit(String characteristicName, FeatureExtractor featureExtractor) {
+        addNeroClassifierUnit(null, characteristicName, featureExtractor, 0);
+        return this;
+    }
+
+    /**
+     * @param threadCount number of threads to train the unit with, 0 to take an equal share of the thread budget
+     */
+    public ClassifierBuilder addNeroClassifierUnit(String characteristicName, FeatureExtractor featureExtractor, int threadCount) {
+        addNeroClassifierUnit(null, characteristicName, featureExtractor, threadCount);
+        return this;
+    }
+
+    public ClassifierBuilder addNeroClassifierUnit(File trainedClassifier, String characteristicName, FeatureExtractor featureExtractor) {
+        addNeroClassifierUnit(trainedClassifier, characteristicName, featureExtractor, 0);
+        return this;
+    }
+
+    public ClassifierBuilder addNeroClassifierUnit(File trainedClassifier, String characteristicName, FeatureExtractor featureExtractor, int threadCount) {
+        addClassifierUnit(NeroClassifierUnit::new, trainedClassifier, characteristicName, featureExtractor, threadCount);
+        return this;
+    }
+
+    /**
+     * Adds a Naive Bayes unit (see {@link NaiveBayesClassifierUnit}). It trains in one pass in a single thread, much
+     * faster than a neural network unit, at the cost of some accuracy.
+     */
+    public ClassifierBuilder addNaiveBayesClassifierUnit(String characteristicName, NGramStrategy nGramStrategy) {
+        addNaiveBayesClassifierUnit(null, characteristicName, null, nGramStrategy);
+        return this;
+    }
+
+    public ClassifierBuilder addNaiveBayesClassifierUnit(File trainedClassifier, String characteristicName, List<VocabularyWord> vocabulary, NGramStrategy nGramStrategy) {
+        addClassifierUnit(NaiveBayesClassifierUnit::new, trainedClassifier, characteristicName, vocabulary, nGramStrategy, 1);
+        return this;
+    }
+
+    public ClassifierBuilder addNaiveBayesClassifierUnit(String characteristicName, FeatureExtractor featureExtractor) {
+        addNaiveBayesClassifierUnit(null, characteristicName, featureExtractor);
+        return this;
+    }
+
+    public ClassifierBuilder addNaiveBayesClassifierUnit(File trainedClassifier, String characteristicName, FeatureExtractor featureExtractor) {
+        addClassifierUnit(NaiveBayesClassifierUnit::new, trainedClassifier, characteristicName, featureExtractor, 1);
+        return this;
+    }
+
+    /**
+     * Adds a logistic regression unit (see {@link LogisticRegressionClassifierUnit}). It trains with lock-free
+     * parallel SGD in a fixed number of epochs and classifies in microseconds.
+     */
+    public ClassifierBuilder addLogisticRegressionClassifierUnit(String characteristicName, NGramStrategy nGramStrategy) {
+        addLogisticRegressionClassifierUnit(null, characteristicName, null, nGramStrategy, 0);
+        return this;
+    }
+
+    /**
+     * @param threadCount number of threads to train the unit with, 0 to take an equal share of the thread budget
+     */
+    public ClassifierBuilder addLogisticRegressionClassifierUnit(String characteristicName, NGramStrategy nGramStrategy, int threadCount) {
+        addLogisticRegressionClassifierUnit(null, characteristicName, null, nGramStrategy, threadCount);
+        return this;
+    }
+
+    public ClassifierBuilder addLogisticRegressionClassifierUnit(File trainedClassifier, String characteristicName, List<VocabularyWord> vocabulary, NGramStrategy nGramStrategy, int threadCount) {
+        addClassifierUnit(LogisticRegressionClassifierUnit::new, trainedClassifier, characteristicName, vocabulary, nGramStrategy, threadCount);
+        return this;
+    }
+
+    public ClassifierBuilder addLogisticRegressionClassifierUnit(String characteristicName, FeatureExtractor featureExtractor) {
+        addLogisticRegressionClassifierUnit(null, characteristicName, featureExtractor, 0);
+        return this;
+    }
+
+    public ClassifierBuilder addLogisticRegressionClassifierUnit(File trainedClassifier, String characteristicName, FeatureExtractor featureExtractor, int threadCount) {
+        addClassifierUnit(LogisticRegressionClassifierUnit::new, trainedClassifier, characteristicName, featureExtractor, threadCount);
+        return this;
+    }
+
+    /**
+     * Adds a cascade of a logistic regression unit and a neural network unit sharing one vocabulary (see
+     * {@link CascadeClassifierUnit}). The neural network classifies only texts the logistic regression is not confident
+     * about.
+     *
+     * @param margin least difference between the best and the second best score of the logistic regression to trust it
+     */
+    public ClassifierBuilder addCascadeClassifierUnit(String characteristicName, NGramStrategy nGramStrategy, double margin) {
+        addClassifierUnit(cascadeSupplier(margin), null, characteristicName, null, nGramStrategy, 0);
+        return this;
+    }
+
+    public ClassifierBuilder addCascadeClassifierUnit(String characteristicName, FeatureExtractor featureExtractor, double margin) {
+        addClassifierUnit(cascadeSupplier(margin), null, characteristicName, featureExtractor, 0);
+        return this;
+    }
+
+    /**
+     * Sets the thread budget: total number of threads classifier units are trained with (units are trained
+     * concurrently, see {@link TrainingScheduler}) and number of threads the built {@link Classifier} uses for batch
+     * classification. Defaults to the number of available processors.
+     */
+    public ClassifierBuilder withThreadCount(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount should be positive");
+        this.threadCount = threadCount;
+        return this;
+    }
+
+    /**
+     * Sets how vocabularies of units are pruned, see {@link VocabularyBuilder}. Has no effect on units given a
+     * feature extractor.
+     *
+     * @param minDocumentFrequency minimal number of texts a word has to occur in, 4 by default
+     * @param maxDocumentFrequency maximal share of texts a word may occur in, 1 by default
+     * @param maxVocabularySize    maximal number of words in a vocabulary, the most frequent words are kept
+     */
+    public ClassifierBuilder withVocabularyPruning(int minDocumentFrequency, double maxDocumentFrequency, int maxVocabularySize) {
+        if (minDocumentFrequency < 1 || !(maxDocumentFrequency > 0 && maxDocumentFrequency <= 1) || maxVocabularySize < 1)
+            throw new IllegalArgumentException();
+        this.minDocumentFrequency = minDocumentFrequency;
+        this.maxDocumentFrequency = maxDocumentFrequency;
+        this.maxVocabularySize = maxVocabularySize;
+        return this;
+    }
+
+    /**
+     * Sets when training of units stops, see {@link TrainingController}. By default every unit stops at 1% of error
+     * or after 1000 iterations.
+     */
+    public ClassifierBuilder withTrainingController(TrainingController trainingController) {
+        if (trainingController == null)
+            throw new IllegalArgumentException();
+        this.trainingController = trainingController;
         return this;
     }
 
@@ -73,7 +338,40 @@ public final class ClassifierBuilder {
         }
         List<ClassifierUnit> units = buildClassifiers();
         shutDownClassifiers(units);
-        return new Classifier(units);
+        return new Classifier(units, threadCount);
+    }
+
+    /**
+     * Same as {@link #crossValidate(int, long)} on 5 folds.
+     */
+    public CrossValidationReport crossValidate() throws IOException {
+        return crossValidate(DEFAULT_FOLD_COUNT, 0);
+    }
+
+    /**
+     * Estimates how the specified units would classify texts they were not trained on, without building a classifier.
+     * Texts of the reader are dealt into folds, and every fold is classified by units built on the other folds, see
+     * {@link CrossValidator}. Folds are trained in parallel within the thread budget of {@link #withThreadCount(int)},
+     * with the vocabulary pruning and the training controller of this builder.
+     * <p>
+     * Texts are read out of the reader, so the builder can not build a classifier afterwards unless the reader can be
+     * read again.
+     *
+     * @param foldCount number of folds, at least 2
+     * @param seed      seed of dealing texts into folds, the same seed gives the same folds
+     * @return confusion matrices of every unit with precision and recall of every value
+     */
+    public CrossValidationReport crossValidate(int foldCount, long seed) throws IOException {
+        if (!initialized()) {
+            throw new IllegalArgumentException("Error. No classifier units were specified!");
+        }
+        if (foldCount < 2)
+            throw new IllegalArgumentException("foldCount should be at least 2");
+
+        CrossValidationReport report = new CrossValidator(classifierUnits, this::newVocabularyBuilder,
+                trainingController, textFactory, threadCount).validate(reader.readAll(), foldCount, seed);
+        log.info(report.toString());
+        return report;
     }
 
     // INNER SECTION
@@ -83,30 +381,150 @@ public final class ClassifierBuilder {
         TestDataReader.ClassifiableData data = reader.readAll();
 
         Set<Characteristic> characteristics = data.getCharacteristics();
+        List<ClassifiableText> texts = data.getClassifiableTexts();
+
+        // texts are tokenized once per n-gram type, units of the same type share vocabulary and extractor, units
+        // sharing an extractor share features
+        Map<NGramStrategy.NGRAM_TYPES, TokenizedCorpus> corpora = new EnumMap<>(NGramStrategy.NGRAM_TYPES.class);
+        Map<NGramStrategy.NGRAM_TYPES, VocabularyFeatureExtractor> extractors = new EnumMap<>(NGramStrategy.NGRAM_TYPES.class);
+        Map<FeatureExtractor, int[][]> featuresByExtractor = new IdentityHashMap<>();
+        // extractors saved in bundles of trained classifiers, the same one is shared
+        Map<ByteBuffer, FeatureExtractor> savedExtractors = new HashMap<>();
 
         List<ClassifierUnit> units = new ArrayList<>();
+        List<ClassifierUnit> untrained = new ArrayList<>();
+        List<int[][]> features = new ArrayList<>();
+        int[] requestedThreads = new int[classifierUnits.size()];
         for (ClassifierUnitProxy proxy : classifierUnits) {
 
-            proxy.setVocabulary(new VocabularyBuilder(proxy.getNGramStrategy()).getVocabulary(
-                data.getClassifiableTexts(), textFactory));
-
-            proxy.setCharacteristic(
-                    CharacteristicUtils.findByValue(
-                            characteristics,
-                            proxy.getCharacteristic().getName(),
-                            textFactory::newCharacteristic)
-            );
+            NGramStrategy nGramStrategy = proxy.getNGramStrategy();
+            TokenizedCorpus corpus = corpora.computeIfAbsent(nGramStrategy.getNGramType(),
+                    type -> TokenizedCorpus.tokenize(texts, nGramStrategy, threadCount));
+
+            // a unit loaded from a trained classifier keeps the extractor and vocabulary it was trained with, the ones
+            // saved in its bundle take precedence over the given ones
+            File trainedClassifier = proxy.getTrainedClassifier();
+            if (trainedClassifier != null && ModelBundle.isBundle(trainedClassifier)) {
+                FeatureExtractor extractor = ModelBundle.readFeatureExtractor(trainedClassifier, textFactory, savedExtractors);
+                proxy.setFeatureExtractor(extractor);
+                if (extractor instanceof VocabularyFeatureExtractor) {
+                    proxy.setVocabulary(((VocabularyFeatureExtractor) extractor).getVocabulary());
+                }
+            } else if (trainedClassifier != null && proxy.isVocabularyBased() && proxy.getVocabulary() == null) {
+                throw new IllegalArgumentException("trained classifier " + trainedClassifier
+                        + " is not a bundle, pass the vocabulary it was trained with");
+            } else if (trainedClassifier == null && proxy.isVocabularyBased()) {
+                VocabularyFeatureExtractor extractor = extractors.computeIfAbsent(nGramStrategy.getNGramType(),
+                        type -> new VocabularyFeatureExtractor(nGramStrategy, newVocabularyBuilder(nGramStrategy)
+                                .getVocabulary(corpus, textFactory)));
+                proxy.setVocabulary(extractor.getVocabulary());
+                proxy.setFeatureExtractor(extractor);
+            }
+
+            Characteristic characteristic = CharacteristicUtils.findByValue(
+                    characteristics,
+                    proxy.getCharacteristic().getName(),
+                    textFactory::newCharacteristic);
+            // outputs of a trained unit stand for values in the order they were numbered when it was trained: a bundle
+            // saves them, a file of the serialized network does not and was trained with values numbered as the
+            // reader of the time did
+            if (trainedClassifier != null && ModelBundle.isBundle(trainedClassifier)) {
+                characteristic = ModelBundle.readCharacteristic(trainedClassifier, textFactory);
+            } else if (trainedClassifier != null) {
+                characteristic = getLegacyCharacteristic(characteristic);
+            }
+            proxy.setCharacteristic(characteristic);
 
             ClassifierUnit unit = proxy.get();
-
-            unit.build(data.getClassifiableTexts());
+            if (trainingController != null) {
+                unit.setTrainingController(trainingController);
+            }
 
             units.add(unit);
+            // units loaded from trained classifiers are ready and not trained again
+            if (proxy.getTrainedClassifier() == null) {
+                requestedThreads[untrained.size()] = proxy.getThreadCount();
+                untrained.add(unit);
+                features.add(featuresByExtractor.computeIfAbsent(unit.getFeatureExtractor(),
+                        extractor -> extractor.extract(corpus)));
+            }
         }
 
+        new TrainingScheduler(threadCount).build(untrained, Arrays.copyOf(requestedThreads, untrained.size()), texts, features);
+
         return units;
     }
 
+    private void addClassifierUnit(ClassifierUnitSupplier supplier, File trainedClassifier, String characteristicName,
+                                   List<VocabularyWord> vocabulary, NGramStrategy nGramStrategy, int threadCount) {
+        if (nGramStrategy == null)
+            throw new IllegalArgumentException();
+        if (threadCount < 0)
+            throw new IllegalArgumentException("threadCount should not be negative");
+
+        ClassifierUnitProxy proxy = new ClassifierUnitProxy(
+                supplier,
+                trainedClassifier,
+                nGramStrategy,
+                vocabulary,
+                textFactory.newCharacteristic(characteristicName)
+        );
+        proxy.setThreadCount(threadCount);
+        classifierUnits.add(proxy);
+    }
+
+    private void addClassifierUnit(ClassifierUnitSupplier supplier, File trainedClassifier, String characteristicName,
+                                   FeatureExtractor featureExtractor, int threadCount) {
+        if (featureExtractor == null)
+            throw new IllegalArgumentException();
+        if (threadCount < 0)
+            throw new IllegalArgumentException("threadCount should not be negative");
+
+        ClassifierUnitProxy proxy = new ClassifierUnitProxy(
+                supplier,
+                trainedClassifier,
+                featureExtractor,
+                textFactory.newCharacteristic(characteristicName)
+        );
+        proxy.setThreadCount(threadCount);
+        classifierUnits.add(proxy);
+    }
+
+    private static ClassifierUnitSupplier cascadeSupplier(double margin) {
+        if (!(margin >= 0 && margin <= 1))
+            throw new IllegalArgumentException("margin should be in range [0, 1]");
+        return (trainedClassifier, characteristic, featureExtractor) -> new CascadeClassifierUnit(
+                new LogisticRegressionClassifierUnit(null, characteristic, featureExtractor),
+                new NeroClassifierUnit(null, characteristic, featureExtractor),
+                margin);
+    }
+
+    private VocabularyBuilder newVocabularyBuilder(NGramStrategy nGramStrategy) {
+        return new VocabularyBuilder(nGramStrategy)
+                .withMinDocumentFrequency(minDocumentFrequency)
+                .withMaxDocumentFrequency(maxDocumentFrequency)
+                .withMaxSize(maxVocabularySize)
+                .withThreadCount(threadCount);
+    }
+
+    // copy of the characteristic with values numbered as readers did before they numbered them in the order they are
+    // met: the values were added to the possible values of the characteristic in that order and numbered in the order
+    // its set iterates them
+    private Characteristic getLegacyCharacteristic(Characteristic characteristic) {
+        List<CharacteristicValue> valuesMet = new ArrayList<>(characteristic.getPossibleValues());
+        valuesMet.sort(Comparator.comparingInt(CharacteristicValue::getOrderNumber));
+
+        Characteristic legacy = textFactory.newCharacteristic(characteristic.getName());
+        for (CharacteristicValue value : valuesMet) {
+            legacy.addPossibleValue(textFactory.newCharacteristicValue(value.getValue(), 0, legacy));
+        }
+        int orderNumber = 1;
+        for (CharacteristicValue value : legacy.getPossibleValues()) {
+            value.setOrderNumber(orderNumber++);
+        }
+        return legacy;
+    }
+
     private boolean initialized() {
         return !(reader == null || classifierUnits.size() == 0);
     }
@@ -121,13 +539,17 @@ public final class ClassifierBuilder {
         private final ClassifierUnitSupplier supplier;
         private final File trainedClassifier;
         private final NGramStrategy nGramStrategy;
+        private final boolean vocabularyBased;
         private List<VocabularyWord> vocabulary;
+        private FeatureExtractor featureExtractor;
         private Characteristic characteristic;
+        private int threadCount;
 
         public ClassifierUnitProxy(ClassifierUnitSupplier supplier, File trainedClassifier, NGramStrategy nGramStrategy) {
             this.supplier = supplier;
             this.trainedClassifier = trainedClassifier;
             this.nGramStrategy = nGramStrategy;
+            this.vocabularyBased = true;
         }
 
         public ClassifierUnitProxy(ClassifierUnitSupplier supplier, File trainedClassifier, NGramStrategy nGramStrategy, List<VocabularyWord> vocabulary, Characteristic characteristic) {
@@ -136,29 +558,58 @@ public final class ClassifierBuilder {
             this.nGramStrategy = nGramStrategy;
             this.vocabulary = vocabulary;
             this.characteristic = characteristic;
+            this.vocabularyBased = true;
+        }
+
+        public ClassifierUnitProxy(ClassifierUnitSupplier supplier, File trainedClassifier, FeatureExtractor featureExtractor, Characteristic characteristic) {
+            this.supplier = supplier;
+            this.trainedClassifier = trainedClassifier;
+            this.nGramStrategy = featureExtractor.getNGramStrategy();
+            this.featureExtractor = featureExtractor;
+            this.characteristic = characteristic;
+            this.vocabularyBased = false;
         }
 
         public ClassifierUnit get() {
-            return supplier.get(trainedClassifier, characteristic, vocabulary, nGramStrategy);
+            FeatureExtractor extractor = featureExtractor != null ? featureExtractor :
+                    new VocabularyFeatureExtractor(nGramStrategy, vocabulary);
+            return supplier.get(trainedClassifier, characteristic, extractor);
+        }
+
+        /**
+         * @return untrained unit of the same kind working with the given extractor
+         */
+        public ClassifierUnit newUnit(Characteristic characteristic, FeatureExtractor featureExtractor) {
+            return supplier.get(null, characteristic, featureExtractor);
         }
 
         public File getTrainedClassifier() {return this.trainedClassifier;}
 
         public NGramStrategy getNGramStrategy() {return this.nGramStrategy;}
 
+        public boolean isVocabularyBased() {return this.vocabularyBased;}
+
         public List<VocabularyWord> getVocabulary() {return this.vocabulary;}
 
         public Characteristic getCharacteristic() {return this.characteristic;}
 
         public void setVocabulary(List<VocabularyWord> vocabulary) {this.vocabulary = vocabulary; }
 
+        public FeatureExtractor getFeatureExtractor() {return this.featureExtractor;}
+
+        public void setFeatureExtractor(FeatureExtractor featureExtractor) {this.featureExtractor = featureExtractor; }
+
         public void setCharacteristic(Characteristic characteristic) {this.characteristic = characteristic; }
 
+        public int getThreadCount() {return this.threadCount;}
+
+        public void setThreadCount(int threadCount) {this.threadCount = threadCount; }
+
     }
 
     @FunctionalInterface
     interface ClassifierUnitSupplier {
-        ClassifierUnit get(File trainedClassifier, Characteristic characteristic, List<VocabularyWord> vocabulary, NGramStrategy nGramStrategy);
+        ClassifierUnit get(File trainedClassifier, Characteristic characteristic, FeatureExtractor featureExtractor);
     }
 }
 
@@ -1,12 +1,16 @@
 package textclassifier2.classifier;
 
 
+import textclassifier2.metrics.Stage;
+import textclassifier2.metrics.StageProbe;
 import textclassifier2.model.Characteristic;
 import textclassifier2.model.CharacteristicValue;
 import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.FeatureExtractor;
 
 import java.io.File;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,13 +21,149 @@ public interface ClassifierUnit {
 
     Characteristic getCharacteristic();
 
+    /**
+     * @return extractor the unit turns texts into features with. Units sharing an extractor may be given the same
+     * features, so a text is tokenized once for all of them.
+     */
+    FeatureExtractor getFeatureExtractor();
+
     // BUILDING
 
-    void build(List<ClassifiableText> classifiableTexts);
+    default void build(List<ClassifiableText> classifiableTexts) {
+        build(classifiableTexts, getFeatureExtractor().extract(classifiableTexts));
+    }
+
+    /**
+     * Builds the unit from texts already turned into features.
+     *
+     * @param features features of every text extracted with {@link #getFeatureExtractor()}, in the same order
+     */
+    void build(List<ClassifiableText> classifiableTexts, int[][] features);
+
+    default void update(List<ClassifiableText> classifiableTexts) {
+        update(classifiableTexts, getFeatureExtractor().extract(classifiableTexts));
+    }
+
+    /**
+     * Goes on training the unit on new texts starting from what it has learned so far, instead of building it from
+     * scratch. A unit which is not built yet is built from the texts.
+     *
+     * @param features features of every text extracted with {@link #getFeatureExtractor()}, in the same order
+     */
+    void update(List<ClassifiableText> classifiableTexts, int[][] features);
+
+    /**
+     * Makes a copy of the unit working with another feature extractor, usually an extractor with a grown vocabulary.
+     * What the unit has learned about known columns is moved to their new places, new columns start untrained. The
+     * unit itself is not changed.
+     *
+     * @param columnMapping new column of every column of {@link #getFeatureExtractor()}, -1 for a dropped column
+     */
+    // example:
+    // old columns: {0: "car", 1: "tire", 2: "rim"}; new columns: {0: "car", 1: "rim", 2: "brake"}
+    // columnMapping = {0, -1, 1}
+    ClassifierUnit withFeatureExtractor(FeatureExtractor featureExtractor, int[] columnMapping);
+
+    /**
+     * Sets number of threads {@link #build(List)} may use. Units building in a single thread ignore it.
+     */
+    default void setThreadCount(int threadCount) {
+    }
+
+    /**
+     * Sets when iterative training of {@link #build(List)} stops. Units training in a fixed number of steps ignore it.
+     */
+    default void setTrainingController(TrainingController trainingController) {
+    }
+
+    /**
+     * @return why and when the last build stopped, empty if the unit was not built or does not train iteratively
+     */
+    default Optional<TrainingReport> getTrainingReport() {
+        return Optional.empty();
+    }
 
     // COMPOSITE METHODS
 
-    public Optional<CharacteristicValue> classify(ClassifiableText classifiableText);
+    public default Optional<CharacteristicValue> classify(ClassifiableText classifiableText) {
+        return classify(getFeatureExtractor().extract(classifiableText.getText()));
+    }
+
+    /**
+     * @param features features of the text extracted with {@link #getFeatureExtractor()}
+     */
+    Optional<CharacteristicValue> classify(int[] features);
+
+    /**
+     * Same as {@link #classify(int[])}, adding time spent on computing the model and on decoding its output to the
+     * probe. Units not telling the stages apart add all the time to computing.
+     */
+    default Optional<CharacteristicValue> classify(int[] features, StageProbe probe) {
+        long start = System.nanoTime();
+        Optional<CharacteristicValue> value = classify(features);
+        probe.add(Stage.COMPUTE, System.nanoTime() - start);
+        return value;
+    }
+
+    /**
+     * Classifies several texts in one call. Implementations may vectorize and compute the whole batch at once, so
+     * prefer it over calling {@link #classify(ClassifiableText)} in a loop.
+     *
+     * @return classification results in the same order as passed texts
+     */
+    default List<Optional<CharacteristicValue>> classifyBatch(List<ClassifiableText> classifiableTexts) {
+        return classifyBatch(getFeatureExtractor().extract(classifiableTexts));
+    }
+
+    /**
+     * Same as {@link #classifyBatch(List)} for texts already turned into features.
+     */
+    default List<Optional<CharacteristicValue>> classifyBatch(int[][] features) {
+        List<Optional<CharacteristicValue>> values = new ArrayList<>(features.length);
+        for (int[] textFeatures : features) {
+            values.add(classify(textFeatures));
+        }
+        return values;
+    }
+
+    /**
+     * Same as {@link #classifyBatch(int[][])}, adding time spent on the whole batch to the probe as
+     * {@link #classify(int[], StageProbe)} does.
+     */
+    default List<Optional<CharacteristicValue>> classifyBatch(int[][] features, StageProbe probe) {
+        long start = System.nanoTime();
+        List<Optional<CharacteristicValue>> values = classifyBatch(features);
+        probe.add(Stage.COMPUTE, System.nanoTime() - start);
+        return values;
+    }
+
+    default double[] score(ClassifiableText classifiableText) {
+        return score(getFeatureExtractor().extract(classifiableText.getText()));
+    }
+
+    /**
+     * Scores every possible value of the characteristic for the text, what {@link #classify(int[])} decides on. Scores
+     * are in range [0, 1] and sum up to 1, so they are comparable between units of different kinds.
+     *
+     * @param features features of the text extracted with {@link #getFeatureExtractor()}
+     * @return scores of possible values indexed by order number - 1
+     * @throws IllegalStateException if the unit is not built
+     */
+    // example:
+    // possible values = {1: "Yes", 2: "No", 3: "Maybe"}
+    // scores = {0.7, 0.2, 0.1}
+    double[] score(int[] features);
+
+    /**
+     * Same as {@link #score(int[])} for several texts at once.
+     */
+    default double[][] scoreBatch(int[][] features) {
+        double[][] scores = new double[features.length][];
+        for (int i = 0; i < features.length; i++) {
+            scores[i] = score(features[i]);
+        }
+        return scores;
+    }
 
     public void saveClassifier(File file);
 
@@ -0,0 +1,215 @@
+package textclassifier2.classifier;
+
+import textclassifier2.CharacteristicUtils;
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableText;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Counts of texts of one characteristic by their correct value and the value a classifier unit gave them, with
+ * precision and recall of every value derived from them. Values are matched by {@link CharacteristicValue#getValue()}
+ * and ordered by their order numbers; texts left unclassified are counted apart.
+ *
+ * @author ripreal
+ */
+// example:
+// values = {"Yes", "No"}
+//          predicted Yes  No   unclassified
+// actual Yes         40   10   0
+// actual No          5    45   0
+// precision of "Yes" = 40 / (40 + 5); recall of "Yes" = 40 / (40 + 10)
+public final class ConfusionMatrix {
+
+    private final Characteristic characteristic;
+    private final List<CharacteristicValue> values;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    // counts[actual][predicted], the last column counts unclassified texts
+    private final long[][] counts;
+
+    // CONSTRUCTORS
+
+    ConfusionMatrix(Characteristic characteristic) {
+        this.characteristic = characteristic;
+        this.values = Collections.unmodifiableList(Arrays.asList(CharacteristicUtils.getValuesByOrder(characteristic)));
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) != null) {
+                indexes.put(values.get(i).getValue(), i);
+            }
+        }
+        this.counts = new long[values.size()][values.size() + 1];
+    }
+
+    /**
+     * Classifies texts with the unit and counts the results.
+     *
+     * @param features features of the texts extracted with the extractor of the unit, in the same order
+     */
+    static ConfusionMatrix of(ClassifierUnit unit, List<ClassifiableText> classifiableTexts, int[][] features) {
+        ConfusionMatrix matrix = new ConfusionMatrix(unit.getCharacteristic());
+        List<Optional<CharacteristicValue>> predicted = unit.classifyBatch(features);
+        for (int i = 0; i < features.length; i++) {
+            matrix.add(classifiableTexts.get(i).getCharacteristicValue(unit.getCharacteristic().getName()),
+                    predicted.get(i));
+        }
+        return matrix;
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * @return texts of the first value given the second one, 0 if either is not a possible value
+     */
+    public long getCount(CharacteristicValue actual, CharacteristicValue predicted) {
+        Integer row = indexOf(actual);
+        Integer column = indexOf(predicted);
+        return row == null || column == null ? 0 : counts[row][column];
+    }
+
+    /**
+     * @return texts of the value left unclassified
+     */
+    public long getUnclassifiedCount(CharacteristicValue actual) {
+        Integer row = indexOf(actual);
+        return row == null ? 0 : counts[row][values.size()];
+    }
+
+    /**
+     * @return number of all counted texts
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long[] row : counts) {
+            for (long count : row) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return share of texts given their correct value, NaN if no texts are counted
+     */
+    public double getAccuracy() {
+        long correct = 0;
+        for (int i = 0; i < counts.length; i++) {
+            correct += counts[i][i];
+        }
+        long total = getTotal();
+        return total == 0 ? Double.NaN : (double) correct / total;
+    }
+
+    /**
+     * @return share of texts given the value which have it, NaN if no text was given it
+     */
+    public double getPrecision(CharacteristicValue value) {
+        Integer column = indexOf(value);
+        if (column == null)
+            return Double.NaN;
+
+        long predicted = 0;
+        for (long[] row : counts) {
+            predicted += row[column];
+        }
+        return predicted == 0 ? Double.NaN : (double) counts[column][column] / predicted;
+    }
+
+    /**
+     * @return share of texts having the value which were given it, NaN if no text has it
+     */
+    public double getRecall(CharacteristicValue value) {
+        Integer row = indexOf(value);
+        if (row == null)
+            return Double.NaN;
+
+        long actual = 0;
+        for (long count : counts[row]) {
+            actual += count;
+        }
+        return actual == 0 ? Double.NaN : (double) counts[row][row] / actual;
+    }
+
+    /**
+     * @return harmonic mean of precision and recall of the value, NaN if either is NaN
+     */
+    public double getF1(CharacteristicValue value) {
+        double precision = getPrecision(value);
+        double recall = getRecall(value);
+        return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+    }
+
+    /**
+     * @return copy of the counts, rows are correct values and columns are given values in order of {@link #getValues()},
+     * the last column counts unclassified texts
+     */
+    public long[][] getCounts() {
+        long[][] copy = new long[counts.length][];
+        for (int i = 0; i < counts.length; i++) {
+            copy[i] = counts[i].clone();
+        }
+        return copy;
+    }
+
+    // INNER SECTION
+
+    /**
+     * Counts a text, texts without a possible value of the characteristic are not counted.
+     */
+    void add(CharacteristicValue actual, Optional<CharacteristicValue> predicted) {
+        Integer row = indexOf(actual);
+        if (row == null)
+            return;
+
+        Integer column = predicted.map(this::indexOf).orElse(null);
+        counts[row][column == null ? values.size() : column]++;
+    }
+
+    /**
+     * Adds counts of the other matrix of the same characteristic, for example of another fold.
+     */
+    void addAll(ConfusionMatrix other) {
+        if (other.counts.length != counts.length)
+            throw new IllegalArgumentException("matrices of different characteristics can not be added");
+
+        for (int i = 0; i < counts.length; i++) {
+            for (int j = 0; j < counts[i].length; j++) {
+                counts[i][j] += other.counts[i][j];
+            }
+        }
+    }
+
+    // PRIVATE SECTION
+
+    private Integer indexOf(CharacteristicValue value) {
+        return value == null ? null : indexes.get(value.getValue());
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder("Confusion matrix of '" + characteristic.getName() + "' characteristic, accuracy ")
+                .append(String.format("%.2f%%", getAccuracy() * 100));
+        for (int i = 0; i < counts.length; i++) {
+            CharacteristicValue value = values.get(i);
+            table.append(System.lineSeparator())
+                    .append(value == null ? "?" : value.getValue())
+                    .append(": ").append(Arrays.toString(counts[i]))
+                    .append(String.format(" precision %.2f recall %.2f", getPrecision(value), getRecall(value)));
+        }
+        return table.toString();
+    }
+
+    public Characteristic getCharacteristic() {return this.characteristic;}
+
+    /**
+     * @return possible values indexed by order number - 1, null for a missing order number
+     */
+    public List<CharacteristicValue> getValues() {return this.values;}
+}
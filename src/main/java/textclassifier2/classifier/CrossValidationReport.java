@@ -0,0 +1,87 @@
+package textclassifier2.classifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of k-fold cross-validation: a confusion matrix of every unit on every fold, and their sums over all folds.
+ * Every text is counted once in the sums, on the fold it was held out of.
+ *
+ * @author ripreal
+ */
+public final class CrossValidationReport {
+
+    private final int foldCount;
+    // matrices of every fold keyed by unit name
+    private final Map<String, List<ConfusionMatrix>> foldMatrices;
+
+    // CONSTRUCTORS
+
+    CrossValidationReport(int foldCount, Map<String, List<ConfusionMatrix>> foldMatrices) {
+        this.foldCount = foldCount;
+        this.foldMatrices = new LinkedHashMap<>(foldMatrices);
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * @return names of validated units in order they were added to the builder
+     */
+    public List<String> getUnitNames() {
+        return new ArrayList<>(foldMatrices.keySet());
+    }
+
+    /**
+     * @return counts of the unit over all folds
+     */
+    public ConfusionMatrix getConfusionMatrix(String unitName) {
+        List<ConfusionMatrix> matrices = getFoldConfusionMatrices(unitName);
+        ConfusionMatrix total = new ConfusionMatrix(matrices.get(0).getCharacteristic());
+        matrices.forEach(total::addAll);
+        return total;
+    }
+
+    /**
+     * @return counts of the unit on every fold in order of folds
+     */
+    public List<ConfusionMatrix> getFoldConfusionMatrices(String unitName) {
+        List<ConfusionMatrix> matrices = foldMatrices.get(unitName);
+        if (matrices == null)
+            throw new IllegalArgumentException("unit " + unitName + " was not validated");
+        return Collections.unmodifiableList(matrices);
+    }
+
+    /**
+     * @return standard deviation of accuracy of the unit between folds, tells how much the accuracy can be trusted
+     */
+    public double getAccuracyDeviation(String unitName) {
+        List<ConfusionMatrix> matrices = getFoldConfusionMatrices(unitName);
+        double mean = 0;
+        for (ConfusionMatrix matrix : matrices) {
+            mean += matrix.getAccuracy() / matrices.size();
+        }
+        double variance = 0;
+        for (ConfusionMatrix matrix : matrices) {
+            variance += Math.pow(matrix.getAccuracy() - mean, 2) / matrices.size();
+        }
+        return Math.sqrt(variance);
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(foldCount + "-fold cross-validation");
+        for (String unitName : foldMatrices.keySet()) {
+            report.append(System.lineSeparator())
+                    .append(String.format("%s: accuracy %.2f%% +- %.2f%%", unitName,
+                            getConfusionMatrix(unitName).getAccuracy() * 100, getAccuracyDeviation(unitName) * 100));
+        }
+        return report.toString();
+    }
+
+    public int getFoldCount() {return this.foldCount;}
+}
@@ -0,0 +1,240 @@
+package textclassifier2.classifier;
+
+import org.slf4j.Logger;
+import textclassifier2.CharacteristicUtils;
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.ClassifiableFactory;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.FeatureExtractor;
+import textclassifier2.ngram.NGramStrategy;
+import textclassifier2.ngram.TokenizedCorpus;
+import textclassifier2.ngram.VocabularyBuilder;
+import textclassifier2.ngram.VocabularyFeatureExtractor;
+import textclassifier2.testdata.TestDataReader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Runs k-fold cross-validation of the units of a {@link ClassifierBuilder}: texts are shuffled and dealt into k folds,
+ * and for every fold fresh units are built on the other folds and classify the held out one. Vocabularies are built
+ * on the training folds only, so words of held out texts do not leak into training.
+ * <p>
+ * Texts are tokenized once for all folds. Folds run side by side on a fork-join pool within the thread budget: as many
+ * folds as the budget allows run at once, and the budget is shared equally between them, see
+ * {@link TrainingScheduler}. The Encog pool shared by the folds is sized to the whole budget once for the run, see
+ * {@link EnginePool}.
+ *
+ * @author ripreal
+ */
+final class CrossValidator {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(CrossValidator.class);
+    private final List<ClassifierBuilder.ClassifierUnitProxy> proxies;
+    private final Function<NGramStrategy, VocabularyBuilder> vocabularyBuilders;
+    private final TrainingController trainingController;
+    private final ClassifiableFactory textFactory;
+    private final int threadBudget;
+
+    /**
+     * @param proxies            units to validate, units of trained classifiers are validated as untrained ones
+     * @param vocabularyBuilders builders of vocabularies for every n-gram strategy
+     * @param trainingController controller of training of every unit, null for defaults of units
+     */
+    CrossValidator(List<ClassifierBuilder.ClassifierUnitProxy> proxies,
+                   Function<NGramStrategy, VocabularyBuilder> vocabularyBuilders,
+                   TrainingController trainingController, ClassifiableFactory textFactory, int threadBudget) {
+        if (threadBudget < 1)
+            throw new IllegalArgumentException("threadBudget should be positive");
+        this.proxies = proxies;
+        this.vocabularyBuilders = vocabularyBuilders;
+        this.trainingController = trainingController;
+        this.textFactory = textFactory;
+        this.threadBudget = threadBudget;
+    }
+
+    /**
+     * @param seed seed of shuffling texts into folds, the same seed gives the same folds
+     */
+    CrossValidationReport validate(TestDataReader.ClassifiableData data, int foldCount, long seed) {
+        List<ClassifiableText> texts = data.getClassifiableTexts();
+        if (foldCount < 2 || texts.size() < foldCount)
+            throw new IllegalArgumentException("need at least 2 folds and a text for every fold");
+
+        List<Characteristic> characteristics = new ArrayList<>();
+        Map<NGramStrategy.NGRAM_TYPES, TokenizedCorpus> corpora = new EnumMap<>(NGramStrategy.NGRAM_TYPES.class);
+        for (ClassifierBuilder.ClassifierUnitProxy proxy : proxies) {
+            String name = proxy.getCharacteristic().getName();
+            Characteristic characteristic = CharacteristicUtils.findByValue(data.getCharacteristics(), name,
+                    textFactory::newCharacteristic);
+            if (characteristic == null)
+                throw new IllegalArgumentException("texts have no '" + name + "' characteristic");
+            characteristics.add(characteristic);
+
+            NGramStrategy nGramStrategy = proxy.getNGramStrategy();
+            corpora.computeIfAbsent(nGramStrategy.getNGramType(),
+                    type -> TokenizedCorpus.tokenize(texts, nGramStrategy, threadBudget));
+        }
+
+        int[][] folds = split(texts.size(), foldCount, seed);
+        int concurrentFolds = Math.min(foldCount, threadBudget);
+        int foldBudget = Math.max(1, threadBudget / concurrentFolds);
+        log.info("Cross-validating on " + foldCount + " folds, " + concurrentFolds + " at once with "
+                + foldBudget + " thread(s) each. Wait...");
+
+        List<ClassifierUnit> units = Collections.synchronizedList(new ArrayList<>());
+        // held for the whole run, so schedulers of the folds use the pool as it is instead of resizing it
+        EnginePool.acquire(threadBudget);
+        ForkJoinPool pool = new ForkJoinPool(concurrentFolds);
+        try {
+            List<ForkJoinTask<Map<String, ConfusionMatrix>>> tasks = new ArrayList<>(foldCount);
+            for (int fold = 0; fold < foldCount; fold++) {
+                int heldOut = fold;
+                tasks.add(pool.submit(() -> validateFold(texts, characteristics, corpora, folds, heldOut,
+                        foldBudget, units)));
+            }
+
+            Map<String, List<ConfusionMatrix>> matrices = new LinkedHashMap<>();
+            for (ForkJoinTask<Map<String, ConfusionMatrix>> task : tasks) {
+                task.get().forEach((name, matrix) -> matrices.computeIfAbsent(name, key -> new ArrayList<>()).add(matrix));
+            }
+            return new CrossValidationReport(foldCount, matrices);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Cross-validation was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Cross-validation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+            EnginePool.release();
+            units.forEach(ClassifierUnit::shutdown);
+        }
+    }
+
+    // PRIVATE SECTION
+
+    // builds units on all folds but the held out one and counts how they classify it
+    private Map<String, ConfusionMatrix> validateFold(List<ClassifiableText> texts, List<Characteristic> characteristics,
+                                                      Map<NGramStrategy.NGRAM_TYPES, TokenizedCorpus> corpora,
+                                                      int[][] folds, int heldOut, int foldBudget,
+                                                      List<ClassifierUnit> createdUnits) {
+        int[] training = getTrainingTexts(folds, heldOut);
+        List<ClassifiableText> trainingTexts = select(texts, training);
+        List<ClassifiableText> testTexts = select(texts, folds[heldOut]);
+
+        // units of the same n-gram type share vocabulary and extractor, units sharing an extractor share features
+        Map<NGramStrategy.NGRAM_TYPES, TokenizedCorpus> trainingCorpora = new EnumMap<>(NGramStrategy.NGRAM_TYPES.class);
+        Map<NGramStrategy.NGRAM_TYPES, TokenizedCorpus> testCorpora = new EnumMap<>(NGramStrategy.NGRAM_TYPES.class);
+        Map<NGramStrategy.NGRAM_TYPES, VocabularyFeatureExtractor> extractors = new EnumMap<>(NGramStrategy.NGRAM_TYPES.class);
+        Map<FeatureExtractor, int[][]> trainingFeatures = new IdentityHashMap<>();
+
+        List<ClassifierUnit> units = new ArrayList<>(proxies.size());
+        List<int[][]> features = new ArrayList<>(proxies.size());
+        int[] requestedThreads = new int[proxies.size()];
+        for (int i = 0; i < proxies.size(); i++) {
+            ClassifierBuilder.ClassifierUnitProxy proxy = proxies.get(i);
+            NGramStrategy nGramStrategy = proxy.getNGramStrategy();
+            TokenizedCorpus corpus = trainingCorpora.computeIfAbsent(nGramStrategy.getNGramType(),
+                    type -> corpora.get(type).subset(training));
+
+            FeatureExtractor extractor = !proxy.isVocabularyBased() ? proxy.getFeatureExtractor() :
+                    extractors.computeIfAbsent(nGramStrategy.getNGramType(),
+                            type -> new VocabularyFeatureExtractor(nGramStrategy, vocabularyBuilders.apply(nGramStrategy)
+                                    .withThreadCount(foldBudget)
+                                    .getVocabulary(corpus, textFactory)));
+
+            ClassifierUnit unit = proxy.newUnit(characteristics.get(i), extractor);
+            if (trainingController != null) {
+                unit.setTrainingController(trainingController);
+            }
+            createdUnits.add(unit);
+            units.add(unit);
+            requestedThreads[i] = proxy.getThreadCount();
+            features.add(trainingFeatures.computeIfAbsent(extractor, key -> key.extract(corpus)));
+        }
+
+        new TrainingScheduler(foldBudget).build(units, requestedThreads, trainingTexts, features);
+
+        Map<FeatureExtractor, int[][]> testFeatures = new IdentityHashMap<>();
+        List<String> names = Classifier.getUnitNames(units);
+        Map<String, ConfusionMatrix> matrices = new LinkedHashMap<>();
+        for (int i = 0; i < units.size(); i++) {
+            ClassifierUnit unit = units.get(i);
+            TokenizedCorpus corpus = testCorpora.computeIfAbsent(unit.getFeatureExtractor().getNGramStrategy().getNGramType(),
+                    type -> corpora.get(type).subset(folds[heldOut]));
+            ConfusionMatrix matrix = ConfusionMatrix.of(unit, testTexts,
+                    testFeatures.computeIfAbsent(unit.getFeatureExtractor(), extractor -> extractor.extract(corpus)));
+            matrices.put(names.get(i), matrix);
+            log.info(String.format("Fold %d: accuracy of %s is %.2f%%", heldOut + 1, names.get(i), matrix.getAccuracy() * 100));
+        }
+        return matrices;
+    }
+
+    // deals shuffled texts into folds one by one, so folds differ in size by one text at most; texts of a fold keep
+    // their order
+    // example:
+    // size = 7; foldCount = 3; shuffled = {4, 0, 6, 2, 5, 1, 3}
+    // folds = {{2, 3, 4}, {0, 5}, {1, 6}}
+    private static int[][] split(int size, int foldCount, long seed) {
+        int[] shuffled = new int[size];
+        for (int i = 0; i < size; i++) {
+            shuffled[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = swap;
+        }
+
+        int[][] folds = new int[foldCount][];
+        for (int fold = 0; fold < foldCount; fold++) {
+            folds[fold] = new int[(size - fold + foldCount - 1) / foldCount];
+            for (int i = fold, k = 0; i < size; i += foldCount) {
+                folds[fold][k++] = shuffled[i];
+            }
+            Arrays.sort(folds[fold]);
+        }
+        return folds;
+    }
+
+    private static int[] getTrainingTexts(int[][] folds, int heldOut) {
+        int size = 0;
+        for (int fold = 0; fold < folds.length; fold++) {
+            size += fold == heldOut ? 0 : folds[fold].length;
+        }
+
+        int[] training = new int[size];
+        int offset = 0;
+        for (int fold = 0; fold < folds.length; fold++) {
+            if (fold != heldOut) {
+                System.arraycopy(folds[fold], 0, training, offset, folds[fold].length);
+                offset += folds[fold].length;
+            }
+        }
+        Arrays.sort(training);
+        return training;
+    }
+
+    private static List<ClassifiableText> select(List<ClassifiableText> texts, int[] indexes) {
+        List<ClassifiableText> selected = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            selected.add(texts.get(index));
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,138 @@
+package textclassifier2.classifier;
+
+import org.encog.Encog;
+import org.encog.util.concurrency.EngineConcurrency;
+import org.slf4j.Logger;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the pool Encog runs training workers of all networks of the process in. Encog itself cannot be trusted with
+ * it: {@link EngineConcurrency#setThreadCount(int)} shuts the old pool down under the tasks other trainings go on
+ * submitting to it, and after {@code Encog.getInstance().shutdown()} there is no pool at all and every network trains
+ * on the calling thread, whatever its thread count.
+ * <p>
+ * So trainings take the pool with {@link #acquire(int)} and give it back with {@link #release()}. The pool is created
+ * when missing and resized only while no training holds it; a training starting while others run uses the pool as it
+ * is. Threads of the pool are daemons, so the pool never keeps the JVM alive and never has to be shut down.
+ * <p>
+ * Encog has no public accessor of its pool, the pool is reached through the private field of Encog 3.4, the version
+ * this was written against. With another version the field may be gone or mean something else, so it is left alone
+ * and the pool is resized with {@link EngineConcurrency#setThreadCount(int)} while no training holds it: threads are
+ * Encog's own then, they should be stopped with {@code Encog.getInstance().shutdown()}, after which networks train on
+ * the calling thread.
+ *
+ * @author ripreal
+ */
+final class EnginePool {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(EnginePool.class);
+    private static final Object lock = new Object();
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+    private static final String KNOWN_VERSION = "3.4.";
+    // null if Encog is of another version or the field cannot be reached
+    private static final Field executorField = findExecutorField();
+    private static int holders;
+    private static ExecutorService pool;
+    private static int poolSize;
+
+    private EnginePool() {
+    }
+
+    /**
+     * Makes sure Encog has a pool for the training about to start, of the thread count if no other training holds the
+     * pool. Every call should be followed by {@link #release()}.
+     */
+    static void acquire(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount should be positive");
+
+        synchronized (lock) {
+            if (executorField == null) {
+                if (holders == 0 && poolSize != threadCount) {
+                    EngineConcurrency.getInstance().setThreadCount(threadCount);
+                    poolSize = threadCount;
+                }
+            } else {
+                // a missing pool is created even under running trainings, they have nothing submitted to it
+                ExecutorService current = getExecutor();
+                if (current == null || holders == 0 && (current != pool || poolSize != threadCount)) {
+                    replace(current, threadCount);
+                }
+            }
+            holders++;
+        }
+    }
+
+    static void release() {
+        synchronized (lock) {
+            if (holders == 0)
+                throw new IllegalStateException("the pool is not acquired");
+            holders--;
+        }
+    }
+
+    // PRIVATE SECTION
+
+    private static void replace(ExecutorService current, int threadCount) {
+        ExecutorService replacement = Executors.newFixedThreadPool(threadCount, EnginePool::newThread);
+        if (!setExecutor(replacement)) {
+            replacement.shutdown();
+            return;
+        }
+        if (current != null) {
+            // no training holds the pool, so nothing is submitted to it any more
+            current.shutdown();
+        }
+        pool = replacement;
+        poolSize = threadCount;
+        log.debug("Encog pool resized to " + threadCount + " thread(s)");
+    }
+
+    private static Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "encog-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static ExecutorService getExecutor() {
+        try {
+            return (ExecutorService) executorField.get(EngineConcurrency.getInstance());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Encog pool is not accessible, networks may train on a single thread", e);
+            return null;
+        }
+    }
+
+    private static boolean setExecutor(ExecutorService executor) {
+        try {
+            executorField.set(EngineConcurrency.getInstance(), executor);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Encog pool is not accessible, networks may train on a single thread", e);
+            return false;
+        }
+    }
+
+    private static Field findExecutorField() {
+        // Encog.VERSION would be inlined at compile time, the properties tell the version of the library in use
+        String version = Encog.getInstance().getProperties().get(Encog.ENCOG_VERSION);
+        if (version == null || !version.startsWith(KNOWN_VERSION)) {
+            log.info("Encog " + version + " is not " + KNOWN_VERSION + "x, its pool is resized by its own means");
+            return null;
+        }
+        try {
+            Field field = EngineConcurrency.class.getDeclaredField("executor");
+            if (!ExecutorService.class.isAssignableFrom(field.getType()))
+                return null;
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Encog pool is not accessible, it is resized by its own means", e);
+            return null;
+        }
+    }
+}
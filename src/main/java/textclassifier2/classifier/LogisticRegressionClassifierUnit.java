@@ -0,0 +1,449 @@
+package textclassifier2.classifier;
+
+import org.slf4j.Logger;
+import textclassifier2.CharacteristicUtils;
+import textclassifier2.metrics.Stage;
+import textclassifier2.metrics.StageProbe;
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.FeatureExtractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Multinomial logistic regression (softmax) classifier working directly on the sparse feature columns of texts. A text
+ * is scored by summing the weights of its columns for every possible {@link CharacteristicValue}, so neither training
+ * nor classification ever builds a dense vector of the text.
+ * <p>
+ * Trained with stochastic gradient descent in the Hogwild manner: every epoch the shuffled texts are split between
+ * threads which update the shared weight arrays without any locking. Texts touch few columns each, so threads rarely
+ * update the same weights and lost updates do not hurt convergence. Training with one thread is deterministic.
+ * <p>
+ * L2 decay shrinks all weights every step, but an update only touches the columns of its text. So every column keeps
+ * the step it was last decayed at and catches up on the missed steps at once when a text touches it, and the columns
+ * left behind catch up at the end of every epoch. With one thread the weights are those of decaying every weight every
+ * step; with more threads steps are counted per thread.
+ * <p>
+ * Weights are kept in one flat array, the weights of a column for all values side by side, so an update of a text
+ * touches one short run of the array per column.
+ * <p>
+ * Training publishes a new model at once, so the unit may classify from any number of threads, also while being
+ * rebuilt.
+ *
+ * @author ripreal
+ */
+public class LogisticRegressionClassifierUnit implements ClassifierUnit {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(LogisticRegressionClassifierUnit.class);
+    public static final int DEFAULT_EPOCHS = 10;
+    private static final double LEARNING_RATE = 0.2;
+    private static final double LEARNING_RATE_DECAY = 0.5;
+    private static final double L2 = 1e-6;
+    private static final long SEED = 42;
+    private final Characteristic characteristic;
+    private final FeatureExtractor featureExtractor;
+    private final int dimension;
+    private final int classCount;
+    // possible characteristic values indexed by order number - 1
+    private final CharacteristicValue[] valuesByOrder;
+    // order numbers of possible values by value, texts are labelled by these
+    private final Map<String, Integer> orderNumbers;
+    private final int epochs;
+    private volatile int threadCount = Runtime.getRuntime().availableProcessors();
+    private volatile Model model;
+
+    // CONSTRUCTORS
+
+    LogisticRegressionClassifierUnit(File trainedClassifier, Characteristic characteristic, FeatureExtractor featureExtractor) {
+        this(trainedClassifier, characteristic, featureExtractor, DEFAULT_EPOCHS);
+    }
+
+    LogisticRegressionClassifierUnit(File trainedClassifier, Characteristic characteristic, FeatureExtractor featureExtractor, int epochs) {
+        if (characteristic.getName().equals("") ||
+                characteristic.getPossibleValues() == null ||
+                characteristic.getPossibleValues().size() == 0 ||
+                featureExtractor == null ||
+                featureExtractor.getDimension() == 0 ||
+                epochs < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.characteristic = characteristic;
+        this.featureExtractor = featureExtractor;
+        this.dimension = featureExtractor.getDimension();
+        this.valuesByOrder = CharacteristicUtils.getValuesByOrder(characteristic);
+        this.orderNumbers = CharacteristicUtils.getOrderNumbersByValue(valuesByOrder);
+        this.classCount = valuesByOrder.length;
+        this.epochs = epochs;
+
+        if (trainedClassifier != null) {
+            try {
+                this.model = readModel(ModelBundle.openParameters(trainedClassifier));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    // CLIENT SECTION
+
+    @Override
+    public void build(List<ClassifiableText> classifiableTexts, int[][] features) {
+        model = train(new Model(new double[classCount], new double[dimension * classCount]), classifiableTexts, features);
+        log.info("Classifier for '" + characteristic.getName() + "' characteristic trained. Wait...");
+    }
+
+    /**
+     * Runs the epochs of SGD over the texts starting from a copy of the current weights.
+     */
+    @Override
+    public void update(List<ClassifiableText> classifiableTexts, int[][] features) {
+        Model current = model;
+        if (current == null) {
+            build(classifiableTexts, features);
+            return;
+        }
+
+        model = train(new Model(current.biases.clone(), current.weights.clone()), classifiableTexts, features);
+        log.info("Classifier for '" + characteristic.getName() + "' characteristic updated. Wait...");
+    }
+
+    /**
+     * Weights of known columns are moved to their new columns, weights of new columns are zero, so the copy classifies
+     * texts exactly as the unit does until it is trained on new columns.
+     */
+    @Override
+    public ClassifierUnit withFeatureExtractor(FeatureExtractor featureExtractor, int[] columnMapping) {
+        if (columnMapping.length != dimension)
+            throw new IllegalArgumentException("columnMapping should have a column for every feature of the unit");
+
+        LogisticRegressionClassifierUnit unit = new LogisticRegressionClassifierUnit(null, characteristic, featureExtractor, epochs);
+        unit.threadCount = threadCount;
+        Model current = model;
+        if (current == null) {
+            return unit;
+        }
+
+        double[] weights = new double[unit.dimension * classCount];
+        for (int column = 0; column < dimension; column++) {
+            if (columnMapping[column] >= 0) {
+                System.arraycopy(current.weights, column * classCount, weights, columnMapping[column] * classCount, classCount);
+            }
+        }
+        unit.model = new Model(current.biases.clone(), weights);
+        return unit;
+    }
+
+    @Override
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount should be positive");
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public Optional<CharacteristicValue> classify(int[] features) {
+        Model current = model;
+        if (current == null) {
+            return Optional.empty();
+        }
+
+        double[] scores = new double[classCount];
+        current.score(features, scores);
+
+        return decode(scores);
+    }
+
+    @Override
+    public Optional<CharacteristicValue> classify(int[] features, StageProbe probe) {
+        Model current = model;
+        if (current == null) {
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        double[] scores = new double[classCount];
+        current.score(features, scores);
+        long computed = System.nanoTime();
+        Optional<CharacteristicValue> value = decode(scores);
+
+        probe.add(Stage.COMPUTE, computed - start);
+        probe.add(Stage.DECODE, System.nanoTime() - computed);
+        return value;
+    }
+
+    /**
+     * @return softmax of scores of possible values
+     */
+    @Override
+    public double[] score(int[] features) {
+        Model current = model;
+        if (current == null)
+            throw new IllegalStateException("Classifier for '" + characteristic.getName() + "' characteristic is not built");
+
+        double[] scores = new double[classCount];
+        current.score(features, scores);
+
+        double max = scores[0];
+        for (int k = 1; k < classCount; k++) {
+            max = Math.max(max, scores[k]);
+        }
+        double sum = 0;
+        for (int k = 0; k < classCount; k++) {
+            scores[k] = Math.exp(scores[k] - max);
+            sum += scores[k];
+        }
+        for (int k = 0; k < classCount; k++) {
+            scores[k] /= sum;
+        }
+        return scores;
+    }
+
+    /**
+     * Saves the unit into a bundle named after it, see {@link ModelBundle}.
+     */
+    public void saveClassifier(File dir) {
+        ModelBundle.write(this, dir);
+        log.info("Trained Classifier for '" + characteristic.getName() + "' characteristic saved. Wait...");
+    }
+
+    public void saveClassifier(OutputStream stream) {
+        ModelBundle.write(this, stream);
+        log.info("Trained Classifier for '" + characteristic.getName() + "' characteristic saved. Wait...");
+    }
+
+    public void shutdown() {
+        // training threads are released after every build
+    }
+
+    // INNER SECTION
+
+    void writeBundle(ModelBundle.Writer out) {
+        Model current = model;
+        if (current == null)
+            throw new IllegalStateException("Classifier for '" + characteristic.getName() + "' characteristic is not built");
+
+        out.writeDoubles(current.biases);
+        out.writeDoubles(current.weights);
+    }
+
+    static LogisticRegressionClassifierUnit readBundle(ModelBundle.Reader in, Characteristic characteristic,
+                                                       FeatureExtractor featureExtractor) throws IOException {
+        LogisticRegressionClassifierUnit unit = new LogisticRegressionClassifierUnit(null, characteristic, featureExtractor);
+        unit.model = unit.readModel(in);
+        return unit;
+    }
+
+    // PRIVATE SECTION
+
+    private Optional<CharacteristicValue> decode(double[] scores) {
+        int best = 0;
+        for (int k = 1; k < classCount; k++) {
+            if (scores[k] > scores[best]) {
+                best = k;
+            }
+        }
+        return Optional.ofNullable(valuesByOrder[best]);
+    }
+
+    // runs the epochs of SGD over the texts, updating the weights of the model in place
+    private Model train(Model trained, List<ClassifiableText> classifiableTexts, int[][] features) {
+        int[] labels = new int[classifiableTexts.size()];
+        int i = 0;
+        for (ClassifiableText classifiableText : classifiableTexts) {
+            labels[i++] = getOrderNumber(classifiableText) - 1;
+        }
+
+        int threads = Math.max(1, Math.min(threadCount, labels.length));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Random random = new Random(SEED);
+        int[] order = new int[labels.length];
+        for (i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        // step of the epoch every column was last decayed at
+        int[] decayedSteps = new int[dimension];
+        // steps a thread makes in an epoch at most
+        int steps = (order.length + threads - 1) / threads;
+
+        try {
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                shuffle(order, random);
+                double rate = LEARNING_RATE / (1 + LEARNING_RATE_DECAY * epoch);
+                double[] decays = getDecays(rate, steps);
+
+                // every thread takes its own slice of the shuffled texts and updates shared weights without locking
+                List<ForkJoinTask<Double>> tasks = new ArrayList<>(threads);
+                for (int t = 0; t < threads; t++) {
+                    int from = (int) ((long) order.length * t / threads);
+                    int to = (int) ((long) order.length * (t + 1) / threads);
+                    tasks.add(pool.submit(() -> trainSlice(trained, features, labels, order, from, to, rate, decays,
+                            decayedSteps)));
+                }
+
+                double loss = 0;
+                for (ForkJoinTask<Double> task : tasks) {
+                    loss += task.join();
+                }
+                decayAll(trained, decays, decayedSteps, steps);
+                log.info("Training Classifier for '" + characteristic.getName() + "' characteristic. Epoch " + (epoch + 1)
+                        + " of " + epochs + ", loss: " + String.format("%.4f", loss / Math.max(1, labels.length)) + ". Wait...");
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        return trained;
+    }
+
+    /**
+     * Runs one pass of SGD over texts order[from, to), the text at order[from + s] being step s of the epoch.
+     *
+     * @param decays       decays[n] is the factor n steps of L2 decay shrink a weight by
+     * @param decayedSteps step of the epoch every column was last decayed at, moved on as columns are updated
+     * @return summed cross-entropy loss of the texts before their updates
+     */
+    private double trainSlice(Model trained, int[][] features, int[] labels, int[] order, int from, int to, double rate,
+                              double[] decays, int[] decayedSteps) {
+        double[] weights = trained.weights;
+        double[] biases = trained.biases;
+        double[] scores = new double[classCount];
+        double loss = 0;
+
+        for (int i = from; i < to; i++) {
+            int step = i - from;
+            int text = order[i];
+            int[] columns = features[text];
+            int label = labels[text];
+
+            // the text is scored with its columns decayed for all steps before this one
+            for (int column : columns) {
+                decay(weights, column, decays, decayedSteps, step);
+            }
+
+            // softmax of scores
+            trained.score(columns, scores);
+            double max = scores[0];
+            for (int k = 1; k < classCount; k++) {
+                max = Math.max(max, scores[k]);
+            }
+            double sum = 0;
+            for (int k = 0; k < classCount; k++) {
+                scores[k] = Math.exp(scores[k] - max);
+                sum += scores[k];
+            }
+            loss -= Math.log(Math.max(scores[label] / sum, Double.MIN_NORMAL));
+
+            // gradient of cross-entropy is (probability - ideal), applied to bias and weights of active columns only,
+            // the decay of this step goes with it
+            for (int k = 0; k < classCount; k++) {
+                scores[k] = scores[k] / sum - (k == label ? 1 : 0);
+                biases[k] -= rate * scores[k];
+            }
+            for (int column : columns) {
+                decay(weights, column, decays, decayedSteps, step + 1);
+                int offset = column * classCount;
+                for (int k = 0; k < classCount; k++) {
+                    weights[offset + k] -= rate * scores[k];
+                }
+            }
+        }
+
+        return loss;
+    }
+
+    // example:
+    // rate = 0.2, steps = 2
+    // decays = {1, 1 - 0.2 * L2, (1 - 0.2 * L2)^2}
+    private static double[] getDecays(double rate, int steps) {
+        double[] decays = new double[steps + 1];
+        decays[0] = 1;
+        for (int n = 1; n <= steps; n++) {
+            decays[n] = decays[n - 1] * (1 - rate * L2);
+        }
+        return decays;
+    }
+
+    // shrinks the weights of the column by the decay of the steps it missed up to the step
+    private void decay(double[] weights, int column, double[] decays, int[] decayedSteps, int step) {
+        int missed = step - decayedSteps[column];
+        if (missed <= 0) {
+            return;
+        }
+        double factor = decays[missed];
+        int offset = column * classCount;
+        for (int k = 0; k < classCount; k++) {
+            weights[offset + k] *= factor;
+        }
+        decayedSteps[column] = step;
+    }
+
+    // brings all columns to the end of the epoch and starts counting steps of the next one
+    private void decayAll(Model trained, double[] decays, int[] decayedSteps, int steps) {
+        for (int column = 0; column < dimension; column++) {
+            decay(trained.weights, column, decays, decayedSteps, steps);
+            decayedSteps[column] = 0;
+        }
+    }
+
+    private static void shuffle(int[] order, Random random) {
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    private Model readModel(ModelBundle.Reader in) throws IOException {
+        return new Model(in.readDoubles(classCount), in.readDoubles(dimension * classCount));
+    }
+
+    private int getOrderNumber(ClassifiableText classifiableText) {
+        return CharacteristicUtils.getOrderNumber(classifiableText, characteristic, orderNumbers);
+    }
+
+    private static final class Model {
+        private final double[] biases;
+        // weights of column c for all values are at [c * classCount, (c + 1) * classCount)
+        private final double[] weights;
+
+        Model(double[] biases, double[] weights) {
+            this.biases = biases;
+            this.weights = weights;
+        }
+
+        void score(int[] columns, double[] scores) {
+            int classCount = biases.length;
+            System.arraycopy(biases, 0, scores, 0, classCount);
+            for (int column : columns) {
+                int offset = column * classCount;
+                for (int k = 0; k < classCount; k++) {
+                    scores[k] += weights[offset + k];
+                }
+            }
+        }
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    @Override
+    public String toString() {
+        return characteristic.getName() + "LogisticRegressionClassifier";
+    }
+
+    public Characteristic getCharacteristic() {return this.characteristic;}
+
+    public FeatureExtractor getFeatureExtractor() {return this.featureExtractor;}
+}
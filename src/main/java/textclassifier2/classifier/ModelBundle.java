@@ -0,0 +1,597 @@
+package textclassifier2.classifier;
+
+import org.encog.engine.network.activation.ActivationFunction;
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableFactory;
+import textclassifier2.model.VocabularyWord;
+import textclassifier2.ngram.FeatureExtractor;
+import textclassifier2.ngram.HashingFeatureExtractor;
+import textclassifier2.ngram.NGramStrategy;
+import textclassifier2.ngram.VocabularyFeatureExtractor;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Self-contained binary image of a trained {@link ClassifierUnit}: everything needed to classify with the unit without
+ * training data. A bundle holds the kind of the unit, the characteristic with order numbers of its values, the n-gram
+ * strategy with the vocabulary or the number of hashing buckets, and the parameters of the unit. A cascade holds the
+ * kinds and parameters of both its units.
+ * <p>
+ * Layout, all numbers little-endian:
+ * <pre>
+ * int     magic "TCMB"
+ * int     version
+ * int     length of the payload in bytes
+ * byte[]  payload
+ * int     CRC32 of the payload
+ * </pre>
+ * Strings of the payload are UTF-8 bytes preceded by their length, arrays of parameters are raw arrays preceded by
+ * their length. A bundle is read with one bulk read of the payload, and arrays of parameters are copied out of it in
+ * bulk, so nothing is parsed number by number. Bundles may follow each other in one stream.
+ *
+ * @author ripreal
+ */
+public final class ModelBundle {
+
+    public static final String FILE_EXTENSION = ".bundle";
+    // bytes 'T' 'C' 'M' 'B' read as a little-endian int
+    private static final int MAGIC = 0x424D4354;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private static final String NERO = "nero";
+    private static final String QUANTIZED_NERO = "quantized-nero";
+    private static final String NAIVE_BAYES = "naive-bayes";
+    private static final String LOGISTIC_REGRESSION = "logistic-regression";
+    private static final String CASCADE = "cascade";
+    private static final String VOCABULARY = "vocabulary";
+    private static final String HASHING = "hashing";
+
+    private ModelBundle() {
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * Writes the bundle of the unit to the directory, the file is named after the unit so units of several
+     * characteristics or kinds may be saved side by side.
+     *
+     * @return written file
+     */
+    public static File write(ClassifierUnit unit, File dir) {
+        if (!dir.isDirectory())
+            throw new IllegalArgumentException("need directory not a file!");
+
+        File file = new File(dir, getFileName(unit));
+        try (OutputStream stream = new FileOutputStream(file)) {
+            write(unit, stream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return file;
+    }
+
+    public static void write(ClassifierUnit unit, OutputStream stream) {
+        Writer out = new Writer();
+        out.writeString(getKind(unit));
+        writeCharacteristic(unit.getCharacteristic(), out);
+        writeFeatureExtractor(unit.getFeatureExtractor(), out);
+        writeParameters(unit, out);
+
+        ByteBuffer payload = out.toByteBuffer();
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, payload.limit());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(payload.limit());
+        ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt((int) crc.getValue());
+        try {
+            stream.write(header.array());
+            stream.write(payload.array(), 0, payload.limit());
+            stream.write(trailer.array());
+            stream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ClassifierUnit read(File file, ClassifiableFactory factory) {
+        try (InputStream stream = new FileInputStream(file)) {
+            return read(stream, factory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the next bundle of the stream into a unit ready to classify.
+     *
+     * @param factory factory to create the characteristic, its values and vocabulary words with
+     */
+    public static ClassifierUnit read(InputStream stream, ClassifiableFactory factory) throws IOException {
+        return read(stream, factory, new HashMap<>());
+    }
+
+    /**
+     * @return true if the file starts as a bundle does
+     */
+    public static boolean isBundle(File file) {
+        byte[] magic = new byte[4];
+        try (InputStream stream = new FileInputStream(file)) {
+            new DataInputStream(stream).readFully(magic);
+        } catch (IOException e) {
+            return false;
+        }
+        return ByteBuffer.wrap(magic).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+    }
+
+    // INNER SECTION
+
+    /**
+     * Opens the bundle of the file to read parameters of a unit created with its own characteristic and extractor.
+     * The description of the characteristic and extractor in the bundle is skipped.
+     */
+    static Reader openParameters(File file) throws IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            Reader in = open(stream);
+            in.readString();
+            readCharacteristic(in, null);
+            readFeatureExtractor(in, null);
+            return in;
+        }
+    }
+
+    /**
+     * Reads the characteristic the unit of the bundle was trained with, its values keep the order numbers the outputs
+     * of the unit stand for.
+     */
+    static Characteristic readCharacteristic(File file, ClassifiableFactory factory) throws IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            Reader in = open(stream);
+            in.readString();
+            return readCharacteristic(in, factory);
+        }
+    }
+
+    /**
+     * Reads the extractor the unit of the bundle was trained with, the unit is created with it to read its parameters
+     * with {@link #openParameters(File)}.
+     *
+     * @param extractors extractors read so far keyed by their image in bundles, see
+     *                   {@link #read(InputStream, ClassifiableFactory, Map)}
+     */
+    static FeatureExtractor readFeatureExtractor(File file, ClassifiableFactory factory,
+                                                 Map<ByteBuffer, FeatureExtractor> extractors) throws IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            Reader in = open(stream);
+            in.readString();
+            readCharacteristic(in, null);
+
+            int start = in.position();
+            readFeatureExtractor(in, null);
+            int end = in.position();
+            FeatureExtractor featureExtractor = extractors.get(in.slice(start, end));
+            if (featureExtractor == null) {
+                in.position(start);
+                featureExtractor = readFeatureExtractor(in, factory);
+                extractors.put(in.slice(start, end), featureExtractor);
+            }
+            return featureExtractor;
+        }
+    }
+
+    /**
+     * Same as {@link #read(InputStream, ClassifiableFactory)}, units with the same extractor in their bundles are given
+     * one shared extractor.
+     *
+     * @param extractors extractors read so far keyed by their image in bundles, may be shared by concurrent reads if
+     *                   thread safe
+     */
+    static ClassifierUnit read(InputStream stream, ClassifiableFactory factory,
+                               Map<ByteBuffer, FeatureExtractor> extractors) throws IOException {
+        Reader in = open(stream);
+        String kind = in.readString();
+        Characteristic characteristic = readCharacteristic(in, factory);
+
+        int start = in.position();
+        readFeatureExtractor(in, null);
+        int end = in.position();
+        FeatureExtractor featureExtractor = extractors.get(in.slice(start, end));
+        if (featureExtractor == null) {
+            in.position(start);
+            featureExtractor = readFeatureExtractor(in, factory);
+            FeatureExtractor known = extractors.putIfAbsent(in.slice(start, end), featureExtractor);
+            featureExtractor = known != null ? known : featureExtractor;
+        }
+        in.position(end);
+
+        return readParameters(kind, in, characteristic, featureExtractor);
+    }
+
+    /**
+     * Writes the kind and parameters of a unit nested into another one, see {@link #readUnit(Reader, Characteristic,
+     * FeatureExtractor)}.
+     */
+    static void writeUnit(ClassifierUnit unit, Writer out) {
+        out.writeString(getKind(unit));
+        writeParameters(unit, out);
+    }
+
+    static ClassifierUnit readUnit(Reader in, Characteristic characteristic, FeatureExtractor featureExtractor)
+            throws IOException {
+        return readParameters(in.readString(), in, characteristic, featureExtractor);
+    }
+
+    // PRIVATE SECTION
+
+    // example:
+    // unit = "Тема/раздел" Naive Bayes unit
+    // file name = "Тема_разделNaiveBayesClassifier.bundle"
+    private static String getFileName(ClassifierUnit unit) {
+        return unit.toString().replaceAll("[^\\p{L}\\p{N}_.-]", "_") + FILE_EXTENSION;
+    }
+
+    private static void writeParameters(ClassifierUnit unit, Writer out) {
+        if (unit instanceof NeroClassifierUnit) {
+            ((NeroClassifierUnit) unit).writeBundle(out);
+        } else if (unit instanceof QuantizedNeroClassifierUnit) {
+            ((QuantizedNeroClassifierUnit) unit).writeBundle(out);
+        } else if (unit instanceof NaiveBayesClassifierUnit) {
+            ((NaiveBayesClassifierUnit) unit).writeBundle(out);
+        } else if (unit instanceof LogisticRegressionClassifierUnit) {
+            ((LogisticRegressionClassifierUnit) unit).writeBundle(out);
+        } else {
+            ((CascadeClassifierUnit) unit).writeBundle(out);
+        }
+    }
+
+    private static ClassifierUnit readParameters(String kind, Reader in, Characteristic characteristic,
+                                                 FeatureExtractor featureExtractor) throws IOException {
+        switch (kind) {
+            case NERO:
+                return NeroClassifierUnit.readBundle(in, characteristic, featureExtractor);
+            case QUANTIZED_NERO:
+                return QuantizedNeroClassifierUnit.readBundle(in, characteristic, featureExtractor);
+            case NAIVE_BAYES:
+                return NaiveBayesClassifierUnit.readBundle(in, characteristic, featureExtractor);
+            case LOGISTIC_REGRESSION:
+                return LogisticRegressionClassifierUnit.readBundle(in, characteristic, featureExtractor);
+            case CASCADE:
+                return CascadeClassifierUnit.readBundle(in, characteristic, featureExtractor);
+            default:
+                throw new IOException("unknown kind of classifier unit: " + kind);
+        }
+    }
+
+    private static String getKind(ClassifierUnit unit) {
+        if (unit instanceof NeroClassifierUnit)
+            return NERO;
+        if (unit instanceof QuantizedNeroClassifierUnit)
+            return QUANTIZED_NERO;
+        if (unit instanceof NaiveBayesClassifierUnit)
+            return NAIVE_BAYES;
+        if (unit instanceof LogisticRegressionClassifierUnit)
+            return LOGISTIC_REGRESSION;
+        if (unit instanceof CascadeClassifierUnit)
+            return CASCADE;
+        throw new IllegalArgumentException("unit " + unit + " can not be saved into a bundle");
+    }
+
+    private static Reader open(InputStream stream) throws IOException {
+        // not buffered, so the stream is left right after the bundle
+        DataInputStream in = new DataInputStream(stream);
+
+        byte[] headerBytes = new byte[HEADER_SIZE];
+        in.readFully(headerBytes);
+        ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC)
+            throw new IOException("not a bundle of a classifier unit");
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("unsupported version of bundle: " + version);
+        int length = header.getInt();
+        if (length < 0)
+            throw new IOException("bundle is corrupted");
+
+        byte[] payload = new byte[length + 4];
+        try {
+            in.readFully(payload);
+        } catch (EOFException e) {
+            throw new IOException("bundle is truncated", e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        if (buffer.getInt(length) != (int) crc.getValue())
+            throw new IOException("checksum of bundle does not match, the bundle is corrupted");
+
+        buffer.limit(length);
+        return new Reader(buffer);
+    }
+
+    private static void writeCharacteristic(Characteristic characteristic, Writer out) {
+        out.writeString(characteristic.getName());
+        out.writeInt(characteristic.getPossibleValues().size());
+        for (CharacteristicValue value : characteristic.getPossibleValues()) {
+            out.writeString(value.getValue());
+            out.writeInt(value.getOrderNumber());
+        }
+    }
+
+    // skips the characteristic if factory is null
+    private static Characteristic readCharacteristic(Reader in, ClassifiableFactory factory) throws IOException {
+        String name = in.readString();
+        Characteristic characteristic = factory == null ? null : factory.newCharacteristic(name);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String value = in.readString();
+            int orderNumber = in.readInt();
+            if (characteristic != null) {
+                characteristic.addPossibleValue(factory.newCharacteristicValue(value, orderNumber, characteristic));
+            }
+        }
+        return characteristic;
+    }
+
+    private static void writeFeatureExtractor(FeatureExtractor featureExtractor, Writer out) {
+        if (featureExtractor instanceof VocabularyFeatureExtractor) {
+            out.writeString(VOCABULARY);
+            out.writeString(featureExtractor.getNGramStrategy().getNGramType().name());
+            List<VocabularyWord> vocabulary = ((VocabularyFeatureExtractor) featureExtractor).getVocabulary();
+            out.writeInt(vocabulary.size());
+            for (VocabularyWord word : vocabulary) {
+                out.writeString(word.getValue());
+            }
+        } else if (featureExtractor instanceof HashingFeatureExtractor) {
+            out.writeString(HASHING);
+            out.writeString(featureExtractor.getNGramStrategy().getNGramType().name());
+            out.writeInt(featureExtractor.getDimension());
+        } else {
+            throw new IllegalArgumentException("feature extractor " + featureExtractor + " can not be saved into a bundle");
+        }
+    }
+
+    // skips the extractor if factory is null
+    private static FeatureExtractor readFeatureExtractor(Reader in, ClassifiableFactory factory) throws IOException {
+        String kind = in.readString();
+        NGramStrategy nGramStrategy;
+        try {
+            nGramStrategy = NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.valueOf(in.readString()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("unknown n-gram strategy of bundle", e);
+        }
+
+        switch (kind) {
+            case VOCABULARY:
+                int size = in.readInt();
+                List<VocabularyWord> vocabulary = new ArrayList<>(factory == null ? 0 : size);
+                for (int i = 0; i < size; i++) {
+                    String value = in.readString();
+                    if (factory != null) {
+                        vocabulary.add(factory.newVocabularyWord(value));
+                    }
+                }
+                return factory == null ? null : new VocabularyFeatureExtractor(nGramStrategy, vocabulary);
+            case HASHING:
+                int buckets = in.readInt();
+                return factory == null ? null : new HashingFeatureExtractor(nGramStrategy, buckets);
+            default:
+                throw new IOException("unknown feature extractor of bundle: " + kind);
+        }
+    }
+
+    /**
+     * Payload of a bundle being written, grows as needed.
+     */
+    static final class Writer {
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            buffer.putInt(value);
+        }
+
+        void writeDouble(double value) {
+            ensureCapacity(8);
+            buffer.putDouble(value);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            ensureCapacity(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void writeDoubles(double[] values) {
+            writeInt(values.length);
+            ensureCapacity(values.length * 8L);
+            buffer.asDoubleBuffer().put(values);
+            buffer.position(buffer.position() + values.length * 8);
+        }
+
+        void writeInts(int[] values) {
+            writeInt(values.length);
+            ensureCapacity(values.length * 4L);
+            buffer.asIntBuffer().put(values);
+            buffer.position(buffer.position() + values.length * 4);
+        }
+
+        void writeFloats(float[] values) {
+            writeInt(values.length);
+            ensureCapacity(values.length * 4L);
+            buffer.asFloatBuffer().put(values);
+            buffer.position(buffer.position() + values.length * 4);
+        }
+
+        void writeBytes(byte[] values) {
+            writeInt(values.length);
+            ensureCapacity(values.length);
+            buffer.put(values);
+        }
+
+        void writeLongs(long[] values) {
+            writeInt(values.length);
+            ensureCapacity(values.length * 8L);
+            buffer.asLongBuffer().put(values);
+            buffer.position(buffer.position() + values.length * 8);
+        }
+
+        ByteBuffer toByteBuffer() {
+            buffer.flip();
+            return buffer;
+        }
+
+        private void ensureCapacity(long bytes) {
+            if (buffer.remaining() >= bytes)
+                return;
+            long capacity = Math.max((long) buffer.capacity() * 2, buffer.position() + bytes);
+            if (capacity > Integer.MAX_VALUE - 16)
+                throw new IllegalStateException("classifier unit is too large for a bundle");
+            ByteBuffer grown = ByteBuffer.allocate((int) capacity).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Payload of a bundle being read.
+     */
+    static final class Reader {
+        private final ByteBuffer buffer;
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int position() {
+            return buffer.position();
+        }
+
+        void position(int position) {
+            buffer.position(position);
+        }
+
+        // bytes [from, to) of the payload, not to be changed
+        ByteBuffer slice(int from, int to) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(to).position(from);
+            return slice.slice();
+        }
+
+        int readInt() {
+            return buffer.getInt();
+        }
+
+        double readDouble() {
+            return buffer.getDouble();
+        }
+
+        String readString() throws IOException {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+                throw new IOException("bundle is corrupted");
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        /**
+         * Reads the class name of an activation function and makes a new one of it, no other class is instantiated or
+         * initialized.
+         */
+        ActivationFunction readActivationFunction() throws IOException {
+            String name = readString();
+            try {
+                // the class is initialized by newInstance only once it is known to be an activation function
+                Class<? extends ActivationFunction> type = Class.forName(name, false, ModelBundle.class.getClassLoader())
+                        .asSubclass(ActivationFunction.class);
+                return type.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IOException("unknown activation function of bundle: " + name, e);
+            }
+        }
+
+        /**
+         * @param expectedLength length the array has to have
+         */
+        double[] readDoubles(int expectedLength) throws IOException {
+            double[] values = new double[expectedLength];
+            readDoubles(values);
+            return values;
+        }
+
+        /**
+         * Reads an array of the same length into the passed one.
+         */
+        void readDoubles(double[] values) throws IOException {
+            readLength(values.length);
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + values.length * 8);
+        }
+
+        long[] readLongs(int expectedLength) throws IOException {
+            long[] values = new long[readLength(expectedLength)];
+            buffer.asLongBuffer().get(values);
+            buffer.position(buffer.position() + values.length * 8);
+            return values;
+        }
+
+        /**
+         * Reads an array of any length.
+         */
+        int[] readInts() throws IOException {
+            int length = buffer.getInt();
+            if (length < 0 || (long) length * 4 > buffer.remaining())
+                throw new IOException("bundle is corrupted");
+            int[] values = new int[length];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + length * 4);
+            return values;
+        }
+
+        float[] readFloats(int expectedLength) throws IOException {
+            float[] values = new float[readLength(expectedLength, 4)];
+            buffer.asFloatBuffer().get(values);
+            buffer.position(buffer.position() + values.length * 4);
+            return values;
+        }
+
+        byte[] readBytes(int expectedLength) throws IOException {
+            byte[] values = new byte[readLength(expectedLength, 1)];
+            buffer.get(values);
+            return values;
+        }
+
+        private int readLength(int expectedLength) throws IOException {
+            return readLength(expectedLength, 8);
+        }
+
+        private int readLength(int expectedLength, int elementSize) throws IOException {
+            int length = buffer.getInt();
+            if (length != expectedLength || (long) length * elementSize > buffer.remaining())
+                throw new IOException("trained classifier does not fit the feature extractor or characteristic");
+            return length;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package textclassifier2.classifier;
+
+import org.slf4j.Logger;
+import textclassifier2.CharacteristicUtils;
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.FeatureExtractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Multinomial Naive Bayes classifier. Trains in one pass over the features of the texts: counts how often every
+ * feature occurs in texts of every {@link CharacteristicValue} and turns the counts into log probabilities with Laplace
+ * smoothing. A text is classified by summing log probabilities of its features only, so both training and
+ * classification take time proportional to the number of features in texts, not to the size of the vocabulary.
+ * <p>
+ * Parameters are kept in flat arrays: a row of {@link FeatureExtractor#getDimension()} log probabilities for every
+ * possible value, rows ordered by order number of the values. The counts they are computed from are kept as well, so
+ * new texts are added by {@link #update(List, int[][])} exactly, as if the unit were built on all texts at once.
+ * <p>
+ * Training publishes a new model at once, so the unit may classify from any number of threads, also while being
+ * rebuilt.
+ *
+ * @author ripreal
+ */
+public class NaiveBayesClassifierUnit implements ClassifierUnit {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(NaiveBayesClassifierUnit.class);
+    // additive smoothing of feature counts
+    private static final double ALPHA = 1;
+    private final Characteristic characteristic;
+    private final FeatureExtractor featureExtractor;
+    private final int dimension;
+    // possible characteristic values indexed by order number - 1
+    private final CharacteristicValue[] valuesByOrder;
+    // order numbers of possible values by value, texts are labelled by these
+    private final Map<String, Integer> orderNumbers;
+    private volatile Model model;
+
+    // CONSTRUCTORS
+
+    NaiveBayesClassifierUnit(File trainedClassifier, Characteristic characteristic, FeatureExtractor featureExtractor) {
+        if (characteristic.getName().equals("") ||
+                characteristic.getPossibleValues() == null ||
+                characteristic.getPossibleValues().size() == 0 ||
+                featureExtractor == null ||
+                featureExtractor.getDimension() == 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.characteristic = characteristic;
+        this.featureExtractor = featureExtractor;
+        this.dimension = featureExtractor.getDimension();
+        this.valuesByOrder = CharacteristicUtils.getValuesByOrder(characteristic);
+        this.orderNumbers = CharacteristicUtils.getOrderNumbersByValue(valuesByOrder);
+
+        if (trainedClassifier != null) {
+            try {
+                this.model = readModel(ModelBundle.openParameters(trainedClassifier));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    // CLIENT SECTION
+
+    @Override
+    public void build(List<ClassifiableText> classifiableTexts, int[][] features) {
+        int classCount = valuesByOrder.length;
+        model = count(new Counts(new long[classCount], new long[classCount], new long[classCount * dimension]),
+                classifiableTexts, features);
+        log.info("Classifier for '" + characteristic.getName() + "' characteristic trained. Wait...");
+    }
+
+    /**
+     * Adds counts of the texts to the counts the unit is trained on, the result is the same as building the unit on
+     * all texts at once.
+     */
+    @Override
+    public void update(List<ClassifiableText> classifiableTexts, int[][] features) {
+        Model current = model;
+        if (current == null) {
+            build(classifiableTexts, features);
+            return;
+        }
+
+        Counts counts = current.counts;
+        model = count(new Counts(counts.textCounts.clone(), counts.featureTotals.clone(), counts.featureCounts.clone()),
+                classifiableTexts, features);
+        log.info("Classifier for '" + characteristic.getName() + "' characteristic updated. Wait...");
+    }
+
+    @Override
+    public ClassifierUnit withFeatureExtractor(FeatureExtractor featureExtractor, int[] columnMapping) {
+        if (columnMapping.length != dimension)
+            throw new IllegalArgumentException("columnMapping should have a column for every feature of the unit");
+
+        NaiveBayesClassifierUnit unit = new NaiveBayesClassifierUnit(null, characteristic, featureExtractor);
+        Model current = model;
+        if (current == null) {
+            return unit;
+        }
+
+        // counts of known columns are moved, counts of dropped columns are taken out of totals
+        Counts counts = current.counts;
+        int classCount = valuesByOrder.length;
+        long[] featureTotals = counts.featureTotals.clone();
+        long[] featureCounts = new long[classCount * unit.dimension];
+        for (int row = 0; row < classCount; row++) {
+            for (int column = 0; column < dimension; column++) {
+                long count = counts.featureCounts[row * dimension + column];
+                if (columnMapping[column] >= 0) {
+                    featureCounts[row * unit.dimension + columnMapping[column]] = count;
+                } else {
+                    featureTotals[row] -= count;
+                }
+            }
+        }
+        unit.model = new Model(new Counts(counts.textCounts.clone(), featureTotals, featureCounts), unit.dimension);
+        return unit;
+    }
+
+    @Override
+    public Optional<CharacteristicValue> classify(int[] features) {
+        Model current = model;
+        if (current == null) {
+            return Optional.empty();
+        }
+
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+
+        for (int row = 0; row < valuesByOrder.length; row++) {
+            int offset = row * dimension;
+            double score = current.logPriors[row];
+            for (int column : features) {
+                score += current.logLikelihoods[offset + column];
+            }
+            if (best < 0 || score > bestScore) {
+                best = row;
+                bestScore = score;
+            }
+        }
+
+        return Optional.ofNullable(valuesByOrder[best]);
+    }
+
+    /**
+     * @return posterior probabilities of possible values
+     */
+    @Override
+    public double[] score(int[] features) {
+        Model current = model;
+        if (current == null)
+            throw new IllegalStateException("Classifier for '" + characteristic.getName() + "' characteristic is not built");
+
+        double[] scores = new double[valuesByOrder.length];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < scores.length; row++) {
+            int offset = row * dimension;
+            double score = current.logPriors[row];
+            for (int column : features) {
+                score += current.logLikelihoods[offset + column];
+            }
+            scores[row] = score;
+            max = Math.max(max, score);
+        }
+
+        // log probabilities to probabilities, shifted by the maximum not to underflow
+        double sum = 0;
+        for (int row = 0; row < scores.length; row++) {
+            scores[row] = Math.exp(scores[row] - max);
+            sum += scores[row];
+        }
+        for (int row = 0; row < scores.length; row++) {
+            scores[row] /= sum;
+        }
+        return scores;
+    }
+
+    /**
+     * Saves the unit into a bundle named after it, see {@link ModelBundle}.
+     */
+    public void saveClassifier(File dir) {
+        ModelBundle.write(this, dir);
+        log.info("Trained Classifier for '" + characteristic.getName() + "' characteristic saved. Wait...");
+    }
+
+    public void saveClassifier(OutputStream stream) {
+        ModelBundle.write(this, stream);
+        log.info("Trained Classifier for '" + characteristic.getName() + "' characteristic saved. Wait...");
+    }
+
+    public void shutdown() {
+        // holds no threads or native resources
+    }
+
+    // INNER SECTION
+
+    void writeBundle(ModelBundle.Writer out) {
+        Model current = model;
+        if (current == null)
+            throw new IllegalStateException("Classifier for '" + characteristic.getName() + "' characteristic is not built");
+
+        out.writeLongs(current.counts.textCounts);
+        out.writeLongs(current.counts.featureTotals);
+        out.writeLongs(current.counts.featureCounts);
+    }
+
+    static NaiveBayesClassifierUnit readBundle(ModelBundle.Reader in, Characteristic characteristic,
+                                               FeatureExtractor featureExtractor) throws IOException {
+        NaiveBayesClassifierUnit unit = new NaiveBayesClassifierUnit(null, characteristic, featureExtractor);
+        unit.model = unit.readModel(in);
+        return unit;
+    }
+
+    // PRIVATE SECTION
+
+    private Model readModel(ModelBundle.Reader in) throws IOException {
+        int classCount = valuesByOrder.length;
+        // counts are kept rather than probabilities, so a loaded unit can be updated
+        Counts counts = new Counts(in.readLongs(classCount), in.readLongs(classCount), in.readLongs(classCount * dimension));
+        return new Model(counts, dimension);
+    }
+
+    // adds counts of features of texts of every value
+    private Model count(Counts counts, List<ClassifiableText> classifiableTexts, int[][] features) {
+        int i = 0;
+        for (ClassifiableText classifiableText : classifiableTexts) {
+            int row = getOrderNumber(classifiableText) - 1;
+            int offset = row * dimension;
+            counts.textCounts[row]++;
+            counts.featureTotals[row] += features[i].length;
+            for (int column : features[i]) {
+                counts.featureCounts[offset + column]++;
+            }
+            i++;
+        }
+        return new Model(counts, dimension);
+    }
+
+    private int getOrderNumber(ClassifiableText classifiableText) {
+        return CharacteristicUtils.getOrderNumber(classifiableText, characteristic, orderNumbers);
+    }
+
+    private static final class Counts {
+        private final long[] textCounts;
+        private final long[] featureTotals;
+        private final long[] featureCounts;
+
+        Counts(long[] textCounts, long[] featureTotals, long[] featureCounts) {
+            this.textCounts = textCounts;
+            this.featureTotals = featureTotals;
+            this.featureCounts = featureCounts;
+        }
+    }
+
+    private static final class Model {
+        private final Counts counts;
+        private final double[] logPriors;
+        private final double[] logLikelihoods;
+
+        // turns counts into log probabilities
+        Model(Counts counts, int dimension) {
+            int classCount = counts.textCounts.length;
+            long textCount = 0;
+            for (long count : counts.textCounts) {
+                textCount += count;
+            }
+
+            this.counts = counts;
+            this.logPriors = new double[classCount];
+            this.logLikelihoods = new double[classCount * dimension];
+            for (int row = 0; row < classCount; row++) {
+                logPriors[row] = Math.log((counts.textCounts[row] + ALPHA) / (textCount + ALPHA * classCount));
+
+                double logTotal = Math.log(counts.featureTotals[row] + ALPHA * dimension);
+                int offset = row * dimension;
+                for (int column = 0; column < dimension; column++) {
+                    logLikelihoods[offset + column] = Math.log(counts.featureCounts[offset + column] + ALPHA) - logTotal;
+                }
+            }
+        }
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    @Override
+    public String toString() {
+        return characteristic.getName() + "NaiveBayesClassifier";
+    }
+
+    public Characteristic getCharacteristic() {return this.characteristic;}
+
+    public FeatureExtractor getFeatureExtractor() {return this.featureExtractor;}
+}
@@ -1,8 +1,10 @@
 package textclassifier2.classifier;
 
-import org.encog.Encog;
+import org.encog.engine.network.activation.ActivationFunction;
 import org.encog.engine.network.activation.ActivationSigmoid;
+import org.encog.ml.data.MLDataSet;
 import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.neural.flat.FlatNetwork;
 import org.encog.neural.networks.BasicNetwork;
 import org.encog.neural.networks.layers.BasicLayer;
 import org.encog.neural.networks.training.propagation.Propagation;
@@ -11,28 +13,33 @@ import org.encog.persist.PersistError;
 
 import org.slf4j.Logger;
 import textclassifier2.CharacteristicUtils;
+import textclassifier2.metrics.Stage;
+import textclassifier2.metrics.StageProbe;
 import textclassifier2.model.Characteristic;
 import textclassifier2.model.CharacteristicValue;
 import textclassifier2.model.ClassifiableText;
 import textclassifier2.model.VocabularyWord;
-import textclassifier2.model.modelimp.DefVocabularyWord;
+import textclassifier2.ngram.FeatureExtractor;
 import textclassifier2.ngram.NGramStrategy;
+import textclassifier2.ngram.VocabularyFeatureExtractor;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.Random;
 
 import static org.encog.persist.EncogDirectoryPersistence.loadObject;
-import static org.encog.persist.EncogDirectoryPersistence.saveObject;
-
-// todo: add other types of Classifiers (Naive Bayes classifier for example)
 
 /**
  * Uses a neural network to classify texts. Implements facade pattern to provide a convenient interface for creating and
  * training network. Network layers are resolved during instantiation. Input layer size is equal of the size
- * vocabulary list obtained. Vocabulary is computed from correctly classified texts (educational selection) using one
+ * vocabulary list obtained, or of the number of buckets if n-grams are hashed (see
+ * {@link textclassifier2.ngram.HashingFeatureExtractor}). Vocabulary is computed from correctly classified texts (educational selection) using one
  * of the {@link NGramStrategy} strategies. Output layer is defined as number of possible {@link CharacteristicValue}
  * being part of chosen Characteristic. Number of hidden layers was set experimentally.
  *<p>
@@ -47,6 +54,17 @@ import static org.encog.persist.EncogDirectoryPersistence.saveObject;
  * <br>
  * you_0 0 0 1
  * <p>
+ * Since a text holds only a few words of the vocabulary it is kept as the list of its non-zero columns (see
+ * {@link FeatureExtractor}), and the first network layer is computed from those columns only (see
+ * {@link SparseNetworkEvaluator}). Units built with the same n-gram strategy share one vocabulary and extractor.
+ * <p>
+ * Concurrent inference: once the unit is built (or loaded from a trained network) {@link #classify(ClassifiableText)}
+ * and {@link #classifyBatch(List)} only read the network weights and the vocabulary, and keep layer activations in
+ * per-thread scratch buffers, so any number of threads may classify against one unit without locking. Training runs
+ * in the Encog pool shared by all units of the process, see {@link EnginePool}, so the unit holds no threads of its
+ * own and {@link #shutdown()} does not shut Encog down. Classifying while {@link #build(List)} is running is not
+ * supported.
+ * <p>
  * Network returns vector of possible {@link CharacteristicValue} and decoded with probability for each value.
  *
  * @author ripreal
@@ -56,100 +74,379 @@ public class NeroClassifierUnit implements ClassifierUnit {
 
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(NeroClassifierUnit.class);
     private final Characteristic characteristic;
-    private final List<VocabularyWord> vocabulary;
+    private final FeatureExtractor featureExtractor;
     private final int inputLayerSize;
     private final int outputLayerSize;
     private final BasicNetwork network;
-    private final NGramStrategy nGramStrategy;
+    private final SparseNetworkEvaluator evaluator;
+    // possible characteristic values indexed by order number - 1
+    private final CharacteristicValue[] valuesByOrder;
+    // order numbers of possible values by value, texts are labelled by these
+    private final Map<String, Integer> orderNumbers;
+    private static final long VALIDATION_SEED = 42;
+    private volatile int threadCount = Runtime.getRuntime().availableProcessors();
+    private volatile TrainingController trainingController = new TrainingController();
+    private volatile TrainingReport trainingReport;
 
     // CONSTRUCTORS
 
     NeroClassifierUnit(File trainedNetwork, Characteristic characteristic, List<VocabularyWord> vocabulary, NGramStrategy nGramStrategy) {
+        this(trainedNetwork, characteristic, nGramStrategy == null || vocabulary == null ? null :
+                new VocabularyFeatureExtractor(nGramStrategy, vocabulary));
+    }
+
+    NeroClassifierUnit(File trainedNetwork, Characteristic characteristic, FeatureExtractor featureExtractor) {
+        this(characteristic, featureExtractor, trainedNetwork == null ? null : loadNeuralNetwork(trainedNetwork));
+    }
+
+    // network is created if null
+    private NeroClassifierUnit(Characteristic characteristic, FeatureExtractor featureExtractor, BasicNetwork network) {
         if (characteristic.getName().equals("") ||
                 characteristic.getPossibleValues() == null ||
                 characteristic.getPossibleValues().size() == 0 ||
-                vocabulary.isEmpty()
-                || nGramStrategy == null) {
+                featureExtractor == null ||
+                featureExtractor.getDimension() == 0) {
             throw new IllegalArgumentException();
         }
 
         this.characteristic = characteristic;
-        this.vocabulary = vocabulary;
-        this.inputLayerSize = vocabulary.size();
+        this.featureExtractor = featureExtractor;
+        this.inputLayerSize = featureExtractor.getDimension();
         this.outputLayerSize = characteristic.getPossibleValues().size();
-        this.nGramStrategy = nGramStrategy;
 
-        if (trainedNetwork == null) {
+        if (network == null) {
             this.network = createNeuralNetwork();
         } else {
-            // load neural network from file
-            try {
-                this.network = (BasicNetwork) loadObject(trainedNetwork);
-            } catch (PersistError e) {
-                throw new IllegalArgumentException();
-            }
+            this.network = network;
+            if (network.getInputCount() != inputLayerSize || network.getOutputCount() != outputLayerSize)
+                throw new IllegalArgumentException("trained network does not fit the feature extractor or characteristic");
         }
+        this.evaluator = new SparseNetworkEvaluator(this.network);
+        this.valuesByOrder = CharacteristicUtils.getValuesByOrder(characteristic);
+        this.orderNumbers = CharacteristicUtils.getOrderNumbersByValue(valuesByOrder);
     }
 
     // CLIENT SECTION
 
-    public void build(List<ClassifiableText> classifiableTexts) {
-
+    public void build(List<ClassifiableText> classifiableTexts, int[][] features) {
+        train(classifiableTexts, features);
+        log.info("Classifier for '" + characteristic.getName() + "' characteristic trained: " + trainingReport + ". Wait...");
+    }
 
-        // prepare input and ideal vectors
-        // input <- ClassifiableText text vector
-        // ideal <- characteristicValue vector
-        //
+    /**
+     * Goes on training the network on the texts from its current weights, the controller decides when to stop just
+     * as for {@link #build(List, int[][])}.
+     */
+    @Override
+    public void update(List<ClassifiableText> classifiableTexts, int[][] features) {
+        train(classifiableTexts, features);
+        log.info("Classifier for '" + characteristic.getName() + "' characteristic updated: " + trainingReport + ". Wait...");
+    }
 
-        double[][] input = getInput(classifiableTexts);
-        double[][] ideal = getIdeal(classifiableTexts);
+    /**
+     * Copies the network with the input layer resized to the new extractor. Weights of hidden and output layers are
+     * copied as they are, weights of known input columns are moved to their new columns and weights of new input
+     * columns are zero, so the copy classifies texts exactly as the unit does until it is trained on new columns.
+     */
+    @Override
+    public ClassifierUnit withFeatureExtractor(FeatureExtractor featureExtractor, int[] columnMapping) {
+        if (columnMapping.length != inputLayerSize)
+            throw new IllegalArgumentException("columnMapping should have a column for every input of the network");
+
+        BasicNetwork copy = new BasicNetwork();
+        copy.addLayer(new BasicLayer(null, network.isLayerBiased(0), featureExtractor.getDimension()));
+        for (int layer = 1; layer < network.getLayerCount(); layer++) {
+            copy.addLayer(new BasicLayer(network.getActivation(layer).clone(), network.isLayerBiased(layer),
+                    network.getLayerNeuronCount(layer)));
+        }
+        copy.getStructure().finalizeStructure();
+
+        // Encog keeps layers in reverse order, so weights from the input layer are the last block of weights and the
+        // blocks before it do not move
+        FlatNetwork from = network.getFlat();
+        FlatNetwork to = copy.getFlat();
+        double[] fromWeights = from.getWeights();
+        double[] toWeights = to.getWeights();
+        int inputLayer = from.getLayerCounts().length - 1;
+        int start = from.getWeightIndex()[inputLayer - 1];
+        System.arraycopy(fromWeights, 0, toWeights, 0, start);
+
+        int fromRowLength = from.getLayerCounts()[inputLayer];
+        int toRowLength = to.getLayerCounts()[inputLayer];
+        int toInputCount = to.getLayerFeedCounts()[inputLayer];
+        boolean hasBias = fromRowLength > inputLayerSize;
+        for (int x = 0; x < from.getLayerFeedCounts()[inputLayer - 1]; x++) {
+            int fromRow = start + x * fromRowLength;
+            int toRow = start + x * toRowLength;
+            for (int column = 0; column < inputLayerSize; column++) {
+                if (columnMapping[column] >= 0) {
+                    toWeights[toRow + columnMapping[column]] = fromWeights[fromRow + column];
+                }
+            }
+            if (hasBias) {
+                toWeights[toRow + toInputCount] = fromWeights[fromRow + inputLayerSize];
+            }
+        }
 
-        // train
-        //
+        NeroClassifierUnit unit = new NeroClassifierUnit(characteristic, featureExtractor, copy);
+        unit.threadCount = threadCount;
+        unit.trainingController = trainingController;
+        return unit;
+    }
 
-        Propagation train = new ResilientPropagation(network, new BasicMLDataSet(input, ideal));
-        train.setThreadCount(16);
+    @Override
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount should be positive");
+        this.threadCount = threadCount;
+    }
 
-        // todo: throw exception if iteration count more than 1000
-        do {
-            train.iteration();
-            log.info("Training Classifier for '" + characteristic.getName() + "' characteristic. Errors: " + String.format("%.2f", train.getError() * 100) + "%. Wait...");
-        } while (train.getError() > 0.01);
+    @Override
+    public void setTrainingController(TrainingController trainingController) {
+        if (trainingController == null)
+            throw new IllegalArgumentException();
+        this.trainingController = trainingController;
+    }
 
-        train.finishTraining();
-        log.info("Classifier for '" + characteristic.getName() + "' characteristic trained. Wait...");
+    @Override
+    public Optional<TrainingReport> getTrainingReport() {
+        return Optional.ofNullable(trainingReport);
     }
 
-    public Optional<CharacteristicValue> classify(ClassifiableText classifiableText) {
+    public Optional<CharacteristicValue> classify(int[] features) {
         double[] output = new double[outputLayerSize];
 
-        // calculate output vector
-        network.compute(getTextAsVectorOfWords(classifiableText), output);
-        Encog.getInstance().shutdown();
+        // calculate output vector, only the words found in vocabulary take part in the first layer
+        evaluator.compute(features, output);
 
         return convertVectorToCharacteristic(output);
     }
 
-    public void saveClassifier(File dir) {
-        if (!dir.isDirectory())
-            throw new IllegalArgumentException("need directory not a file!");
+    @Override
+    public Optional<CharacteristicValue> classify(int[] features, StageProbe probe) {
+        long start = System.nanoTime();
+        double[] output = new double[outputLayerSize];
+        evaluator.compute(features, output);
+        long computed = System.nanoTime();
+        Optional<CharacteristicValue> value = convertVectorToCharacteristic(output);
+
+        probe.add(Stage.COMPUTE, computed - start);
+        probe.add(Stage.DECODE, System.nanoTime() - computed);
+        return value;
+    }
 
-        File file = new File(dir.getAbsolutePath() + "/NeroClassifierUnit_save");
-        saveObject(file, network);
+    @Override
+    public List<Optional<CharacteristicValue>> classifyBatch(int[][] features) {
+        double[][] output = new double[features.length][outputLayerSize];
+
+        // calculate output vectors of all texts at once
+        evaluator.computeBatch(features, output);
+
+        return convertVectorsToCharacteristics(output);
+    }
+
+    @Override
+    public List<Optional<CharacteristicValue>> classifyBatch(int[][] features, StageProbe probe) {
+        long start = System.nanoTime();
+        double[][] output = new double[features.length][outputLayerSize];
+        evaluator.computeBatch(features, output);
+        long computed = System.nanoTime();
+        List<Optional<CharacteristicValue>> values = convertVectorsToCharacteristics(output);
+
+        probe.add(Stage.COMPUTE, computed - start);
+        probe.add(Stage.DECODE, System.nanoTime() - computed);
+        return values;
+    }
+
+    /**
+     * @return outputs of the network divided by their sum
+     */
+    @Override
+    public double[] score(int[] features) {
+        double[] output = new double[outputLayerSize];
+        evaluator.compute(features, output);
+        return normalize(output);
+    }
+
+    @Override
+    public double[][] scoreBatch(int[][] features) {
+        double[][] output = new double[features.length][outputLayerSize];
+        evaluator.computeBatch(features, output);
+        for (double[] vector : output) {
+            normalize(vector);
+        }
+        return output;
+    }
+
+    /**
+     * Saves the unit into a bundle named after it, see {@link ModelBundle}.
+     */
+    public void saveClassifier(File dir) {
+        ModelBundle.write(this, dir);
         log.info("Trained Classifier for '" + characteristic.getName() + "' characteristic saved. Wait...");
     }
 
     public void saveClassifier(OutputStream stream) {
-        saveObject(stream, network);
+        ModelBundle.write(this, stream);
         log.info("Trained Classifier for '" + characteristic.getName() + "' characteristic saved. Wait...");
     }
 
     public void shutdown() {
-        Encog.getInstance().shutdown();
+        // training threads belong to the Encog pool shared by all units, see EnginePool
+    }
+
+    /**
+     * Makes an inference-only copy of the trained network with weights reduced to the precision. The unit itself is
+     * not changed and may go on training, the copy does not see it.
+     */
+    public QuantizedNeroClassifierUnit quantize(QuantizedNeroClassifierUnit.Precision precision) {
+        if (precision == null)
+            throw new IllegalArgumentException();
+        return new QuantizedNeroClassifierUnit(characteristic, featureExtractor,
+                QuantizedNetwork.quantize(network.getFlat(), precision));
+    }
+
+    /**
+     * Same as {@link #quantize(QuantizedNeroClassifierUnit.Precision)}, checking that the copy loses no more accuracy
+     * than allowed on correctly classified texts the unit was not trained on.
+     *
+     * @param heldOutTexts    correctly classified texts to compare accuracy of the unit and of the copy on
+     * @param maxAccuracyLoss largest allowed drop of the share of correctly classified texts, 0.01 for a percent
+     * @throws IllegalStateException if the copy loses more
+     */
+    public QuantizedNeroClassifierUnit quantize(QuantizedNeroClassifierUnit.Precision precision,
+                                                List<ClassifiableText> heldOutTexts, double maxAccuracyLoss) {
+        if (heldOutTexts == null || heldOutTexts.isEmpty() || maxAccuracyLoss < 0)
+            throw new IllegalArgumentException();
+
+        QuantizedNeroClassifierUnit quantized = quantize(precision);
+        int[][] features = featureExtractor.extract(heldOutTexts);
+        double accuracy = ConfusionMatrix.of(this, heldOutTexts, features).getAccuracy();
+        double quantizedAccuracy = ConfusionMatrix.of(quantized, heldOutTexts, features).getAccuracy();
+        log.info("Classifier for '" + characteristic.getName() + "' characteristic quantized to " + precision + ": weights "
+                + network.getFlat().getWeights().length * 8L + " -> " + quantized.getWeightSize() + " bytes, accuracy "
+                + String.format("%.2f%% -> %.2f%%", accuracy * 100, quantizedAccuracy * 100) + ". Wait...");
+
+        if (accuracy - quantizedAccuracy > maxAccuracyLoss)
+            throw new IllegalStateException(String.format("%s loses %.2f%% of accuracy, more than allowed %.2f%%",
+                    quantized, (accuracy - quantizedAccuracy) * 100, maxAccuracyLoss * 100));
+        return quantized;
+    }
+
+    // INNER SECTION
+
+    // layers are written from input to output: neuron count, bias flag, activation function and dropout rate, then
+    // weights of the flat network as they are
+    void writeBundle(ModelBundle.Writer out) {
+        FlatNetwork flat = network.getFlat();
+        int layerCount = network.getLayerCount();
+        out.writeInt(layerCount);
+        for (int layer = 0; layer < layerCount; layer++) {
+            out.writeInt(network.getLayerNeuronCount(layer));
+            out.writeInt(network.isLayerBiased(layer) ? 1 : 0);
+            out.writeString(network.getActivation(layer).getClass().getName());
+            out.writeDouble(flat.getLayerDropoutRates().length == 0 ? 0 : flat.getLayerDropoutRates()[layerCount - layer - 1]);
+        }
+        out.writeDoubles(flat.getWeights());
+    }
+
+    static NeroClassifierUnit readBundle(ModelBundle.Reader in, Characteristic characteristic,
+                                         FeatureExtractor featureExtractor) throws IOException {
+        return new NeroClassifierUnit(characteristic, featureExtractor, readNeuralNetwork(in));
     }
 
     // PRIVATE SECTION
 
+    // trains the network from its current weights
+    private void train(List<ClassifiableText> classifiableTexts, int[][] features) {
+        TrainingController.Session session = trainingController.start();
+
+        // hold out texts for validation if early stopping is on, the split is the same on every build
+        //
+
+        int[] order = new int[features.length];
+        Random random = new Random(VALIDATION_SEED);
+        for (int i = 0; i < order.length; i++) {
+            // inside-out shuffle
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+        int validationSize = (int) (order.length * trainingController.getValidationShare());
+        if (validationSize == order.length) {
+            validationSize = 0;
+        }
+
+        // prepare input and ideal vectors
+        // input <- ClassifiableText text vector
+        // ideal <- characteristicValue vector
+        //
+
+        double[][] input = getInput(features);
+        double[][] ideal = getIdeal(classifiableTexts);
+        MLDataSet trainingSet = validationSize == 0 ? new BasicMLDataSet(input, ideal) :
+                subset(input, ideal, order, validationSize, order.length);
+        MLDataSet validationSet = validationSize == 0 ? null : subset(input, ideal, order, 0, validationSize);
+
+        // train
+        //
+
+        Propagation train = new ResilientPropagation(network, trainingSet);
+        train.setThreadCount(threadCount);
+        double[] bestWeights = null;
+
+        boolean stop;
+        do {
+            train.iteration();
+            double validationError = validationSet == null ? Double.NaN : network.calculateError(validationSet);
+            stop = session.shouldStop(train.getError(), validationError);
+            if (session.isBestIteration()) {
+                bestWeights = network.getFlat().getWeights().clone();
+            }
+            log.info("Training Classifier for '" + characteristic.getName() + "' characteristic. Errors: " + String.format("%.2f", train.getError() * 100) + "%. Wait...");
+        } while (!stop);
+
+        train.finishTraining();
+        if (bestWeights != null) {
+            double[] weights = network.getFlat().getWeights();
+            System.arraycopy(bestWeights, 0, weights, 0, weights.length);
+        }
+        trainingReport = session.report();
+    }
+
+    // reads either a bundle or a network saved in Encog format
+    private static BasicNetwork loadNeuralNetwork(File trainedNetwork) {
+        if (ModelBundle.isBundle(trainedNetwork)) {
+            try {
+                return readNeuralNetwork(ModelBundle.openParameters(trainedNetwork));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        try {
+            return (BasicNetwork) loadObject(trainedNetwork);
+        } catch (PersistError e) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private static BasicNetwork readNeuralNetwork(ModelBundle.Reader in) throws IOException {
+        BasicNetwork network = new BasicNetwork();
+        int layerCount = in.readInt();
+        for (int layer = 0; layer < layerCount; layer++) {
+            int neuronCount = in.readInt();
+            boolean biased = in.readInt() != 0;
+            ActivationFunction activation = in.readActivationFunction();
+            double dropoutRate = in.readDouble();
+            network.addLayer(new BasicLayer(layer == 0 ? null : activation, biased, neuronCount, dropoutRate));
+        }
+        network.getStructure().finalizeStructure();
+
+        in.readDoubles(network.getFlat().getWeights());
+        return network;
+    }
+
     private BasicNetwork createNeuralNetwork() {
         BasicNetwork network = new BasicNetwork();
 
@@ -169,20 +466,38 @@ public class NeroClassifierUnit implements ClassifierUnit {
         return network;
     }
 
+    // example:
+    // vector = {0.9, 0.3, 0.3}
+    // vector = {0.6, 0.2, 0.2}
+    private static double[] normalize(double[] vector) {
+        double sum = 0;
+        for (double value : vector) {
+            sum += value;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = sum > 0 ? vector[i] / sum : 1.0 / vector.length;
+        }
+        return vector;
+    }
+
     private Optional<CharacteristicValue> convertVectorToCharacteristic(double[] vector) {
         int idOfMaxValue = getIdOfMaxValue(vector);
 
         // find CharacteristicValue with found Id
         //
 
-        for (CharacteristicValue c : characteristic.getPossibleValues()) {
-            if (c.getOrderNumber() == idOfMaxValue) {
-                //todo: rewrite as optional
-                return Optional.of(c);
-            }
+        if (idOfMaxValue > valuesByOrder.length) {
+            return Optional.empty();
         }
+        return Optional.ofNullable(valuesByOrder[idOfMaxValue - 1]);
+    }
 
-        return Optional.empty();
+    private List<Optional<CharacteristicValue>> convertVectorsToCharacteristics(double[][] vectors) {
+        List<Optional<CharacteristicValue>> values = new ArrayList<>(vectors.length);
+        for (double[] vector : vectors) {
+            values.add(convertVectorToCharacteristic(vector));
+        }
+        return values;
     }
 
     private int getIdOfMaxValue(double[] vector) {
@@ -199,21 +514,32 @@ public class NeroClassifierUnit implements ClassifierUnit {
         return indexOfMaxValue + 1;
     }
 
-    private double[][] getInput(List<ClassifiableText> classifiableTexts) {
-        double[][] input = new double[classifiableTexts.size()][inputLayerSize];
+    private double[][] getInput(int[][] features) {
+        double[][] input = new double[features.length][inputLayerSize];
 
         // convert all classifiable texts to vectors
         //
 
         int i = 0;
 
-        for (ClassifiableText classifiableText : classifiableTexts) {
-            input[i++] = getTextAsVectorOfWords(classifiableText);
+        for (int[] textFeatures : features) {
+            input[i++] = getTextAsVectorOfWords(textFeatures);
         }
 
         return input;
     }
 
+    // texts order[from, to) as a data set
+    private static MLDataSet subset(double[][] input, double[][] ideal, int[] order, int from, int to) {
+        double[][] subsetInput = new double[to - from][];
+        double[][] subsetIdeal = new double[to - from][];
+        for (int i = from; i < to; i++) {
+            subsetInput[i - from] = input[order[i]];
+            subsetIdeal[i - from] = ideal[order[i]];
+        }
+        return new BasicMLDataSet(subsetInput, subsetIdeal);
+    }
+
     private double[][] getIdeal(List<ClassifiableText> classifiableTexts) {
         double[][] ideal = new double[classifiableTexts.size()][outputLayerSize];
 
@@ -234,11 +560,7 @@ public class NeroClassifierUnit implements ClassifierUnit {
     // vector = {0, 0, 0, 1, 0}
     private double[] getCharacteristicAsVector(ClassifiableText classifiableText) {
 
-        int orderNumber = classifiableText.getCharacteristicValue(characteristic.getName()).getOrderNumber();
-
-        if (orderNumber < 1 || orderNumber > outputLayerSize)
-            throw new IllegalArgumentException("OrderNumber property of a characteristic value " +
-                    "should start with 1 and be not greater than outputLayerSize");
+        int orderNumber = CharacteristicUtils.getOrderNumber(classifiableText, characteristic, orderNumbers);
 
         double[] vector = new double[outputLayerSize];
 
@@ -246,21 +568,14 @@ public class NeroClassifierUnit implements ClassifierUnit {
         return vector;
     }
 
-    private double[] getTextAsVectorOfWords(ClassifiableText classifiableText) {
+    // example:
+    // inputLayerSize = 4; features = {1, 2, 3}
+    // vector = {0, 1, 1, 1}
+    private double[] getTextAsVectorOfWords(int[] features) {
         double[] vector = new double[inputLayerSize];
 
-        // convert text to nGramStrategy
-        Set<String> uniqueValues = nGramStrategy.getNGram(classifiableText.getText());
-
-        // create vector
-        //
-
-        for (String word : uniqueValues) {
-            VocabularyWord vw = CharacteristicUtils.findByValue(vocabulary, word,
-                (w) -> new DefVocabularyWord(w, nGramStrategy.getNGramType()));
-            if (vw != null) { // word found in vocabulary
-                vector[vocabulary.indexOf(vw)] = 1;
-            }
+        for (int column : features) {
+            vector[column] = 1;
         }
 
         return vector;
@@ -275,5 +590,13 @@ public class NeroClassifierUnit implements ClassifierUnit {
 
     public Characteristic getCharacteristic() {return this.characteristic;}
 
-    public List<VocabularyWord> getVocabulary() {return this.vocabulary;}
+    public FeatureExtractor getFeatureExtractor() {return this.featureExtractor;}
+
+    /**
+     * @return vocabulary of the unit, empty if features are not taken from a vocabulary
+     */
+    public List<VocabularyWord> getVocabulary() {
+        return featureExtractor instanceof VocabularyFeatureExtractor ?
+                ((VocabularyFeatureExtractor) featureExtractor).getVocabulary() : Collections.emptyList();
+    }
 }
@@ -0,0 +1,234 @@
+package textclassifier2.classifier;
+
+import textclassifier2.CharacteristicUtils;
+import textclassifier2.metrics.Stage;
+import textclassifier2.metrics.StageProbe;
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.ngram.FeatureExtractor;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Classifies texts with the network of a trained {@link NeroClassifierUnit} with weights stored in reduced precision,
+ * see {@link QuantizedNetwork}. Made by {@link NeroClassifierUnit#quantize(Precision)}, it decides on a text just as
+ * the unit it was made from does, within the rounding of its weights, taking half ({@link Precision#FLOAT32}) or an
+ * eighth ({@link Precision#INT8}) of the memory for weights.
+ * <p>
+ * The unit is inference only: it cannot be built, updated or moved to another feature extractor, train the
+ * {@link NeroClassifierUnit} and quantize it again instead. It is saved into a bundle of its own kind holding the
+ * reduced weights, so loading it never allocates the full precision network. Any number of threads may classify
+ * against one unit without locking.
+ *
+ * @author ripreal
+ */
+public class QuantizedNeroClassifierUnit implements ClassifierUnit {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(QuantizedNeroClassifierUnit.class);
+    private final Characteristic characteristic;
+    private final FeatureExtractor featureExtractor;
+    private final QuantizedNetwork network;
+    private final int outputLayerSize;
+    // possible characteristic values indexed by order number - 1
+    private final CharacteristicValue[] valuesByOrder;
+
+    /**
+     * Precision weights of a network are stored in.
+     */
+    public enum Precision {
+        FLOAT32, INT8
+    }
+
+    // CONSTRUCTORS
+
+    QuantizedNeroClassifierUnit(Characteristic characteristic, FeatureExtractor featureExtractor, QuantizedNetwork network) {
+        if (characteristic.getPossibleValues() == null || featureExtractor == null || network == null)
+            throw new IllegalArgumentException();
+        if (network.getInputCount() != featureExtractor.getDimension() ||
+                network.getOutputCount() != characteristic.getPossibleValues().size())
+            throw new IllegalArgumentException("trained network does not fit the feature extractor or characteristic");
+
+        this.characteristic = characteristic;
+        this.featureExtractor = featureExtractor;
+        this.network = network;
+        this.outputLayerSize = network.getOutputCount();
+        this.valuesByOrder = CharacteristicUtils.getValuesByOrder(characteristic);
+    }
+
+    // CLIENT SECTION
+
+    @Override
+    public void build(List<ClassifiableText> classifiableTexts, int[][] features) {
+        throw new IllegalStateException(this + " is inference only, build the network unit and quantize it again");
+    }
+
+    @Override
+    public void update(List<ClassifiableText> classifiableTexts, int[][] features) {
+        throw new IllegalStateException(this + " is inference only, update the network unit and quantize it again");
+    }
+
+    @Override
+    public ClassifierUnit withFeatureExtractor(FeatureExtractor featureExtractor, int[] columnMapping) {
+        throw new IllegalStateException(this + " is inference only, its weights cannot be moved to new columns");
+    }
+
+    @Override
+    public Optional<CharacteristicValue> classify(int[] features) {
+        double[] output = new double[outputLayerSize];
+        network.compute(features, output);
+        return convertVectorToCharacteristic(output);
+    }
+
+    @Override
+    public Optional<CharacteristicValue> classify(int[] features, StageProbe probe) {
+        long start = System.nanoTime();
+        double[] output = new double[outputLayerSize];
+        network.compute(features, output);
+        long computed = System.nanoTime();
+        Optional<CharacteristicValue> value = convertVectorToCharacteristic(output);
+
+        probe.add(Stage.COMPUTE, computed - start);
+        probe.add(Stage.DECODE, System.nanoTime() - computed);
+        return value;
+    }
+
+    @Override
+    public List<Optional<CharacteristicValue>> classifyBatch(int[][] features) {
+        double[][] output = new double[features.length][outputLayerSize];
+        network.computeBatch(features, output);
+        return convertVectorsToCharacteristics(output);
+    }
+
+    @Override
+    public List<Optional<CharacteristicValue>> classifyBatch(int[][] features, StageProbe probe) {
+        long start = System.nanoTime();
+        double[][] output = new double[features.length][outputLayerSize];
+        network.computeBatch(features, output);
+        long computed = System.nanoTime();
+        List<Optional<CharacteristicValue>> values = convertVectorsToCharacteristics(output);
+
+        probe.add(Stage.COMPUTE, computed - start);
+        probe.add(Stage.DECODE, System.nanoTime() - computed);
+        return values;
+    }
+
+    /**
+     * @return outputs of the network divided by their sum
+     */
+    @Override
+    public double[] score(int[] features) {
+        double[] output = new double[outputLayerSize];
+        network.compute(features, output);
+        return normalize(output);
+    }
+
+    @Override
+    public double[][] scoreBatch(int[][] features) {
+        double[][] output = new double[features.length][outputLayerSize];
+        network.computeBatch(features, output);
+        for (double[] vector : output) {
+            normalize(vector);
+        }
+        return output;
+    }
+
+    /**
+     * Saves the unit into a bundle named after it, see {@link ModelBundle}.
+     */
+    public void saveClassifier(File dir) {
+        ModelBundle.write(this, dir);
+        log.info("Quantized Classifier for '" + characteristic.getName() + "' characteristic saved. Wait...");
+    }
+
+    public void saveClassifier(OutputStream stream) {
+        ModelBundle.write(this, stream);
+        log.info("Quantized Classifier for '" + characteristic.getName() + "' characteristic saved. Wait...");
+    }
+
+    /**
+     * Does nothing, the unit holds no Encog resources.
+     */
+    public void shutdown() {
+    }
+
+    /**
+     * @return share of the held out texts the unit classifies correctly less than the share the other unit does,
+     * negative if the unit is the more accurate one
+     */
+    static double getAccuracyLoss(ClassifierUnit original, ClassifierUnit quantized, List<ClassifiableText> heldOutTexts,
+                                  int[][] features) {
+        return ConfusionMatrix.of(original, heldOutTexts, features).getAccuracy() -
+                ConfusionMatrix.of(quantized, heldOutTexts, features).getAccuracy();
+    }
+
+    // INNER SECTION
+
+    void writeBundle(ModelBundle.Writer out) {
+        network.write(out);
+    }
+
+    static QuantizedNeroClassifierUnit readBundle(ModelBundle.Reader in, Characteristic characteristic,
+                                                  FeatureExtractor featureExtractor) throws IOException {
+        return new QuantizedNeroClassifierUnit(characteristic, featureExtractor, QuantizedNetwork.read(in));
+    }
+
+    // PRIVATE SECTION
+
+    // example:
+    // vector = {0.9, 0.3, 0.3}
+    // vector = {0.6, 0.2, 0.2}
+    private static double[] normalize(double[] vector) {
+        double sum = 0;
+        for (double value : vector) {
+            sum += value;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = sum > 0 ? vector[i] / sum : 1.0 / vector.length;
+        }
+        return vector;
+    }
+
+    private Optional<CharacteristicValue> convertVectorToCharacteristic(double[] vector) {
+        int indexOfMaxValue = 0;
+        for (int i = 1; i < vector.length; i++) {
+            if (vector[i] > vector[indexOfMaxValue]) {
+                indexOfMaxValue = i;
+            }
+        }
+        return Optional.ofNullable(valuesByOrder[indexOfMaxValue]);
+    }
+
+    private List<Optional<CharacteristicValue>> convertVectorsToCharacteristics(double[][] vectors) {
+        List<Optional<CharacteristicValue>> values = new ArrayList<>(vectors.length);
+        for (double[] vector : vectors) {
+            values.add(convertVectorToCharacteristic(vector));
+        }
+        return values;
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    @Override
+    public String toString() {
+        return characteristic.getName() + (network.getPrecision() == Precision.INT8 ? "Int8" : "Float32") +
+                "NeuralNetworkClassifier";
+    }
+
+    public Characteristic getCharacteristic() {return this.characteristic;}
+
+    public FeatureExtractor getFeatureExtractor() {return this.featureExtractor;}
+
+    public Precision getPrecision() {return this.network.getPrecision();}
+
+    /**
+     * @return bytes taken by weights of the network and their scales
+     */
+    public long getWeightSize() {return this.network.getWeightSize();}
+}
@@ -0,0 +1,451 @@
+package textclassifier2.classifier;
+
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.neural.flat.FlatNetwork;
+import textclassifier2.classifier.QuantizedNeroClassifierUnit.Precision;
+
+import java.io.IOException;
+
+/**
+ * Inference-only copy of a trained feed-forward {@link FlatNetwork} with weights stored in reduced precision. Computes
+ * the same forward pass as {@link SparseNetworkEvaluator}: binary bag-of-words input given as active columns, the
+ * first hidden layer summed over those columns only, dense layers from there on. Layer activations stay in doubles,
+ * only the weights are reduced:
+ * <ul>
+ * <li>{@link Precision#FLOAT32} keeps every weight as a float, half the memory of the doubles Encog trains;</li>
+ * <li>{@link Precision#INT8} keeps every weight as a byte scaled by a float per row of weights, that is per neuron,
+ * an eighth of the memory. The scale of a row is its largest absolute weight / 127, so each row uses the whole
+ * range of a byte whatever the magnitude of its weights.</li>
+ * </ul>
+ * Weights of the first hidden layer, which are nearly all the weights of a network over a vocabulary, are read one
+ * row per neuron, so less memory per weight means fewer cache lines per text.
+ * <p>
+ * The network holds no reference to the network it was made from and never changes after it is made, layer
+ * activations are kept in per-thread scratch buffers, batches are computed in blocks of texts in a per-thread scratch
+ * matrix, so any number of threads may compute against one network without locking.
+ *
+ * @author ripreal
+ */
+abstract class QuantizedNetwork {
+
+    private static final int INT8_RANGE = 127;
+    // most texts of a batch computed at once, bounds the scratch matrix of a thread
+    private static final int BLOCK_SIZE = 64;
+
+    // Encog keeps layers in reverse order: 0 is the output layer, the last one is the input layer
+    private final int[] layerCounts;
+    private final int[] layerFeedCounts;
+    private final int[] layerIndex;
+    private final int[] weightIndex;
+    // number of the first row of weights feeding the layer, rows of all layers numbered together
+    private final int[] rowIndex;
+    private final double[] biasActivation;
+    // share of outputs kept by dropout of every layer, see SparseNetworkEvaluator
+    private final double[] keep;
+    private final ActivationFunction[] activationFunctions;
+    // layer outputs with bias neurons set, copied to every scratch buffer
+    private final double[] layerOutput;
+    // length of a row of the scratch matrix: layer outputs before the input layer, which is never written to
+    private final int stride;
+    private final ThreadLocal<double[]> scratch;
+    private final ThreadLocal<double[]> batchScratch;
+
+    // CONSTRUCTORS
+
+    private QuantizedNetwork(int[] layerCounts, int[] layerFeedCounts, double[] biasActivation, double[] keep,
+                             ActivationFunction[] activationFunctions) {
+        int layerCount = layerCounts.length;
+        if (layerCount < 2 || layerFeedCounts.length != layerCount || biasActivation.length != layerCount ||
+                keep.length != layerCount || activationFunctions.length != layerCount)
+            throw new IllegalArgumentException("network should have an input and an output layer");
+
+        this.layerCounts = layerCounts;
+        this.layerFeedCounts = layerFeedCounts;
+        this.biasActivation = biasActivation;
+        this.keep = keep;
+        this.activationFunctions = activationFunctions;
+
+        this.layerIndex = new int[layerCount];
+        this.weightIndex = new int[layerCount];
+        this.rowIndex = new int[layerCount];
+        long weightCount = 0;
+        for (int layer = 0; layer < layerCount; layer++) {
+            if (layerFeedCounts[layer] < 1 || layerCounts[layer] < layerFeedCounts[layer] ||
+                    layerCounts[layer] > layerFeedCounts[layer] + 1)
+                throw new IllegalArgumentException("layer " + layer + " has a wrong number of neurons");
+            if (layer > 0) {
+                layerIndex[layer] = layerIndex[layer - 1] + layerCounts[layer - 1];
+                weightCount += (long) layerCounts[layer] * layerFeedCounts[layer - 1];
+                rowIndex[layer] = rowIndex[layer - 1] + layerFeedCounts[layer - 1];
+                if (weightCount > Integer.MAX_VALUE)
+                    throw new IllegalArgumentException("network has too many weights");
+                weightIndex[layer] = (int) weightCount;
+            }
+        }
+
+        this.layerOutput = new double[layerIndex[layerCount - 1] + layerCounts[layerCount - 1]];
+        for (int layer = 0; layer < layerCount; layer++) {
+            if (layerCounts[layer] > layerFeedCounts[layer]) {
+                layerOutput[layerIndex[layer] + layerFeedCounts[layer]] = biasActivation[layer];
+            }
+        }
+        this.stride = layerIndex[layerCount - 1];
+        this.scratch = ThreadLocal.withInitial(layerOutput::clone);
+        this.batchScratch = ThreadLocal.withInitial(this::newBatchScratch);
+    }
+
+    /**
+     * Makes a copy of the network with weights reduced to the precision. The network is only read.
+     */
+    static QuantizedNetwork quantize(FlatNetwork flat, Precision precision) {
+        int layerCount = flat.getLayerCounts().length;
+        double[] rates = flat.getLayerDropoutRates();
+        double[] keep = new double[layerCount];
+        ActivationFunction[] activationFunctions = new ActivationFunction[layerCount];
+        for (int layer = 0; layer < layerCount; layer++) {
+            keep[layer] = 1 - (rates != null && rates.length > layer ? rates[layer] : 0);
+            activationFunctions[layer] = flat.getActivationFunctions()[layer].clone();
+        }
+        int[] layerCounts = flat.getLayerCounts().clone();
+        int[] layerFeedCounts = flat.getLayerFeedCounts().clone();
+        double[] biasActivation = flat.getBiasActivation().clone();
+
+        double[] weights = flat.getWeights();
+        if (precision == Precision.FLOAT32) {
+            float[] reduced = new float[weights.length];
+            for (int i = 0; i < weights.length; i++) {
+                reduced[i] = (float) weights[i];
+            }
+            return new Float32(layerCounts, layerFeedCounts, biasActivation, keep, activationFunctions, reduced);
+        }
+
+        int rowCount = 0;
+        for (int layer = 0; layer < layerCount - 1; layer++) {
+            rowCount += layerFeedCounts[layer];
+        }
+        byte[] reduced = new byte[weights.length];
+        float[] scales = new float[rowCount];
+        int row = 0;
+        for (int layer = 0; layer < layerCount - 1; layer++) {
+            int rowLength = layerCounts[layer + 1];
+            for (int x = 0; x < layerFeedCounts[layer]; x++, row++) {
+                int start = flat.getWeightIndex()[layer] + x * rowLength;
+                double maxAbs = 0;
+                for (int i = start; i < start + rowLength; i++) {
+                    maxAbs = Math.max(maxAbs, Math.abs(weights[i]));
+                }
+                scales[row] = (float) (maxAbs / INT8_RANGE);
+                for (int i = start; i < start + rowLength; i++) {
+                    reduced[i] = scales[row] == 0 ? 0 :
+                            (byte) Math.max(-INT8_RANGE, Math.min(INT8_RANGE, Math.round(weights[i] / scales[row])));
+                }
+            }
+        }
+        return new Int8(layerCounts, layerFeedCounts, biasActivation, keep, activationFunctions, reduced, scales);
+    }
+
+    // CLIENT SECTION
+
+    abstract Precision getPrecision();
+
+    /**
+     * @return bytes taken by weights and their scales
+     */
+    abstract long getWeightSize();
+
+    int getInputCount() {
+        return layerFeedCounts[layerCounts.length - 1];
+    }
+
+    int getOutputCount() {
+        return layerFeedCounts[0];
+    }
+
+    int getWeightCount() {
+        return weightIndex[layerCounts.length - 1];
+    }
+
+    /**
+     * @param activeInputs columns of the input layer set to 1, each in range [0, input count)
+     * @param output       array of at least output count length to store network output to
+     */
+    void compute(int[] activeInputs, double[] output) {
+        double[] values = scratch.get();
+        int inputLayer = layerCounts.length - 1;
+
+        computeInputLayer(new int[][]{activeInputs}, 0, 1, values, 0, inputLayer);
+        for (int layer = inputLayer - 1; layer > 0; layer--) {
+            computeLayer(values, 0, 1, layer);
+        }
+
+        System.arraycopy(values, 0, output, 0, getOutputCount());
+    }
+
+    /**
+     * Computes network output for several texts at once.
+     *
+     * @param activeInputs active columns of every text, see {@link #compute(int[], double[])}
+     * @param output       arrays to store network output of every text to, in the same order
+     */
+    void computeBatch(int[][] activeInputs, double[][] output) {
+        if (activeInputs.length == 0)
+            return;
+
+        // one row of layer outputs for every text of the block
+        double[] values = batchScratch.get();
+        int inputLayer = layerCounts.length - 1;
+
+        for (int from = 0; from < activeInputs.length; from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, activeInputs.length);
+            computeInputLayer(activeInputs, from, to, values, stride, inputLayer);
+            for (int layer = inputLayer - 1; layer > 0; layer--) {
+                computeLayer(values, stride, to - from, layer);
+            }
+
+            for (int b = from; b < to; b++) {
+                System.arraycopy(values, (b - from) * stride, output[b], 0, getOutputCount());
+            }
+        }
+    }
+
+    // INNER SECTION
+
+    // layers are written from output to input as Encog keeps them: neuron counts, bias activations, kept shares and
+    // activation functions, then weights
+    void write(ModelBundle.Writer out) {
+        out.writeString(getPrecision().name());
+        out.writeInts(layerCounts);
+        out.writeInts(layerFeedCounts);
+        out.writeDoubles(biasActivation);
+        out.writeDoubles(keep);
+        for (ActivationFunction function : activationFunctions) {
+            out.writeString(function.getClass().getName());
+        }
+        writeWeights(out);
+    }
+
+    static QuantizedNetwork read(ModelBundle.Reader in) throws IOException {
+        Precision precision;
+        try {
+            precision = Precision.valueOf(in.readString());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("unknown precision of bundle", e);
+        }
+        int[] layerCounts = in.readInts();
+        int[] layerFeedCounts = in.readInts();
+        int layerCount = layerCounts.length;
+        double[] biasActivation = new double[layerCount];
+        double[] keep = new double[layerCount];
+        in.readDoubles(biasActivation);
+        in.readDoubles(keep);
+        ActivationFunction[] activationFunctions = new ActivationFunction[layerCount];
+        for (int layer = 0; layer < layerCount; layer++) {
+            activationFunctions[layer] = in.readActivationFunction();
+        }
+
+        QuantizedNetwork network;
+        try {
+            network = precision == Precision.FLOAT32 ?
+                    new Float32(layerCounts, layerFeedCounts, biasActivation, keep, activationFunctions, null) :
+                    new Int8(layerCounts, layerFeedCounts, biasActivation, keep, activationFunctions, null, null);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("bundle is corrupted", e);
+        }
+        return network.readWeights(in);
+    }
+
+    abstract void writeWeights(ModelBundle.Writer out);
+
+    // a copy of the network with weights read from the bundle
+    abstract QuantizedNetwork readWeights(ModelBundle.Reader in) throws IOException;
+
+    /**
+     * @return sum of weights of the row at the columns, scaled back to the magnitude of the original weights
+     */
+    abstract double sumColumns(int row, int start, int[] columns);
+
+    /**
+     * @return weight of the row at the index, scaled back to the magnitude of the original weight
+     */
+    abstract double weight(int row, int index);
+
+    /**
+     * @return product of the row starting at the index with the values
+     */
+    abstract double dot(int row, int start, double[] values, int offset, int length);
+
+    int getRowCount() {
+        return rowIndex[layerCounts.length - 1];
+    }
+
+    // PRIVATE SECTION
+
+    // every row of weights is read once for texts activeInputs[from, to), the row of text b starts at (b - from) * stride
+    private void computeInputLayer(int[][] activeInputs, int from, int to, double[] values, int stride, int inputLayer) {
+        int inputCount = layerFeedCounts[inputLayer];
+        int rowLength = layerCounts[inputLayer];
+        boolean hasBias = rowLength > inputCount;
+        double bias = hasBias ? biasActivation[inputLayer] : 0;
+
+        int outputIndex = layerIndex[inputLayer - 1];
+        int outputSize = layerFeedCounts[inputLayer - 1];
+        int start = weightIndex[inputLayer - 1];
+        int row = rowIndex[inputLayer - 1];
+        double keep = this.keep[inputLayer - 1];
+
+        for (int x = outputIndex; x < outputIndex + outputSize; x++, row++, start += rowLength) {
+            double biasSum = hasBias ? weight(row, start + inputCount) * bias : 0;
+            for (int b = from; b < to; b++) {
+                values[(b - from) * stride + x] = (biasSum + sumColumns(row, start, activeInputs[b])) * keep;
+            }
+        }
+
+        for (int b = 0; b < to - from; b++) {
+            activationFunctions[inputLayer - 1].activationFunction(values, b * stride + outputIndex, outputSize);
+        }
+    }
+
+    private void computeLayer(double[] values, int stride, int batchSize, int layer) {
+        int inputIndex = layerIndex[layer];
+        int inputSize = layerCounts[layer];
+        int outputIndex = layerIndex[layer - 1];
+        int outputSize = layerFeedCounts[layer - 1];
+        int start = weightIndex[layer - 1];
+        int row = rowIndex[layer - 1];
+        double keep = this.keep[layer - 1];
+
+        for (int x = outputIndex; x < outputIndex + outputSize; x++, row++, start += inputSize) {
+            for (int b = 0; b < batchSize; b++) {
+                values[b * stride + x] = dot(row, start, values, b * stride + inputIndex, inputSize) * keep;
+            }
+        }
+
+        for (int b = 0; b < batchSize; b++) {
+            activationFunctions[layer - 1].activationFunction(values, b * stride + outputIndex, outputSize);
+        }
+    }
+
+    // rows of layer outputs for a block of texts with bias neurons already set, bias neurons are never overwritten
+    private double[] newBatchScratch() {
+        double[] values = new double[BLOCK_SIZE * stride];
+        for (int b = 0; b < BLOCK_SIZE; b++) {
+            System.arraycopy(layerOutput, 0, values, b * stride, stride);
+        }
+        return values;
+    }
+
+    private static final class Float32 extends QuantizedNetwork {
+
+        private final float[] weights;
+
+        private Float32(int[] layerCounts, int[] layerFeedCounts, double[] biasActivation, double[] keep,
+                        ActivationFunction[] activationFunctions, float[] weights) {
+            super(layerCounts, layerFeedCounts, biasActivation, keep, activationFunctions);
+            this.weights = weights;
+        }
+
+        @Override
+        Precision getPrecision() {
+            return Precision.FLOAT32;
+        }
+
+        @Override
+        long getWeightSize() {
+            return weights.length * 4L;
+        }
+
+        @Override
+        void writeWeights(ModelBundle.Writer out) {
+            out.writeFloats(weights);
+        }
+
+        @Override
+        QuantizedNetwork readWeights(ModelBundle.Reader in) throws IOException {
+            return new Float32(super.layerCounts, super.layerFeedCounts, super.biasActivation, super.keep,
+                    super.activationFunctions, in.readFloats(getWeightCount()));
+        }
+
+        @Override
+        double sumColumns(int row, int start, int[] columns) {
+            double sum = 0;
+            for (int column : columns) {
+                sum += weights[start + column];
+            }
+            return sum;
+        }
+
+        @Override
+        double weight(int row, int index) {
+            return weights[index];
+        }
+
+        @Override
+        double dot(int row, int start, double[] values, int offset, int length) {
+            double sum = 0;
+            for (int y = 0; y < length; y++) {
+                sum += weights[start + y] * values[offset + y];
+            }
+            return sum;
+        }
+    }
+
+    private static final class Int8 extends QuantizedNetwork {
+
+        private final byte[] weights;
+        // scale of every row of weights
+        private final float[] scales;
+
+        private Int8(int[] layerCounts, int[] layerFeedCounts, double[] biasActivation, double[] keep,
+                     ActivationFunction[] activationFunctions, byte[] weights, float[] scales) {
+            super(layerCounts, layerFeedCounts, biasActivation, keep, activationFunctions);
+            this.weights = weights;
+            this.scales = scales;
+        }
+
+        @Override
+        Precision getPrecision() {
+            return Precision.INT8;
+        }
+
+        @Override
+        long getWeightSize() {
+            return weights.length + scales.length * 4L;
+        }
+
+        @Override
+        void writeWeights(ModelBundle.Writer out) {
+            out.writeBytes(weights);
+            out.writeFloats(scales);
+        }
+
+        @Override
+        QuantizedNetwork readWeights(ModelBundle.Reader in) throws IOException {
+            return new Int8(super.layerCounts, super.layerFeedCounts, super.biasActivation, super.keep,
+                    super.activationFunctions, in.readBytes(getWeightCount()), in.readFloats(getRowCount()));
+        }
+
+        @Override
+        double sumColumns(int row, int start, int[] columns) {
+            // the whole sum is exact in ints and is scaled once
+            int sum = 0;
+            for (int column : columns) {
+                sum += weights[start + column];
+            }
+            return sum * (double) scales[row];
+        }
+
+        @Override
+        double weight(int row, int index) {
+            return weights[index] * (double) scales[row];
+        }
+
+        @Override
+        double dot(int row, int start, double[] values, int offset, int length) {
+            double sum = 0;
+            for (int y = 0; y < length; y++) {
+                sum += weights[start + y] * values[offset + y];
+            }
+            return sum * scales[row];
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package textclassifier2.classifier;
+
+import org.encog.neural.flat.FlatNetwork;
+import org.encog.neural.networks.BasicNetwork;
+
+/**
+ * Forward pass of a feed-forward {@link BasicNetwork} for binary bag-of-words input given as a list of active input
+ * columns instead of a dense vector. Every active input is 1 and every other input is 0, so the sums of the first
+ * hidden layer are just the bias weight plus the weights of the active columns; the zero columns, which are nearly the
+ * whole vocabulary, are never touched. From the first hidden layer on the computation is the same dense one
+ * {@link FlatNetwork} does.
+ * <p>
+ * Reads weights straight from the flat network, so it always sees the current state of a network being trained, but
+ * never writes to the network. Layer activations of {@link #compute(int[], double[])} are kept in a scratch buffer
+ * owned by the calling thread. {@link #computeBatch(int[][], double[][])} computes a batch in blocks of texts, keeps
+ * activations of a block in a scratch matrix owned by the calling thread as well and walks every weight row once for
+ * all texts of the block. So once training is over any number of threads may compute against one evaluator without
+ * locking.
+ *
+ * @author ripreal
+ */
+final class SparseNetworkEvaluator {
+
+    // most texts of a batch computed at once, bounds the scratch matrix of a thread
+    private static final int BLOCK_SIZE = 64;
+
+    private final FlatNetwork flat;
+    // layer outputs with bias neurons set, copied to every scratch buffer
+    private final double[] layerOutput;
+    // length of a row of the scratch matrix: layer outputs before the input layer, which is never written to
+    private final int stride;
+    private final ThreadLocal<double[]> scratch;
+    private final ThreadLocal<double[]> batchScratch;
+
+    SparseNetworkEvaluator(BasicNetwork network) {
+        this.flat = network.getFlat();
+        this.layerOutput = newLayerOutput(flat);
+        this.stride = flat.getLayerIndex()[flat.getLayerCounts().length - 1];
+        this.scratch = ThreadLocal.withInitial(layerOutput::clone);
+        this.batchScratch = ThreadLocal.withInitial(this::newBatchScratch);
+    }
+
+    int getInputCount() {
+        return flat.getInputCount();
+    }
+
+    int getOutputCount() {
+        return flat.getOutputCount();
+    }
+
+    /**
+     * @param activeInputs columns of the input layer set to 1, each in range [0, input count)
+     * @param output       array of at least output count length to store network output to
+     */
+    void compute(int[] activeInputs, double[] output) {
+        double[] values = scratch.get();
+        int inputLayer = flat.getLayerCounts().length - 1;
+
+        computeInputLayer(activeInputs, values, inputLayer);
+        for (int layer = inputLayer - 1; layer > 0; layer--) {
+            computeLayer(values, layer);
+        }
+
+        System.arraycopy(values, 0, output, 0, flat.getOutputCount());
+    }
+
+    /**
+     * Computes network output for several texts at once.
+     *
+     * @param activeInputs active columns of every text, see {@link #compute(int[], double[])}
+     * @param output       arrays to store network output of every text to, in the same order
+     */
+    void computeBatch(int[][] activeInputs, double[][] output) {
+        if (activeInputs.length == 0)
+            return;
+
+        // one row of layer outputs for every text of the block
+        double[] values = batchScratch.get();
+        int inputLayer = flat.getLayerCounts().length - 1;
+
+        for (int from = 0; from < activeInputs.length; from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, activeInputs.length);
+            computeInputLayerBatch(activeInputs, from, to, values, inputLayer);
+            for (int layer = inputLayer - 1; layer > 0; layer--) {
+                computeLayerBatch(values, to - from, layer);
+            }
+
+            for (int b = from; b < to; b++) {
+                System.arraycopy(values, (b - from) * stride, output[b], 0, flat.getOutputCount());
+            }
+        }
+    }
+
+    // PRIVATE SECTION
+
+    // Encog keeps layers in reverse order: 0 is the output layer, the last one is the input layer
+    private void computeInputLayer(int[] activeInputs, double[] values, int inputLayer) {
+        double[] weights = flat.getWeights();
+        int inputCount = flat.getLayerFeedCounts()[inputLayer];
+        int rowLength = flat.getLayerCounts()[inputLayer];
+        boolean hasBias = rowLength > inputCount;
+        double bias = hasBias ? flat.getBiasActivation()[inputLayer] : 0;
+
+        int outputIndex = flat.getLayerIndex()[inputLayer - 1];
+        int outputSize = flat.getLayerFeedCounts()[inputLayer - 1];
+        int row = flat.getWeightIndex()[inputLayer - 1];
+        double keep = 1 - dropoutRate(inputLayer - 1);
+
+        for (int x = outputIndex; x < outputIndex + outputSize; x++, row += rowLength) {
+            double sum = hasBias ? weights[row + inputCount] * bias : 0;
+            for (int column : activeInputs) {
+                sum += weights[row + column];
+            }
+            values[x] = sum * keep;
+        }
+
+        flat.getActivationFunctions()[inputLayer - 1].activationFunction(values, outputIndex, outputSize);
+    }
+
+    private void computeLayer(double[] values, int layer) {
+        double[] weights = flat.getWeights();
+        int inputIndex = flat.getLayerIndex()[layer];
+        int inputSize = flat.getLayerCounts()[layer];
+        int outputIndex = flat.getLayerIndex()[layer - 1];
+        int outputSize = flat.getLayerFeedCounts()[layer - 1];
+        int index = flat.getWeightIndex()[layer - 1];
+        double keep = 1 - dropoutRate(layer - 1);
+
+        for (int x = outputIndex; x < outputIndex + outputSize; x++) {
+            double sum = 0;
+            for (int y = inputIndex; y < inputIndex + inputSize; y++) {
+                sum += weights[index++] * values[y];
+            }
+            values[x] = sum * keep;
+        }
+
+        flat.getActivationFunctions()[layer - 1].activationFunction(values, outputIndex, outputSize);
+    }
+
+    // texts activeInputs[from, to) go to rows [0, to - from) of the values
+    private void computeInputLayerBatch(int[][] activeInputs, int from, int to, double[] values, int inputLayer) {
+        double[] weights = flat.getWeights();
+        int inputCount = flat.getLayerFeedCounts()[inputLayer];
+        int rowLength = flat.getLayerCounts()[inputLayer];
+        boolean hasBias = rowLength > inputCount;
+        double bias = hasBias ? flat.getBiasActivation()[inputLayer] : 0;
+
+        int outputIndex = flat.getLayerIndex()[inputLayer - 1];
+        int outputSize = flat.getLayerFeedCounts()[inputLayer - 1];
+        int row = flat.getWeightIndex()[inputLayer - 1];
+        double keep = 1 - dropoutRate(inputLayer - 1);
+
+        for (int x = outputIndex; x < outputIndex + outputSize; x++, row += rowLength) {
+            double biasSum = hasBias ? weights[row + inputCount] * bias : 0;
+            for (int b = from; b < to; b++) {
+                double sum = biasSum;
+                for (int column : activeInputs[b]) {
+                    sum += weights[row + column];
+                }
+                values[(b - from) * stride + x] = sum * keep;
+            }
+        }
+
+        for (int b = 0; b < to - from; b++) {
+            flat.getActivationFunctions()[inputLayer - 1].activationFunction(values, b * stride + outputIndex, outputSize);
+        }
+    }
+
+    private void computeLayerBatch(double[] values, int batchSize, int layer) {
+        double[] weights = flat.getWeights();
+        int inputIndex = flat.getLayerIndex()[layer];
+        int inputSize = flat.getLayerCounts()[layer];
+        int outputIndex = flat.getLayerIndex()[layer - 1];
+        int outputSize = flat.getLayerFeedCounts()[layer - 1];
+        int row = flat.getWeightIndex()[layer - 1];
+        double keep = 1 - dropoutRate(layer - 1);
+
+        for (int x = outputIndex; x < outputIndex + outputSize; x++, row += inputSize) {
+            for (int b = 0; b < batchSize; b++) {
+                int offset = b * stride + inputIndex;
+                double sum = 0;
+                for (int y = 0; y < inputSize; y++) {
+                    sum += weights[row + y] * values[offset + y];
+                }
+                values[b * stride + x] = sum * keep;
+            }
+        }
+
+        for (int b = 0; b < batchSize; b++) {
+            flat.getActivationFunctions()[layer - 1].activationFunction(values, b * stride + outputIndex, outputSize);
+        }
+    }
+
+    private double dropoutRate(int layer) {
+        double[] rates = flat.getLayerDropoutRates();
+        return rates != null && rates.length > layer ? rates[layer] : 0;
+    }
+
+    // rows of layer outputs for a block of texts with bias neurons already set, bias neurons are never overwritten
+    private double[] newBatchScratch() {
+        double[] values = new double[BLOCK_SIZE * stride];
+        for (int b = 0; b < BLOCK_SIZE; b++) {
+            System.arraycopy(layerOutput, 0, values, b * stride, stride);
+        }
+        return values;
+    }
+
+    // buffer of all layer outputs with bias neurons already set, the rest is overwritten on every compute
+    static double[] newLayerOutput(FlatNetwork flat) {
+        double[] values = new double[flat.getLayerOutput().length];
+        int[] counts = flat.getLayerCounts();
+        int[] feedCounts = flat.getLayerFeedCounts();
+        int[] index = flat.getLayerIndex();
+        double[] biasActivation = flat.getBiasActivation();
+
+        for (int layer = 0; layer < counts.length; layer++) {
+            if (counts[layer] > feedCounts[layer]) {
+                values[index[layer] + feedCounts[layer]] = biasActivation[layer];
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,174 @@
+package textclassifier2.classifier;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when iterative training of a {@link ClassifierUnit} stops. Training stops at the first of:
+ * <ul>
+ * <li>training error reaching the target error;
+ * <li>the maximal number of iterations;
+ * <li>the time budget running out;
+ * <li>a plateau: training error improving by less than epsilon over the last N iterations;
+ * <li>early stopping: error on the validation split not improving for a number of iterations. The unit holds a share
+ * of texts out of training for it and returns to the state of the best validation error.
+ * </ul>
+ * Default settings stop at 1% of error or after 1000 iterations. Every build takes a {@link Session} of its own, so
+ * one controller may be shared by units built concurrently. Why a build stopped is reported in {@link TrainingReport}.
+ *
+ * @author ripreal
+ */
+public class TrainingController {
+
+    private double targetError = 0.01;
+    private int maxIterations = 1000;
+    private long timeBudgetNanos = Long.MAX_VALUE;
+    private int plateauIterations = 0;
+    private double plateauEpsilon = 0;
+    private double validationShare = 0;
+    private int patience = 0;
+
+    /**
+     * @param targetError training error to stop at
+     */
+    public TrainingController withTargetError(double targetError) {
+        if (targetError < 0)
+            throw new IllegalArgumentException("targetError should not be negative");
+        this.targetError = targetError;
+        return this;
+    }
+
+    public TrainingController withMaxIterations(int maxIterations) {
+        if (maxIterations < 1)
+            throw new IllegalArgumentException("maxIterations should be positive");
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    /**
+     * @param time wall-clock time a build may take, the current iteration is completed when it runs out
+     */
+    public TrainingController withTimeBudget(long time, TimeUnit unit) {
+        if (time < 1)
+            throw new IllegalArgumentException("time should be positive");
+        this.timeBudgetNanos = unit.toNanos(time);
+        return this;
+    }
+
+    /**
+     * @param iterations number of iterations to measure improvement over
+     * @param epsilon    smallest improvement of training error over the iterations to go on with
+     */
+    public TrainingController withPlateau(int iterations, double epsilon) {
+        if (iterations < 1 || epsilon < 0)
+            throw new IllegalArgumentException();
+        this.plateauIterations = iterations;
+        this.plateauEpsilon = epsilon;
+        return this;
+    }
+
+    /**
+     * @param validationShare share of texts held out of training to compute validation error on, in range (0, 1)
+     * @param patience        number of iterations without improvement of validation error to go on with
+     */
+    public TrainingController withEarlyStopping(double validationShare, int patience) {
+        if (!(validationShare > 0 && validationShare < 1) || patience < 1)
+            throw new IllegalArgumentException();
+        this.validationShare = validationShare;
+        this.patience = patience;
+        return this;
+    }
+
+    /**
+     * @return share of texts to hold out for validation, 0 if early stopping is off
+     */
+    public double getValidationShare() {
+        return validationShare;
+    }
+
+    /**
+     * Starts to watch one build.
+     */
+    public Session start() {
+        return new Session();
+    }
+
+    /**
+     * State of one build. Not thread safe, used by the thread running the build.
+     */
+    public final class Session {
+
+        private final long startTime = System.nanoTime();
+        private final double targetError = TrainingController.this.targetError;
+        private final int maxIterations = TrainingController.this.maxIterations;
+        private final long timeBudgetNanos = TrainingController.this.timeBudgetNanos;
+        private final int plateauIterations = TrainingController.this.plateauIterations;
+        private final double plateauEpsilon = TrainingController.this.plateauEpsilon;
+        private final int patience = TrainingController.this.patience;
+        // training errors of the last plateauIterations + 1 iterations
+        private final double[] errors = new double[plateauIterations + 1];
+        private int iterations;
+        private double trainingError = Double.NaN;
+        private double validationError = Double.NaN;
+        private double bestValidationError = Double.POSITIVE_INFINITY;
+        private int sinceBest;
+        private TrainingReport.StopReason stopReason;
+
+        private Session() {
+        }
+
+        public boolean shouldStop(double trainingError) {
+            return shouldStop(trainingError, Double.NaN);
+        }
+
+        /**
+         * Takes errors of the iteration just finished.
+         *
+         * @param validationError error on the validation split, NaN if there is none
+         * @return true if training should stop
+         */
+        public boolean shouldStop(double trainingError, double validationError) {
+            this.trainingError = trainingError;
+            this.validationError = validationError;
+            errors[iterations % errors.length] = trainingError;
+            iterations++;
+
+            if (patience > 0 && !Double.isNaN(validationError)) {
+                if (validationError < bestValidationError) {
+                    bestValidationError = validationError;
+                    sinceBest = 0;
+                } else {
+                    sinceBest++;
+                }
+            }
+
+            if (trainingError <= targetError) {
+                stopReason = TrainingReport.StopReason.CONVERGED;
+            } else if (patience > 0 && sinceBest >= patience) {
+                stopReason = TrainingReport.StopReason.EARLY_STOPPING;
+            } else if (plateauIterations > 0 && iterations > plateauIterations
+                    && errors[iterations % errors.length] - trainingError < plateauEpsilon) {
+                // the oldest kept error is the one of plateauIterations iterations ago
+                stopReason = TrainingReport.StopReason.PLATEAU;
+            } else if (iterations >= maxIterations) {
+                stopReason = TrainingReport.StopReason.MAX_ITERATIONS;
+            } else if (System.nanoTime() - startTime >= timeBudgetNanos) {
+                stopReason = TrainingReport.StopReason.TIME_BUDGET;
+            }
+
+            return stopReason != null;
+        }
+
+        /**
+         * @return true if the last iteration gave the best validation error so far, the unit should remember its state
+         */
+        public boolean isBestIteration() {
+            return patience > 0 && !Double.isNaN(validationError) && sinceBest == 0;
+        }
+
+        public TrainingReport report() {
+            return new TrainingReport(stopReason, iterations, trainingError,
+                    Double.isInfinite(bestValidationError) ? Double.NaN : bestValidationError,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        }
+    }
+}
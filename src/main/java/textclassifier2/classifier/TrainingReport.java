@@ -0,0 +1,46 @@
+package textclassifier2.classifier;
+
+/**
+ * Outcome of training of a {@link ClassifierUnit}: why and when it stopped.
+ *
+ * @author ripreal
+ */
+public final class TrainingReport {
+
+    public enum StopReason {CONVERGED, MAX_ITERATIONS, TIME_BUDGET, PLATEAU, EARLY_STOPPING}
+
+    private final StopReason stopReason;
+    private final int iterations;
+    private final double trainingError;
+    private final double validationError;
+    private final long elapsedMillis;
+
+    TrainingReport(StopReason stopReason, int iterations, double trainingError, double validationError, long elapsedMillis) {
+        this.stopReason = stopReason;
+        this.iterations = iterations;
+        this.trainingError = trainingError;
+        this.validationError = validationError;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public StopReason getStopReason() {return this.stopReason;}
+
+    public int getIterations() {return this.iterations;}
+
+    public double getTrainingError() {return this.trainingError;}
+
+    /**
+     * @return best error on the validation split, NaN without early stopping
+     */
+    public double getValidationError() {return this.validationError;}
+
+    public long getElapsedMillis() {return this.elapsedMillis;}
+
+    @Override
+    public String toString() {
+        return "TrainingReport(stopReason=" + stopReason + ", iterations=" + iterations
+                + ", trainingError=" + String.format("%.4f", trainingError)
+                + (Double.isNaN(validationError) ? "" : ", validationError=" + String.format("%.4f", validationError))
+                + ", elapsedMillis=" + elapsedMillis + ")";
+    }
+}
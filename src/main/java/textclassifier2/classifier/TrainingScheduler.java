@@ -0,0 +1,137 @@
+package textclassifier2.classifier;
+
+import org.slf4j.Logger;
+import textclassifier2.model.ClassifiableText;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Builds several {@link ClassifierUnit} at once while keeping the total number of training threads within a budget.
+ * Every unit is given a number of threads: either the one requested for it or an equal share of what the requested
+ * threads leave of the budget. A unit starts building only when enough of the budget is free, so units run side by
+ * side as long as their threads fit into the budget and wait otherwise.
+ * <p>
+ * Encog runs training workers of all networks in one shared pool, so the pool is sized to the budget as well unless
+ * other trainings hold it, see {@link EnginePool}.
+ *
+ * @author ripreal
+ */
+final class TrainingScheduler {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(TrainingScheduler.class);
+    private final int threadBudget;
+
+    TrainingScheduler(int threadBudget) {
+        if (threadBudget < 1)
+            throw new IllegalArgumentException("threadBudget should be positive");
+        this.threadBudget = threadBudget;
+    }
+
+    /**
+     * @param units            units to build
+     * @param requestedThreads threads requested by every unit in the same order, 0 to take a share of the budget
+     * @param texts            texts to build units from
+     * @param features         features of the texts for every unit in the same order, see
+     *                         {@link ClassifierUnit#build(List, int[][])}
+     */
+    void build(List<ClassifierUnit> units, int[] requestedThreads, List<ClassifiableText> texts, List<int[][]> features) {
+        train(units, requestedThreads, texts, features, false);
+    }
+
+    /**
+     * Same as {@link #build(List, int[], List, List)} but goes on training units with
+     * {@link ClassifierUnit#update(List, int[][])}.
+     */
+    void update(List<ClassifierUnit> units, int[] requestedThreads, List<ClassifiableText> texts, List<int[][]> features) {
+        train(units, requestedThreads, texts, features, true);
+    }
+
+    // PRIVATE SECTION
+
+    private void train(List<ClassifierUnit> units, int[] requestedThreads, List<ClassifiableText> texts,
+                       List<int[][]> features, boolean update) {
+        if (units.isEmpty())
+            return;
+
+        int[] threads = shareBudget(requestedThreads);
+        Semaphore budget = new Semaphore(threadBudget, true);
+        EnginePool.acquire(threadBudget);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(units.size(), threadBudget));
+
+        try {
+            List<Future<?>> builds = new ArrayList<>();
+            for (int i = 0; i < units.size(); i++) {
+                ClassifierUnit unit = units.get(i);
+                int unitThreads = threads[i];
+                int[][] unitFeatures = features.get(i);
+                unit.setThreadCount(unitThreads);
+
+                builds.add(executor.submit(() -> {
+                    budget.acquireUninterruptibly(unitThreads);
+                    try {
+                        log.info((update ? "Updating " : "Building ") + unit + " with " + unitThreads + " thread(s)");
+                        if (update) {
+                            unit.update(texts, unitFeatures);
+                        } else {
+                            unit.build(texts, unitFeatures);
+                        }
+                        unit.getTrainingReport().ifPresent(report -> log.info((update ? "Updated " : "Built ") + unit + ": " + report));
+                    } finally {
+                        budget.release(unitThreads);
+                    }
+                }));
+            }
+
+            for (Future<?> build : builds) {
+                build.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Building of classifier units was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Building of classifier units failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            EnginePool.release();
+        }
+    }
+
+    // example:
+    // threadBudget = 8; requestedThreads = {0, 3, 0, 0}
+    // threads = {2, 3, 2, 1}
+    private int[] shareBudget(int[] requestedThreads) {
+        int[] threads = new int[requestedThreads.length];
+        int reserved = 0;
+        int shared = 0;
+
+        for (int i = 0; i < requestedThreads.length; i++) {
+            if (requestedThreads[i] > 0) {
+                threads[i] = Math.min(requestedThreads[i], threadBudget);
+                reserved += threads[i];
+            } else {
+                shared++;
+            }
+        }
+
+        if (shared > 0) {
+            int left = Math.max(0, threadBudget - reserved);
+            int share = left / shared;
+            int remainder = left % shared;
+            for (int i = 0; i < requestedThreads.length; i++) {
+                if (requestedThreads[i] <= 0) {
+                    threads[i] = Math.max(1, share + (remainder-- > 0 ? 1 : 0));
+                }
+            }
+        }
+
+        return threads;
+    }
+}
@@ -0,0 +1,192 @@
+package textclassifier2.metrics;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of every {@link Stage} and of whole requests, with counters of requests, errors and n-grams out of the
+ * vocabulary, kept for a classifier or for one of its units. Metrics are off until {@link #setEnabled(boolean)}; while
+ * off nothing is recorded, and the classifier does not measure stages at all.
+ * <p>
+ * Requests and errors are counted in texts, a batch of 100 texts is 100 requests. Latencies of a batch are recorded as
+ * the average latency of its texts, once per text.
+ * <p>
+ * Any number of threads may record at once, nothing is locked.
+ *
+ * @author ripreal
+ */
+public final class ClassifierMetrics implements ClassifierMetricsMBean {
+
+    public static final String JMX_DOMAIN = "textclassifier2";
+
+    private volatile boolean enabled;
+    private final Map<Stage, LatencyHistogram> stageLatencies = new EnumMap<>(Stage.class);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder unknownTokens = new LongAdder();
+    // guarded by this
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+
+    // CONSTRUCTORS
+
+    public ClassifierMetrics() {
+        for (Stage stage : Stage.values()) {
+            stageLatencies.put(stage, new LatencyHistogram());
+        }
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * Records texts classified successfully. Stages the probe spent no time on are not recorded, so the histogram of
+     * a stage a unit does not have stays empty.
+     *
+     * @param probe        time spent on stages and n-grams seen for all the texts
+     * @param latencyNanos time the texts took from start to end
+     * @param textCount    number of texts
+     */
+    public void record(StageProbe probe, long latencyNanos, int textCount) {
+        if (!enabled || textCount < 1)
+            return;
+
+        for (Stage stage : Stage.values()) {
+            long nanos = probe.get(stage);
+            if (nanos > 0) {
+                stageLatencies.get(stage).record(nanos / textCount, textCount);
+            }
+        }
+        latency.record(latencyNanos / textCount, textCount);
+        requests.add(textCount);
+        tokens.add(probe.getTokenCount());
+        unknownTokens.add(probe.getUnknownTokenCount());
+    }
+
+    /**
+     * Records texts which failed to be classified.
+     */
+    public void recordError(int textCount) {
+        if (!enabled)
+            return;
+
+        requests.add(textCount);
+        errors.add(textCount);
+    }
+
+    /**
+     * Publishes the counters and a histogram per stage as MBeans of the platform MBean server, named
+     * {@code textclassifier2:<properties>} and {@code textclassifier2:<properties>,stage=<stage>}. The whole request
+     * latency goes as stage {@code total}.
+     *
+     * @param properties key properties of the names, values quoted with {@link ObjectName#quote(String)} if needed
+     * @throws IllegalStateException if the MBeans can not be registered, for example under names already taken
+     */
+    // example:
+    // properties = type=Classifier,name="news"
+    // names = textclassifier2:type=Classifier,name="news"; textclassifier2:type=Classifier,name="news",stage=stem; ...
+    public synchronized void register(String properties) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        List<ObjectName> names = new ArrayList<>();
+        try {
+            register(server, new ObjectName(JMX_DOMAIN + ":" + properties), this, names);
+            register(server, new ObjectName(JMX_DOMAIN + ":" + properties + ",stage=total"), latency, names);
+            for (Stage stage : Stage.values()) {
+                String stageName = stage.name().toLowerCase(Locale.ROOT);
+                register(server, new ObjectName(JMX_DOMAIN + ":" + properties + ",stage=" + stageName),
+                        stageLatencies.get(stage), names);
+            }
+        } catch (JMException e) {
+            // roll back this call only, earlier registrations stay
+            unregister(server, names);
+            throw new IllegalStateException("metrics can not be registered as " + properties, e);
+        }
+        registeredNames.addAll(names);
+    }
+
+    /**
+     * Removes MBeans published by {@link #register(String)}.
+     */
+    public synchronized void unregister() {
+        unregister(ManagementFactory.getPlatformMBeanServer(), registeredNames);
+        registeredNames.clear();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getTokenCount() {
+        return tokens.sum();
+    }
+
+    @Override
+    public double getOovRate() {
+        long count = tokens.sum();
+        return count == 0 ? Double.NaN : (double) unknownTokens.sum() / count;
+    }
+
+    @Override
+    public void reset() {
+        stageLatencies.values().forEach(LatencyHistogram::reset);
+        latency.reset();
+        requests.reset();
+        errors.reset();
+        tokens.reset();
+        unknownTokens.reset();
+    }
+
+    public LatencyHistogram getStageLatency(Stage stage) {
+        return stageLatencies.get(stage);
+    }
+
+    // PRIVATE SECTION
+
+    private static void register(MBeanServer server, ObjectName name, Object mBean, List<ObjectName> names)
+            throws JMException {
+        server.registerMBean(mBean, name);
+        names.add(name);
+    }
+
+    private static void unregister(MBeanServer server, List<ObjectName> names) {
+        for (ObjectName name : names) {
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException ignored) {
+                // already removed by somebody else
+            } catch (JMException e) {
+                throw new IllegalStateException("metrics can not be unregistered as " + name, e);
+            }
+        }
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    public LatencyHistogram getLatency() {return this.latency;}
+}
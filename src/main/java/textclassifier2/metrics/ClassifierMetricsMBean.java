@@ -0,0 +1,27 @@
+package textclassifier2.metrics;
+
+/**
+ * Counters of a classifier or a classifier unit as seen over JMX. Latencies of stages are published as separate
+ * {@link LatencyHistogramMBean}s.
+ *
+ * @author ripreal
+ */
+public interface ClassifierMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    long getTokenCount();
+
+    /**
+     * @return share of n-grams not found in the vocabulary, NaN if no n-grams were seen
+     */
+    double getOovRate();
+
+    void reset();
+}
@@ -0,0 +1,144 @@
+package textclassifier2.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds. Every power of two is split into 8 buckets, so a percentile is off
+ * by at most 1/8 of its value whatever the range of latencies is, and recording is a few atomic additions without any
+ * allocation. Any number of threads may record at once.
+ *
+ * @author ripreal
+ */
+public final class LatencyHistogram implements LatencyHistogramMBean {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = getBucketIndex(Long.MAX_VALUE) + 1;
+    private static final double NANOS_IN_MICRO = 1000.0;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    // CLIENT SECTION
+
+    public void record(long nanos) {
+        record(nanos, 1);
+    }
+
+    /**
+     * Records the same latency several times, for example the average latency of every text of a batch.
+     */
+    public void record(long nanos, int times) {
+        if (times < 1)
+            return;
+
+        long value = Math.max(0, nanos);
+        buckets.addAndGet(getBucketIndex(value), times);
+        count.add(times);
+        sum.add(value * times);
+        max.accumulate(value);
+    }
+
+    /**
+     * @param percentile in range [0, 100]
+     * @return least latency in nanoseconds the given percent of recorded latencies does not exceed, 0 if nothing is
+     * recorded
+     */
+    public long getPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100))
+            throw new IllegalArgumentException("percentile should be in range [0, 100]");
+
+        // buckets may change while being read, so the total is counted over the same reads
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : sum.sum() / NANOS_IN_MICRO / recorded;
+    }
+
+    @Override
+    public double getMax() {
+        return max.get() / NANOS_IN_MICRO;
+    }
+
+    @Override
+    public double get50thPercentile() {
+        return getPercentile(50) / NANOS_IN_MICRO;
+    }
+
+    @Override
+    public double get90thPercentile() {
+        return getPercentile(90) / NANOS_IN_MICRO;
+    }
+
+    @Override
+    public double get99thPercentile() {
+        return getPercentile(99) / NANOS_IN_MICRO;
+    }
+
+    @Override
+    public double get999thPercentile() {
+        return getPercentile(99.9) / NANOS_IN_MICRO;
+    }
+
+    // PRIVATE SECTION
+
+    // values below 8 get a bucket each, every next power of two is split into 8 buckets
+    // example:
+    // 5 => 5; 8 => 8; 15 => 15; 16 => 16; 17 => 16; 18 => 17; 100 => 8 * 4 + (100 >>> 3) - 8 = 36, bucket [96, 103]
+    private static int getBucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,23 @@
+package textclassifier2.metrics;
+
+/**
+ * Latencies of one stage as seen over JMX, all times are in microseconds.
+ *
+ * @author ripreal
+ */
+public interface LatencyHistogramMBean {
+
+    long getCount();
+
+    double getMean();
+
+    double getMax();
+
+    double get50thPercentile();
+
+    double get90thPercentile();
+
+    double get99thPercentile();
+
+    double get999thPercentile();
+}
@@ -0,0 +1,19 @@
+package textclassifier2.metrics;
+
+/**
+ * Stages a text goes through while being classified, in order.
+ *
+ * @author ripreal
+ */
+public enum Stage {
+    // splitting the text into n-grams, stemming excluded
+    TOKENIZE,
+    // removing endings of words
+    STEM,
+    // looking n-grams up in the vocabulary or hashing them into columns
+    VECTORIZE,
+    // running the model on the features
+    COMPUTE,
+    // turning the output of the model into a characteristic value
+    DECODE
+}
@@ -0,0 +1,61 @@
+package textclassifier2.metrics;
+
+/**
+ * Collects time spent on every {@link Stage} and n-grams seen while one text or one batch of texts is classified. A
+ * probe is filled by one thread and then recorded into {@link ClassifierMetrics}, it is not thread-safe.
+ *
+ * @author ripreal
+ */
+public final class StageProbe {
+
+    private final long[] nanos = new long[Stage.values().length];
+    private long tokenCount;
+    private long unknownTokenCount;
+
+    // CLIENT SECTION
+
+    public void add(Stage stage, long nanos) {
+        this.nanos[stage.ordinal()] += nanos;
+    }
+
+    /**
+     * @param count        n-grams of a text
+     * @param unknownCount n-grams of them not found in the vocabulary
+     */
+    public void addTokens(int count, int unknownCount) {
+        tokenCount += count;
+        unknownTokenCount += unknownCount;
+    }
+
+    /**
+     * Adds everything collected by the other probe to this one.
+     */
+    public void addAll(StageProbe other) {
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] += other.nanos[i];
+        }
+        tokenCount += other.tokenCount;
+        unknownTokenCount += other.unknownTokenCount;
+    }
+
+    public long get(Stage stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    /**
+     * @return time spent on all stages
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long stageNanos : nanos) {
+            total += stageNanos;
+        }
+        return total;
+    }
+
+    // DO-KNOW-HOW-TO-NAME-IT
+
+    public long getTokenCount() {return this.tokenCount;}
+
+    public long getUnknownTokenCount() {return this.unknownTokenCount;}
+}
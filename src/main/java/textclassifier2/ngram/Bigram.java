@@ -1,5 +1,7 @@
 package textclassifier2.ngram;
 
+import textclassifier2.metrics.StageProbe;
+
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -18,8 +20,20 @@ class Bigram implements NGramStrategy {
 
     @Override
     public Set<String> getNGram(String text) {
-        List<String> unigram = new ArrayList<>(nGramStrategy.getNGram(text));
+        return toBigrams(new ArrayList<>(nGramStrategy.getNGram(text)));
+    }
+
+    @Override
+    public Set<String> getNGram(String text, StageProbe probe) {
+        return toBigrams(new ArrayList<>(nGramStrategy.getNGram(text, probe)));
+    }
 
+    @Override
+    public NGRAM_TYPES getNGramType() {
+        return ngramType;
+    }
+
+    private static Set<String> toBigrams(List<String> unigram) {
         // concatenate words to bigrams
         // example: "How are you doing?" => {"how are", "are you", "you doing"}
 
@@ -31,9 +45,4 @@ class Bigram implements NGramStrategy {
 
         return uniqueValues;
     }
-
-    @Override
-    public NGRAM_TYPES getNGramType() {
-        return ngramType;
-    }
 }
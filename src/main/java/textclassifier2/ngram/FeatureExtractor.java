@@ -0,0 +1,61 @@
+package textclassifier2.ngram;
+
+import textclassifier2.metrics.Stage;
+import textclassifier2.metrics.StageProbe;
+import textclassifier2.model.ClassifiableText;
+
+import java.util.List;
+
+/**
+ * Turns a text into the columns of a binary feature vector it activates. Classifier units are built on top of an
+ * extractor instead of tokenizing texts themselves, so units using the same extractor share it and a text is
+ * tokenized once for all of them.
+ * <p>
+ * Implementations are immutable and may be used from several threads at once.
+ *
+ * @author ripreal
+ */
+public interface FeatureExtractor {
+
+    /**
+     * @return sorted columns of the features found in the text, each in range [0, {@link #getDimension()})
+     */
+    int[] extract(String text);
+
+    /**
+     * Same as {@link #extract(String)}, adding time spent on tokenizing, stemming and vectorizing the text and the
+     * n-grams seen to the probe. Extractors not telling the stages apart add all the time to vectorizing.
+     */
+    default int[] extract(String text, StageProbe probe) {
+        long start = System.nanoTime();
+        int[] features = extract(text);
+        probe.add(Stage.VECTORIZE, System.nanoTime() - start);
+        return features;
+    }
+
+    /**
+     * @return features of every text in the same order
+     */
+    default int[][] extract(List<ClassifiableText> classifiableTexts) {
+        int[][] features = new int[classifiableTexts.size()][];
+        int i = 0;
+        for (ClassifiableText classifiableText : classifiableTexts) {
+            features[i++] = extract(classifiableText.getText());
+        }
+        return features;
+    }
+
+    /**
+     * Extracts features of texts tokenized beforehand with the strategy of this extractor.
+     *
+     * @return features of every text of the corpus in the same order
+     */
+    int[][] extract(TokenizedCorpus corpus);
+
+    /**
+     * @return size of the feature vector
+     */
+    int getDimension();
+
+    NGramStrategy getNGramStrategy();
+}
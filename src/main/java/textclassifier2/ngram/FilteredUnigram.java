@@ -1,11 +1,16 @@
 package textclassifier2.ngram;
 
-import java.util.Arrays;
+import textclassifier2.metrics.Stage;
+import textclassifier2.metrics.StageProbe;
+
 import java.util.LinkedHashSet;
 import java.util.Set;
 
 class FilteredUnigram implements NGramStrategy {
 
+    // digits and punctuation marks are separators as well
+    private static final TokenScanner SCANNER = new TokenScanner(true);
+
     private final NGRAM_TYPES ngramType;
 
     FilteredUnigram(NGRAM_TYPES ngramType) {
@@ -14,16 +19,32 @@ class FilteredUnigram implements NGramStrategy {
 
     @Override
     public Set<String> getNGram(String text) {
-        // get all significant words
-        String[] words = clean(text).split("[ \n\t\r$+<>№=]");
+        Set<String> uniqueValues = new LinkedHashSet<>();
 
-        // remove endings of words
-        for (int i = 0; i < words.length; i++) {
-            words[i] = PorterStemmer.doStem(words[i]);
-        }
+        // get all significant words and remove their endings
+        SCANNER.scan(text, (buffer, offset, length) -> {
+            String word = PorterStemmer.doStem(new String(buffer, offset, length));
+            if (!word.isEmpty()) {
+                uniqueValues.add(word);
+            }
+        });
 
-        Set<String> uniqueValues = new LinkedHashSet<>(Arrays.asList(words));
-        uniqueValues.removeIf(s -> s.equals(""));
+        return uniqueValues;
+    }
+
+    @Override
+    public Set<String> getNGram(String text, StageProbe probe) {
+        Set<String> uniqueValues = new LinkedHashSet<>();
+
+        SCANNER.scan(text, (buffer, offset, length) -> {
+            String token = new String(buffer, offset, length);
+            long start = System.nanoTime();
+            String word = PorterStemmer.doStem(token);
+            probe.add(Stage.STEM, System.nanoTime() - start);
+            if (!word.isEmpty()) {
+                uniqueValues.add(word);
+            }
+        });
 
         return uniqueValues;
     }
@@ -32,14 +53,4 @@ class FilteredUnigram implements NGramStrategy {
     public NGRAM_TYPES getNGramType() {
         return ngramType;
     }
-
-    private String clean(String text) {
-        // remove all digits and punctuation marks
-        if (text != null) {
-            return text.toLowerCase().replaceAll("[\\pP\\d]", " ");
-        } else {
-            return "";
-        }
-    }
-
 }
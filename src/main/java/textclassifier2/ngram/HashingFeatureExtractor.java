@@ -0,0 +1,134 @@
+package textclassifier2.ngram;
+
+import textclassifier2.metrics.Stage;
+import textclassifier2.metrics.StageProbe;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Maps n-grams of the text straight to a fixed number of buckets by their hash, so no vocabulary has to be built or
+ * kept. The feature vector is as wide as the number of buckets however large the corpus grows, n-grams falling into
+ * the same bucket share its column.
+ * <p>
+ * Buckets depend on {@link String#hashCode()} only, so they are the same in every JVM and a trained unit keeps
+ * working with a new extractor of the same strategy and number of buckets.
+ * <p>
+ * Example: buckets = 8; text = "how are you"; features = buckets of "how", "are" and "you", e.g. {1, 4, 6}
+ *
+ * @author ripreal
+ */
+public final class HashingFeatureExtractor implements FeatureExtractor {
+
+    public static final int DEFAULT_BUCKETS = 1 << 12;
+
+    private final NGramStrategy nGramStrategy;
+    private final int buckets;
+
+    public HashingFeatureExtractor(NGramStrategy nGramStrategy) {
+        this(nGramStrategy, DEFAULT_BUCKETS);
+    }
+
+    public HashingFeatureExtractor(NGramStrategy nGramStrategy, int buckets) {
+        if (nGramStrategy == null)
+            throw new IllegalArgumentException();
+        if (buckets < 1)
+            throw new IllegalArgumentException("buckets should be positive");
+
+        this.nGramStrategy = nGramStrategy;
+        this.buckets = buckets;
+    }
+
+    @Override
+    public int[] extract(String text) {
+        return toColumns(nGramStrategy.getNGram(text));
+    }
+
+    /**
+     * Every n-gram has a bucket, so none of them is counted as out of vocabulary.
+     */
+    @Override
+    public int[] extract(String text, StageProbe probe) {
+        long stemmed = probe.get(Stage.STEM);
+        long start = System.nanoTime();
+        Set<String> uniqueValues = nGramStrategy.getNGram(text, probe);
+        long tokenized = System.nanoTime();
+        int[] columns = toColumns(uniqueValues);
+        long vectorized = System.nanoTime();
+
+        // stemming is timed inside of tokenizing
+        probe.add(Stage.TOKENIZE, tokenized - start - (probe.get(Stage.STEM) - stemmed));
+        probe.add(Stage.VECTORIZE, vectorized - tokenized);
+        probe.addTokens(uniqueValues.size(), 0);
+        return columns;
+    }
+
+    @Override
+    public int[][] extract(TokenizedCorpus corpus) {
+        if (corpus.getNGramStrategy().getNGramType() != nGramStrategy.getNGramType())
+            throw new IllegalArgumentException("corpus is tokenized with another n-gram strategy");
+
+        // every distinct n-gram of the corpus is hashed once
+        int[] bucketOfToken = new int[corpus.getTokenCount()];
+        for (int id = 0; id < bucketOfToken.length; id++) {
+            bucketOfToken[id] = bucketOf(corpus.getToken(id));
+        }
+
+        int[][] features = new int[corpus.size()][];
+        for (int i = 0; i < features.length; i++) {
+            int[] tokens = corpus.getTokens(i);
+            int[] columns = new int[tokens.length];
+            for (int k = 0; k < tokens.length; k++) {
+                columns[k] = bucketOfToken[tokens[k]];
+            }
+            features[i] = distinctSorted(columns, columns.length);
+        }
+        return features;
+    }
+
+    @Override
+    public int getDimension() {
+        return buckets;
+    }
+
+    @Override
+    public NGramStrategy getNGramStrategy() {
+        return nGramStrategy;
+    }
+
+    // PRIVATE SECTION
+
+    private int[] toColumns(Set<String> uniqueValues) {
+        int[] columns = new int[uniqueValues.size()];
+        int count = 0;
+        for (String nGram : uniqueValues) {
+            columns[count++] = bucketOf(nGram);
+        }
+
+        return distinctSorted(columns, count);
+    }
+
+    private int bucketOf(String nGram) {
+        // murmur3 finalizer, String.hashCode alone puts similar words into neighbouring buckets
+        int h = nGram.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % buckets;
+    }
+
+    // several n-grams of a text may share a bucket
+    private static int[] distinctSorted(int[] columns, int count) {
+        Arrays.sort(columns, 0, count);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || columns[distinct - 1] != columns[i]) {
+                columns[distinct++] = columns[i];
+            }
+        }
+        return distinct == columns.length ? columns : Arrays.copyOf(columns, distinct);
+    }
+}
@@ -1,5 +1,7 @@
 package textclassifier2.ngram;
 
+import textclassifier2.metrics.StageProbe;
+
 import java.util.Set;
 
 public interface NGramStrategy {
@@ -23,6 +25,14 @@ public interface NGramStrategy {
 
     Set<String> getNGram(String text);
 
+    /**
+     * Same as {@link #getNGram(String)}, adding time spent on stemming to the probe. Strategies not stemming words add
+     * nothing.
+     */
+    default Set<String> getNGram(String text, StageProbe probe) {
+        return getNGram(text);
+    }
+
     NGRAM_TYPES getNGramType();
 
 }
\ No newline at end of file
@@ -1,69 +1,234 @@
 package textclassifier2.ngram;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Porter stemmer for Russian. Endings are looked up in suffix tries walked from the end of the word, so a word is
+ * stemmed in a few passes over its characters. Among endings of a group the longest one found in the word is removed,
+ * endings marked as following "а" or "я" are removed only if the letter stays in RV before them.
+ * <p>
+ * Stems are cached: vocabulary of texts is Zipfian, so most words repeat. The cache stops taking new words once it is
+ * full, which keeps the most frequent words, as they are met first, and bounds the memory taken.
+ */
 class PorterStemmer {
-    private static final Pattern PERFECTIVEGROUND = Pattern.compile("((ив|ивши|ившись|ыв|ывши|ывшись)|((?<=[ая])(в|вши|вшись)))$");
-    private static final Pattern REFLEXIVE = Pattern.compile("(с[яь])$");
-    private static final Pattern ADJECTIVE = Pattern.compile("(ее|ие|ые|ое|ими|ыми|ей|ий|ый|ой|ем|им|ым|ом|его|ого|ему|ому|их|ых|ую|юю|ая|яя|ою|ею)$");
-    private static final Pattern PARTICIPLE = Pattern.compile("((ивш|ывш|ующ)|((?<=[ая])(ем|нн|вш|ющ|щ)))$");
-    private static final Pattern VERB = Pattern.compile("((ила|ыла|ена|ейте|уйте|ите|или|ыли|ей|уй|ил|ыл|им|ым|ен|ило|ыло|ено|ят|ует|уют|ит|ыт|ены|ить|ыть|ишь|ую|ю)|((?<=[ая])(ла|на|ете|йте|ли|й|л|ем|н|ло|но|ет|ют|ны|ть|ешь|нно)))$");
-    private static final Pattern NOUN = Pattern.compile("(а|ев|ов|ие|ье|е|иями|ями|ами|еи|ии|и|ией|ей|ой|ий|й|иям|ям|ием|ем|ам|ом|о|у|ах|иях|ях|ы|ь|ию|ью|ю|ия|ья|я)$");
-    private static final Pattern RVRE = Pattern.compile("^(.*?[аеиоуыэюя])(.*)$");
-    private static final Pattern DERIVATIONAL = Pattern.compile(".*[^аеиоуыэюя]+[аеиоуыэюя].*ость?$");
-    private static final Pattern DER = Pattern.compile("ость?$");
-    private static final Pattern SUPERLATIVE = Pattern.compile("(ейше|ейш)$");
-    private static final Pattern I = Pattern.compile("и$");
-    private static final Pattern P = Pattern.compile("ь$");
-    private static final Pattern NN = Pattern.compile("нн$");
+    private static final SuffixTrie PERFECTIVEGROUND = new SuffixTrie(
+            new String[]{"ив", "ивши", "ившись", "ыв", "ывши", "ывшись"},
+            new String[]{"в", "вши", "вшись"});
+    private static final SuffixTrie REFLEXIVE = new SuffixTrie(
+            new String[]{"ся", "сь"},
+            new String[0]);
+    private static final SuffixTrie ADJECTIVE = new SuffixTrie(
+            new String[]{"ее", "ие", "ые", "ое", "ими", "ыми", "ей", "ий", "ый", "ой", "ем", "им", "ым", "ом", "его",
+                    "ого", "ему", "ому", "их", "ых", "ую", "юю", "ая", "яя", "ою", "ею"},
+            new String[0]);
+    private static final SuffixTrie PARTICIPLE = new SuffixTrie(
+            new String[]{"ивш", "ывш", "ующ"},
+            new String[]{"ем", "нн", "вш", "ющ", "щ"});
+    private static final SuffixTrie VERB = new SuffixTrie(
+            new String[]{"ила", "ыла", "ена", "ейте", "уйте", "ите", "или", "ыли", "ей", "уй", "ил", "ыл", "им", "ым",
+                    "ен", "ило", "ыло", "ено", "ят", "ует", "уют", "ит", "ыт", "ены", "ить", "ыть", "ишь", "ую", "ю"},
+            new String[]{"ла", "на", "ете", "йте", "ли", "й", "л", "ем", "н", "ло", "но", "ет", "ют", "ны", "ть", "ешь",
+                    "нно"});
+    private static final SuffixTrie NOUN = new SuffixTrie(
+            new String[]{"а", "ев", "ов", "ие", "ье", "е", "иями", "ями", "ами", "еи", "ии", "и", "ией", "ей", "ой", "ий",
+                    "й", "иям", "ям", "ием", "ем", "ам", "ом", "о", "у", "ах", "иях", "ях", "ы", "ь", "ию", "ью", "ю",
+                    "ия", "ья", "я"},
+            new String[0]);
+    private static final SuffixTrie SUPERLATIVE = new SuffixTrie(
+            new String[]{"ейше", "ейш"},
+            new String[0]);
+    private static final SuffixTrie DERIVATIONAL = new SuffixTrie(
+            new String[]{"ост", "ость"},
+            new String[0]);
+
+    // a few megabytes at most
+    private static final int CACHE_CAPACITY = 100_000;
+    private static final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
 
     public static String doStem(String word) {
-        word = word.toLowerCase();
-        word = word.replace("ё", "e");
+        String stem = cache.get(word);
+        if (stem == null) {
+            stem = stem(word);
+            if (cache.size() < CACHE_CAPACITY) {
+                cache.putIfAbsent(word, stem);
+            }
+        }
+        return stem;
+    }
 
-        Matcher m = RVRE.matcher(word);
+    // PRIVATE SECTION
 
-        if (m.matches()) {
-            String pre = m.group(1);
-            String rv = m.group(2);
-            String temp = PERFECTIVEGROUND.matcher(rv).replaceFirst("");
+    private static String stem(String word) {
+        char[] w = word.toLowerCase().toCharArray();
+        boolean terminated = false;
+        int rv = -1;
 
-            if (temp.equals(rv)) {
-                rv = REFLEXIVE.matcher(rv).replaceFirst("");
-                temp = ADJECTIVE.matcher(rv).replaceFirst("");
+        for (int i = 0; i < w.length; i++) {
+            char c = w[i];
+            if (c == 'ё') {
+                w[i] = 'e';
+            } else if (rv < 0 && isVowel(c)) {
+                // RV is the part after the first vowel
+                rv = i + 1;
+            } else if (isLineTerminator(c)) {
+                terminated = true;
+            }
+        }
 
-                if (!temp.equals(rv)) {
-                    rv = temp;
-                    rv = PARTICIPLE.matcher(rv).replaceFirst("");
+        // words of several lines or without vowels are left as they are
+        if (rv < 0 || terminated) {
+            return new String(w);
+        }
+
+        int end = w.length;
+        int length = PERFECTIVEGROUND.match(w, rv, end);
+
+        if (length == 0) {
+            end -= REFLEXIVE.match(w, rv, end);
+            length = ADJECTIVE.match(w, rv, end);
+
+            if (length != 0) {
+                end -= length;
+                end -= PARTICIPLE.match(w, rv, end);
+            } else {
+                length = VERB.match(w, rv, end);
+                if (length == 0) {
+                    end -= NOUN.match(w, rv, end);
                 } else {
-                    temp = VERB.matcher(rv).replaceFirst("");
-                    if (temp.equals(rv)) {
-                        rv = NOUN.matcher(rv).replaceFirst("");
-                    } else {
-                        rv = temp;
-                    }
+                    end -= length;
                 }
-            } else {
-                rv = temp;
             }
+        } else {
+            end -= length;
+        }
 
-            rv = I.matcher(rv).replaceFirst("");
+        if (end > rv && w[end - 1] == 'и') {
+            end--;
+        }
+
+        length = DERIVATIONAL.match(w, rv, end);
+        if (length != 0 && hasVowelAfterConsonant(w, rv, end - length)) {
+            end -= length;
+        }
 
-            if (DERIVATIONAL.matcher(rv).matches()) {
-                rv = DER.matcher(rv).replaceFirst("");
+        if (end > rv && w[end - 1] == 'ь') {
+            end--;
+        } else {
+            end -= SUPERLATIVE.match(w, rv, end);
+            if (end - rv >= 2 && w[end - 1] == 'н' && w[end - 2] == 'н') {
+                end--;
             }
+        }
 
-            temp = P.matcher(rv).replaceFirst("");
-            if (temp.equals(rv)) {
-                rv = SUPERLATIVE.matcher(rv).replaceFirst("");
-                rv = NN.matcher(rv).replaceFirst("н");
-            } else {
-                rv = temp;
+        return new String(w, 0, end);
+    }
+
+    private static boolean hasVowelAfterConsonant(char[] w, int from, int to) {
+        for (int i = from; i + 1 < to; i++) {
+            if (!isVowel(w[i]) && isVowel(w[i + 1])) {
+                return true;
             }
-            word = pre + rv;
         }
+        return false;
+    }
+
+    private static boolean isVowel(char c) {
+        switch (c) {
+            case 'а':
+            case 'е':
+            case 'и':
+            case 'о':
+            case 'у':
+            case 'ы':
+            case 'э':
+            case 'ю':
+            case 'я':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
 
-        return word;
+    /**
+     * Endings of one group stored reversed, so the trie is walked from the last letter of the word.
+     */
+    private static final class SuffixTrie {
+
+        private final Node root = new Node();
+
+        /**
+         * @param endings         endings removed anywhere in RV
+         * @param endingsAfterAYa endings removed only if preceded by "а" or "я" in RV
+         */
+        SuffixTrie(String[] endings, String[] endingsAfterAYa) {
+            for (String ending : endings) {
+                add(ending).ending = true;
+            }
+            for (String ending : endingsAfterAYa) {
+                add(ending).endingAfterAYa = true;
+            }
+        }
+
+        /**
+         * @return length of the longest ending of w[from, to), 0 if there is none
+         */
+        int match(char[] w, int from, int to) {
+            int longest = 0;
+            Node node = root;
+
+            for (int i = to - 1; i >= from; i--) {
+                node = node.child(w[i]);
+                if (node == null) {
+                    break;
+                }
+                if (node.ending || node.endingAfterAYa && i > from && (w[i - 1] == 'а' || w[i - 1] == 'я')) {
+                    longest = to - i;
+                }
+            }
+
+            return longest;
+        }
+
+        private Node add(String ending) {
+            Node node = root;
+            for (int i = ending.length() - 1; i >= 0; i--) {
+                node = node.addChild(ending.charAt(i));
+            }
+            return node;
+        }
+    }
+
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean ending;
+        private boolean endingAfterAYa;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
     }
-}
\ No newline at end of file
+}
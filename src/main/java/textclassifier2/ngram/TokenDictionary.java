@@ -0,0 +1,81 @@
+package textclassifier2.ngram;
+
+import java.util.Arrays;
+
+/**
+ * Growing token to id table. Ids are given in order of first appearance starting with 0. Same open-addressing layout
+ * as {@link VocabularyIndex}, but mutable and not thread safe.
+ */
+final class TokenDictionary {
+
+    private String[] keys = new String[16];
+    private int[] hashes = new int[16];
+    private int[] ids = new int[16];
+    private String[] tokens = new String[8];
+    private int size;
+
+    /**
+     * @return id of the token, a new one if the token is met for the first time
+     */
+    int add(String token) {
+        int hash = spread(token.hashCode());
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && key.equals(token)) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = size++;
+        keys[slot] = token;
+        hashes[slot] = hash;
+        ids[slot] = id;
+        if (id == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+        tokens[id] = token;
+
+        if (size * 2 > keys.length) {
+            grow();
+        }
+        return id;
+    }
+
+    String get(int id) {
+        return tokens[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldIds = ids;
+
+        keys = new String[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        ids = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
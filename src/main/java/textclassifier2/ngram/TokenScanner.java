@@ -0,0 +1,134 @@
+package textclassifier2.ngram;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Splits a text into lower-cased words in a single pass over its characters: lower-casing, classification of
+ * separators and splitting are done at once, and words are passed to a {@link TokenSink} as ranges of one scratch
+ * buffer, so no intermediate copies of the text are made.
+ * <p>
+ * Gives the same words as {@code text.toLowerCase().split("[ \\pP\n\t\r$+<>№=]")} without empty strings, and with
+ * ASCII digits as separators as well if the scanner filters digits. Instances are immutable and thread safe.
+ *
+ * @author ripreal
+ */
+final class TokenScanner {
+
+    /**
+     * Receives words found by the scanner. The buffer is reused, copy the range if the word has to be kept.
+     */
+    @FunctionalInterface
+    interface TokenSink {
+        void accept(char[] buffer, int offset, int length);
+    }
+
+    private final boolean filterDigits;
+
+    /**
+     * @param filterDigits treat ASCII digits as separators
+     */
+    TokenScanner(boolean filterDigits) {
+        this.filterDigits = filterDigits;
+    }
+
+    void scan(String text, TokenSink sink) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        // String.toLowerCase lower-cases a few characters depending on context or locale, per character lower-casing
+        // is exact for the rest
+        boolean lowerCased = needsContextLowerCase(text);
+        if (lowerCased) {
+            text = text.toLowerCase();
+        }
+
+        int length = text.length();
+        char[] buffer = new char[length];
+        int size = 0;
+        int start = 0;
+
+        for (int i = 0; i < length; ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (!lowerCased) {
+                codePoint = Character.toLowerCase(codePoint);
+            }
+
+            if (isSeparator(codePoint)) {
+                if (size > start) {
+                    sink.accept(buffer, start, size - start);
+                }
+                start = size;
+                continue;
+            }
+
+            int count = Character.charCount(codePoint);
+            if (size + count > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2 + count);
+            }
+            size += Character.toChars(codePoint, buffer, size);
+        }
+
+        if (size > start) {
+            sink.accept(buffer, start, size - start);
+        }
+    }
+
+    // PRIVATE SECTION
+
+    private boolean isSeparator(int codePoint) {
+        switch (codePoint) {
+            case ' ':
+            case '\n':
+            case '\t':
+            case '\r':
+            case '$':
+            case '+':
+            case '<':
+            case '>':
+            case '№':
+            case '=':
+                return true;
+            default:
+                if (filterDigits && codePoint >= '0' && codePoint <= '9') {
+                    return true;
+                }
+                return isPunctuation(codePoint);
+        }
+    }
+
+    // same as \pP of java.util.regex
+    private static boolean isPunctuation(int codePoint) {
+        switch (Character.getType(codePoint)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // capital I with dot and capital sigma are lower-cased depending on context, and Turkish, Azerbaijani and
+    // Lithuanian locales have their own rules
+    private static boolean needsContextLowerCase(String text) {
+        String language = Locale.getDefault().getLanguage();
+        if (language.equals("tr") || language.equals("az") || language.equals("lt")) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\u0130' || c == '\u03A3') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
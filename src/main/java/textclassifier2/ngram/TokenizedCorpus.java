@@ -0,0 +1,183 @@
+package textclassifier2.ngram;
+
+import textclassifier2.model.ClassifiableText;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Texts tokenized once with one {@link NGramStrategy}: every text is kept as a compact array of token ids, and the ids
+ * refer to a dictionary of all n-grams of the corpus. Vocabulary building and vectorization of the same texts work on
+ * the ids and never run the strategy again.
+ *
+ * @author ripreal
+ */
+public final class TokenizedCorpus {
+
+    // texts tokenized by one task at least
+    private static final int MIN_SHARD_SIZE = 1024;
+
+    private final NGramStrategy nGramStrategy;
+    private final TokenDictionary dictionary;
+    private final int[][] documents;
+
+    private TokenizedCorpus(NGramStrategy nGramStrategy, TokenDictionary dictionary, int[][] documents) {
+        this.nGramStrategy = nGramStrategy;
+        this.dictionary = dictionary;
+        this.documents = documents;
+    }
+
+    public static TokenizedCorpus tokenize(List<ClassifiableText> classifiableTexts, NGramStrategy nGramStrategy) {
+        return tokenize(classifiableTexts, nGramStrategy, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Tokenizes texts in parallel: the texts are split into shards tokenized with dictionaries of their own, and the
+     * dictionaries are merged in shard order, so ids are the same as if the texts were tokenized one by one.
+     *
+     * @param threadCount number of threads to tokenize with, the strategy has to be thread safe if it is more than 1
+     */
+    public static TokenizedCorpus tokenize(List<ClassifiableText> classifiableTexts, NGramStrategy nGramStrategy,
+                                           int threadCount) {
+        if (nGramStrategy == null)
+            throw new IllegalArgumentException();
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount should be positive");
+
+        int size = classifiableTexts.size();
+        // a few shards per thread to even out the load
+        int shardCount = Math.min(threadCount * 4, (size + MIN_SHARD_SIZE - 1) / MIN_SHARD_SIZE);
+        if (threadCount == 1 || shardCount <= 1) {
+            Shard shard = tokenizeShard(classifiableTexts, nGramStrategy);
+            return new TokenizedCorpus(nGramStrategy, shard.dictionary, shard.documents);
+        }
+
+        List<ForkJoinTask<Shard>> tasks = new ArrayList<>(shardCount);
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                List<ClassifiableText> shardTexts = classifiableTexts.subList(
+                        (int) ((long) size * i / shardCount), (int) ((long) size * (i + 1) / shardCount));
+                tasks.add(pool.submit(() -> tokenizeShard(shardTexts, nGramStrategy)));
+            }
+
+            // the first shard keeps its ids, ids of the others are remapped to the merged dictionary
+            Shard first = tasks.get(0).join();
+            TokenDictionary dictionary = first.dictionary;
+            int[][] documents = new int[size][];
+            System.arraycopy(first.documents, 0, documents, 0, first.documents.length);
+            int offset = first.documents.length;
+
+            for (int i = 1; i < shardCount; i++) {
+                Shard shard = tasks.get(i).join();
+                int[] remap = new int[shard.dictionary.size()];
+                for (int id = 0; id < remap.length; id++) {
+                    remap[id] = dictionary.add(shard.dictionary.get(id));
+                }
+                for (int[] document : shard.documents) {
+                    for (int k = 0; k < document.length; k++) {
+                        document[k] = remap[document[k]];
+                    }
+                    documents[offset++] = document;
+                }
+            }
+
+            return new TokenizedCorpus(nGramStrategy, dictionary, documents);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return corpus of the given texts only, sharing the dictionary of this corpus, so n-grams occurring in other
+     * texts only have no documents
+     */
+    // example:
+    // documents = {{0, 1}, {2}, {1, 3}}; texts = {2, 0}
+    // documents of the subset = {{1, 3}, {0, 1}}
+    public TokenizedCorpus subset(int[] texts) {
+        int[][] subsetDocuments = new int[texts.length][];
+        for (int i = 0; i < texts.length; i++) {
+            subsetDocuments[i] = documents[texts[i]];
+        }
+        return new TokenizedCorpus(nGramStrategy, dictionary, subsetDocuments);
+    }
+
+    public NGramStrategy getNGramStrategy() {
+        return nGramStrategy;
+    }
+
+    /**
+     * @return number of texts
+     */
+    public int size() {
+        return documents.length;
+    }
+
+    /**
+     * @return ids of the unique n-grams of the text in order of appearance. Do not modify the array.
+     */
+    public int[] getTokens(int text) {
+        return documents[text];
+    }
+
+    /**
+     * @return number of distinct n-grams in the corpus
+     */
+    public int getTokenCount() {
+        return dictionary.size();
+    }
+
+    public String getToken(int id) {
+        return dictionary.get(id);
+    }
+
+    /**
+     * @return number of texts every n-gram occurs in, indexed by token id
+     */
+    public int[] getDocumentFrequencies() {
+        int[] frequencies = new int[dictionary.size()];
+        for (int[] document : documents) {
+            for (int id : document) {
+                frequencies[id]++;
+            }
+        }
+        return frequencies;
+    }
+
+    // PRIVATE SECTION
+
+    private static Shard tokenizeShard(List<ClassifiableText> classifiableTexts, NGramStrategy nGramStrategy) {
+        TokenDictionary dictionary = new TokenDictionary();
+        int[][] documents = new int[classifiableTexts.size()][];
+
+        int i = 0;
+        for (ClassifiableText classifiableText : classifiableTexts) {
+            // n-grams are unique within a text, so are the ids
+            int[] document = new int[0];
+            int count = 0;
+            for (String nGram : nGramStrategy.getNGram(classifiableText.getText())) {
+                if (count == document.length) {
+                    document = Arrays.copyOf(document, Math.max(8, count * 2));
+                }
+                document[count++] = dictionary.add(nGram);
+            }
+            documents[i++] = Arrays.copyOf(document, count);
+        }
+
+        return new Shard(dictionary, documents);
+    }
+
+    private static final class Shard {
+        private final TokenDictionary dictionary;
+        private final int[][] documents;
+
+        Shard(TokenDictionary dictionary, int[][] documents) {
+            this.dictionary = dictionary;
+            this.documents = documents;
+        }
+    }
+}
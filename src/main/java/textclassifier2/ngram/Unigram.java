@@ -1,11 +1,12 @@
 package textclassifier2.ngram;
 
-import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
 class Unigram implements NGramStrategy {
 
+    private static final TokenScanner SCANNER = new TokenScanner(false);
+
     private final NGRAM_TYPES ngramType;
 
     Unigram(NGRAM_TYPES ngramType) {
@@ -14,15 +15,10 @@ class Unigram implements NGramStrategy {
 
     @Override
     public Set<String> getNGram(String text) {
-        if (text == null) {
-            text = "";
-        }
+        Set<String> uniqueValues = new LinkedHashSet<>();
 
         // get all words and digits
-        String[] words = text.toLowerCase().split("[ \\pP\n\t\r$+<>№=]");
-
-        Set<String> uniqueValues = new LinkedHashSet<>(Arrays.asList(words));
-        uniqueValues.removeIf(s -> s.equals(""));
+        SCANNER.scan(text, (buffer, offset, length) -> uniqueValues.add(new String(buffer, offset, length)));
 
         return uniqueValues;
     }
@@ -7,51 +7,142 @@ import textclassifier2.model.ClassifiableText;
 import textclassifier2.model.VocabularyWord;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Builds vocabulary of the n-grams met in texts. Texts are tokenized in parallel (see {@link TokenizedCorpus}), and
+ * n-grams are kept by their document frequency, the number of texts they occur in:
+ * <ul>
+ * <li>n-grams rarer than the minimal document frequency are dropped as noise, 4 texts by default;
+ * <li>n-grams occurring in a larger share of texts than the maximal document frequency are dropped as carrying no
+ * information, none by default;
+ * <li>if more than the maximal number of words are left, only the most frequent ones are kept, so the width of the
+ * input layer is capped. Not limited by default.
+ * </ul>
+ */
 public class VocabularyBuilder {
     private final NGramStrategy nGramStrategy;
+    private int minDocumentFrequency = 4;
+    private double maxDocumentFrequency = 1;
+    private int maxSize = Integer.MAX_VALUE;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
 
     public VocabularyBuilder(NGramStrategy nGramStrategy) {
         this.nGramStrategy = nGramStrategy;
     }
 
+    /**
+     * @param minDocumentFrequency minimal number of texts a word has to occur in
+     */
+    public VocabularyBuilder withMinDocumentFrequency(int minDocumentFrequency) {
+        if (minDocumentFrequency < 1)
+            throw new IllegalArgumentException("minDocumentFrequency should be positive");
+        this.minDocumentFrequency = minDocumentFrequency;
+        return this;
+    }
+
+    /**
+     * @param maxDocumentFrequency maximal share of texts a word may occur in, in range (0, 1]
+     */
+    public VocabularyBuilder withMaxDocumentFrequency(double maxDocumentFrequency) {
+        if (!(maxDocumentFrequency > 0 && maxDocumentFrequency <= 1))
+            throw new IllegalArgumentException("maxDocumentFrequency should be in range (0, 1]");
+        this.maxDocumentFrequency = maxDocumentFrequency;
+        return this;
+    }
+
+    /**
+     * @param maxSize maximal number of words in vocabulary, the most frequent words are kept
+     */
+    public VocabularyBuilder withMaxSize(int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize should be positive");
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * @param threadCount number of threads texts are tokenized with
+     */
+    public VocabularyBuilder withThreadCount(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount should be positive");
+        this.threadCount = threadCount;
+        return this;
+    }
+
     public List<VocabularyWord> getVocabulary(List<ClassifiableText> classifiableTexts, ClassifiableFactory factory) {
 
         if (classifiableTexts.isEmpty())
             throw new IllegalArgumentException();
 
-        Map<String, Integer> uniqueValues = new HashMap<>();
+        return getVocabulary(TokenizedCorpus.tokenize(classifiableTexts, nGramStrategy, threadCount), factory);
+    }
+
+    /**
+     * Builds vocabulary from texts tokenized beforehand, so the same tokenized texts can be reused for vectorization.
+     * Words are ordered by their first appearance in the corpus.
+     */
+    public List<VocabularyWord> getVocabulary(TokenizedCorpus corpus, ClassifiableFactory factory) {
+
+        if (corpus.size() == 0)
+            throw new IllegalArgumentException();
+        if (corpus.getNGramStrategy().getNGramType() != nGramStrategy.getNGramType())
+            throw new IllegalArgumentException("corpus is tokenized with another n-gram strategy");
 
         // count frequency of use each word (converted to n-gram) from all Classifiable Texts
         //
 
-        for (ClassifiableText classifiableText : classifiableTexts) {
-            for (String word : nGramStrategy.getNGram(classifiableText.getText())) {
-                if (uniqueValues.containsKey(word)) {
-                    // increase counter
-                    uniqueValues.put(word, uniqueValues.get(word) + 1);
-                } else {
-                    // add new word
-                    uniqueValues.put(word, 1);
-                }
+        int[] frequencies = corpus.getDocumentFrequencies();
+
+        // select words within document frequency bounds
+        //
+
+        long maxFrequency = (long) Math.floor(maxDocumentFrequency * corpus.size());
+        int[] selected = new int[frequencies.length];
+        int count = 0;
+
+        for (int id = 0; id < frequencies.length; id++) {
+            if (frequencies[id] >= minDocumentFrequency && frequencies[id] <= maxFrequency) {
+                selected[count++] = id;
             }
         }
 
-        // convert uniqueValues to Vocabulary, excluding infrequent
+        if (count > maxSize) {
+            selected = mostFrequent(selected, count, frequencies);
+            count = maxSize;
+        }
+
+        // convert selected words to Vocabulary
         //
 
-        List<VocabularyWord> vocabulary = new ArrayList<>();
+        List<VocabularyWord> vocabulary = new ArrayList<>(count);
 
-        for (Map.Entry<String, Integer> entry : uniqueValues.entrySet()) {
-            if (entry.getValue() > 3) {
-                vocabulary.add(factory.newVocabularyWord(entry.getKey()));
-            }
+        for (int i = 0; i < count; i++) {
+            vocabulary.add(factory.newVocabularyWord(corpus.getToken(selected[i])));
         }
 
         // todo: throw exception if vocabulary is empty
         return vocabulary;
     }
+
+    // PRIVATE SECTION
+
+    // ids of maxSize most frequent words in order of first appearance, the earlier word wins a tie
+    private int[] mostFrequent(int[] ids, int count, int[] frequencies) {
+        // frequency in high bits, inverted id in low bits: descending order puts frequent and early words first
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) frequencies[ids[i]] << 32) | (Integer.MAX_VALUE - ids[i]);
+        }
+        Arrays.sort(keys);
+
+        int[] result = new int[maxSize];
+        for (int i = 0; i < maxSize; i++) {
+            result[i] = Integer.MAX_VALUE - (int) keys[count - 1 - i];
+        }
+        Arrays.sort(result);
+        return result;
+    }
 }
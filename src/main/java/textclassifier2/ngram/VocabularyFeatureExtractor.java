@@ -0,0 +1,158 @@
+package textclassifier2.ngram;
+
+import textclassifier2.metrics.Stage;
+import textclassifier2.metrics.StageProbe;
+import textclassifier2.model.VocabularyWord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts n-grams of the text found in a vocabulary. Column of an n-gram is the position of its word in the
+ * vocabulary.
+ * <p>
+ * Example: vocabulary = {"hi", "how", "are", "you"}; text = "how are you"; features = {1, 2, 3}
+ *
+ * @author ripreal
+ */
+public final class VocabularyFeatureExtractor implements FeatureExtractor {
+
+    private final NGramStrategy nGramStrategy;
+    private final List<VocabularyWord> vocabulary;
+    private final VocabularyIndex vocabularyIndex;
+
+    public VocabularyFeatureExtractor(NGramStrategy nGramStrategy, List<VocabularyWord> vocabulary) {
+        if (nGramStrategy == null || vocabulary == null)
+            throw new IllegalArgumentException();
+
+        this.nGramStrategy = nGramStrategy;
+        this.vocabulary = vocabulary;
+        this.vocabularyIndex = VocabularyIndex.of(vocabulary);
+    }
+
+    @Override
+    public int[] extract(String text) {
+        return toColumns(nGramStrategy.getNGram(text));
+    }
+
+    /**
+     * Tells out-of-vocabulary n-grams from the rest, see {@link StageProbe#addTokens(int, int)}.
+     */
+    @Override
+    public int[] extract(String text, StageProbe probe) {
+        long stemmed = probe.get(Stage.STEM);
+        long start = System.nanoTime();
+        Set<String> uniqueValues = nGramStrategy.getNGram(text, probe);
+        long tokenized = System.nanoTime();
+        int[] columns = toColumns(uniqueValues);
+        long vectorized = System.nanoTime();
+
+        // stemming is timed inside of tokenizing
+        probe.add(Stage.TOKENIZE, tokenized - start - (probe.get(Stage.STEM) - stemmed));
+        probe.add(Stage.VECTORIZE, vectorized - tokenized);
+        probe.addTokens(uniqueValues.size(), uniqueValues.size() - columns.length);
+        return columns;
+    }
+
+    /**
+     * Extracts features of already tokenized texts. Every distinct n-gram of the corpus is looked up in the vocabulary
+     * once, texts are then only remapped from token ids to columns.
+     *
+     * @return features of every text of the corpus in the same order
+     */
+    @Override
+    public int[][] extract(TokenizedCorpus corpus) {
+        if (corpus.getNGramStrategy().getNGramType() != nGramStrategy.getNGramType())
+            throw new IllegalArgumentException("corpus is tokenized with another n-gram strategy");
+
+        int[] columnOfToken = new int[corpus.getTokenCount()];
+        for (int id = 0; id < columnOfToken.length; id++) {
+            columnOfToken[id] = vocabularyIndex.indexOf(corpus.getToken(id));
+        }
+
+        int[][] features = new int[corpus.size()][];
+        for (int i = 0; i < features.length; i++) {
+            int[] tokens = corpus.getTokens(i);
+            int[] columns = new int[tokens.length];
+            int count = 0;
+            for (int id : tokens) {
+                if (columnOfToken[id] != VocabularyIndex.NOT_FOUND) {
+                    columns[count++] = columnOfToken[id];
+                }
+            }
+            features[i] = sorted(columns, count);
+        }
+        return features;
+    }
+
+    @Override
+    public int getDimension() {
+        return vocabulary.size();
+    }
+
+    @Override
+    public NGramStrategy getNGramStrategy() {
+        return nGramStrategy;
+    }
+
+    public List<VocabularyWord> getVocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * @return extractor with the words of the vocabulary followed by the words not in it yet, so known words keep
+     * their columns; this extractor if there are no new words
+     */
+    public VocabularyFeatureExtractor extend(List<VocabularyWord> words) {
+        List<VocabularyWord> extended = new ArrayList<>(vocabulary);
+        Set<String> values = new HashSet<>();
+        for (VocabularyWord word : vocabulary) {
+            values.add(word.getValue());
+        }
+        for (VocabularyWord word : words) {
+            if (values.add(word.getValue())) {
+                extended.add(word);
+            }
+        }
+
+        return extended.size() == vocabulary.size() ? this : new VocabularyFeatureExtractor(nGramStrategy, extended);
+    }
+
+    /**
+     * @return column in the vocabulary of the other extractor of every word of this vocabulary, -1 if the word is not
+     * there
+     */
+    // example:
+    // vocabulary = {"hi", "how", "are"}; other vocabulary = {"hi", "are", "you"}
+    // columnMapping = {0, -1, 1}
+    public int[] getColumnMapping(VocabularyFeatureExtractor other) {
+        int[] columnMapping = new int[vocabulary.size()];
+        for (int column = 0; column < columnMapping.length; column++) {
+            columnMapping[column] = other.vocabularyIndex.indexOf(vocabulary.get(column).getValue());
+        }
+        return columnMapping;
+    }
+
+    // collect columns of the words found in vocabulary
+    private int[] toColumns(Set<String> uniqueValues) {
+        int[] columns = new int[uniqueValues.size()];
+        int count = 0;
+        for (String word : uniqueValues) {
+            int column = vocabularyIndex.indexOf(word);
+            if (column != VocabularyIndex.NOT_FOUND) {
+                columns[count++] = column;
+            }
+        }
+
+        return sorted(columns, count);
+    }
+
+    private static int[] sorted(int[] columns, int count) {
+        int[] result = count == columns.length ? columns : Arrays.copyOf(columns, count);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,111 @@
+package textclassifier2.ngram;
+
+import textclassifier2.model.VocabularyWord;
+
+import java.util.List;
+
+/**
+ * Immutable token to column lookup table built once from a vocabulary. Column of a token is the position of its
+ * {@link VocabularyWord} in the vocabulary list, so the index is interchangeable with {@code vocabulary.indexOf(..)}
+ * but answers in O(1).
+ * <p>
+ * Implemented as an open-addressing (linear probing) table over plain arrays: keys, their cached hash codes and
+ * columns are stored side by side, no entry objects are allocated and lookups never box. If the vocabulary contains
+ * the same value twice the first occurrence wins, as with {@link List#indexOf(Object)}.
+ *
+ * @author ripreal
+ */
+public final class VocabularyIndex {
+
+    public static final int NOT_FOUND = -1;
+
+    private final String[] keys;
+    private final int[] hashes;
+    private final int[] columns;
+    private final int mask;
+    private final int size;
+
+    private VocabularyIndex(List<VocabularyWord> vocabulary) {
+        int capacity = tableSizeFor(vocabulary.size());
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.columns = new int[capacity];
+        this.mask = capacity - 1;
+        this.size = vocabulary.size();
+
+        int column = 0;
+        for (VocabularyWord word : vocabulary) {
+            String value = word.getValue();
+            if (value != null) {
+                put(value, column);
+            }
+            column++;
+        }
+    }
+
+    public static VocabularyIndex of(List<VocabularyWord> vocabulary) {
+        if (vocabulary == null)
+            throw new IllegalArgumentException("vocabulary must not be null");
+        return new VocabularyIndex(vocabulary);
+    }
+
+    /**
+     * @return column of the token or {@link #NOT_FOUND} if the token is not part of the vocabulary
+     */
+    public int indexOf(String token) {
+        if (token == null)
+            return NOT_FOUND;
+
+        int hash = spread(token.hashCode());
+        int slot = hash & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && key.equals(token)) {
+                return columns[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    public boolean contains(String token) {
+        return indexOf(token) != NOT_FOUND;
+    }
+
+    /**
+     * @return number of columns, i.e. size of the vocabulary the index was built from
+     */
+    public int size() {
+        return size;
+    }
+
+    // PRIVATE SECTION
+
+    private void put(String key, int column) {
+        int hash = spread(key.hashCode());
+        int slot = hash & mask;
+        String existing;
+        while ((existing = keys[slot]) != null) {
+            if (hashes[slot] == hash && existing.equals(key)) {
+                return; // keep first occurrence
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        hashes[slot] = hash;
+        columns[slot] = column;
+    }
+
+    // keep load factor at or below 0.5 so probe chains stay short
+    private static int tableSizeFor(int expected) {
+        int capacity = 2;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,273 @@
+package textclassifier2.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import textclassifier2.classifier.Classifier;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableFactory;
+import textclassifier2.model.ClassifiableText;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serves a loaded {@link Classifier} over HTTP with the HTTP server of the JDK, so consumers neither embed the library
+ * nor pay for training and loading of models. Endpoints:
+ * <ul>
+ * <li>POST /classify with {"text": "..."} answers {"Результат": "VALID"}, with {"texts": ["...", "..."]} answers
+ * {"results": [{...}, {...}]}, see {@link JsonCodec}</li>
+ * <li>GET /health answers 200 with the state of the request queue while the server runs</li>
+ * </ul>
+ * Concurrent requests are grouped into micro-batches, see {@link MicroBatcher}. Handler threads only parse requests and
+ * write responses, they never wait for classification, so the bounded request queue is what limits the load: a
+ * request not fitting into it is answered 503 with Retry-After at once instead of piling up.
+ *
+ * @author ripreal
+ */
+public final class ClassificationServer {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(ClassificationServer.class);
+    private static final int MAX_BODY_SIZE = 1 << 20;
+    private static final int MAX_TEXTS_PER_REQUEST = 1024;
+    private static final String JSON = "application/json; charset=utf-8";
+    // the HTTP server of the JDK writes headers and body of a response apart, with Nagle's algorithm on the body waits
+    // for the delayed ACK of the client, about 40 ms on every request of a kept alive connection
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final Classifier classifier;
+    private final ClassifiableFactory textFactory;
+    private int port = 8080;
+    private int maxBatchSize = 64;
+    private long maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(2);
+    private int queueCapacity = 1024;
+    private long requestTimeoutNanos = TimeUnit.SECONDS.toNanos(10);
+    private int handlerThreadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private MicroBatcher batcher;
+
+    // CONSTRUCTORS
+
+    /**
+     * @param classifier  ready classifier, for example restored with
+     *                    {@link textclassifier2.classifier.ClassifierBuilder#fromSavedModels(java.io.File, ClassifiableFactory)}
+     * @param textFactory factory to create texts of requests with
+     */
+    public ClassificationServer(Classifier classifier, ClassifiableFactory textFactory) {
+        if (classifier == null || textFactory == null)
+            throw new IllegalArgumentException();
+        this.classifier = classifier;
+        this.textFactory = textFactory;
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * @param port port to listen on, 0 for any free port, see {@link #getPort()}. 8080 by default
+     */
+    public ClassificationServer withPort(int port) {
+        if (port < 0 || port > 65535)
+            throw new IllegalArgumentException("port should be in range [0, 65535]");
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * @param maxBatchSize   most texts classified in one batch, 64 by default
+     * @param maxBatchDelay  longest time a request waits for others to fill a batch, 2 ms by default
+     */
+    public ClassificationServer withBatching(int maxBatchSize, long maxBatchDelay, TimeUnit unit) {
+        if (maxBatchSize < 1 || maxBatchDelay < 0)
+            throw new IllegalArgumentException("maxBatchSize should be positive and maxBatchDelay not negative");
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = unit.toNanos(maxBatchDelay);
+        return this;
+    }
+
+    /**
+     * @param queueCapacity  most requests waiting for classification, others are shed. 1024 by default
+     * @param requestTimeout longest time a request waits in the queue before it is answered 503, 10 s by default
+     */
+    public ClassificationServer withQueue(int queueCapacity, long requestTimeout, TimeUnit unit) {
+        if (queueCapacity < 1 || requestTimeout < 1)
+            throw new IllegalArgumentException("queueCapacity and requestTimeout should be positive");
+        this.queueCapacity = queueCapacity;
+        this.requestTimeoutNanos = unit.toNanos(requestTimeout);
+        return this;
+    }
+
+    /**
+     * @param handlerThreadCount threads parsing requests and writing responses, the number of processors by default
+     */
+    public ClassificationServer withHandlerThreadCount(int handlerThreadCount) {
+        if (handlerThreadCount < 1)
+            throw new IllegalArgumentException("handlerThreadCount should be positive");
+        this.handlerThreadCount = handlerThreadCount;
+        return this;
+    }
+
+    public synchronized ClassificationServer start() throws IOException {
+        if (server != null)
+            throw new IllegalStateException("server is already started");
+
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        batcher = new MicroBatcher(classifier, maxBatchSize, maxBatchDelayNanos, queueCapacity, requestTimeoutNanos);
+        handlers = Executors.newFixedThreadPool(handlerThreadCount);
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(handlers);
+        server.createContext("/classify", this::handleClassify);
+        server.createContext("/health", this::handleHealth);
+        server.start();
+
+        log.info("Classification server listens on port " + getPort() + ", batches of up to " + maxBatchSize
+                + " texts within " + TimeUnit.NANOSECONDS.toMicros(maxBatchDelayNanos) + " us");
+        return this;
+    }
+
+    /**
+     * Stops taking requests, answers the waiting ones and stops the server. The classifier is not shut down.
+     *
+     * @param delay longest time to wait for responses being written
+     */
+    public synchronized void stop(int delay, TimeUnit unit) {
+        if (server == null)
+            return;
+
+        batcher.stop();
+        server.stop((int) Math.max(0, unit.toSeconds(delay)));
+        handlers.shutdown();
+        try {
+            handlers.awaitTermination(delay, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server = null;
+        log.info("Classification server stopped");
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public synchronized int getPort() {
+        if (server == null)
+            throw new IllegalStateException("server is not started");
+        return server.getAddress().getPort();
+    }
+
+    // PRIVATE SECTION
+
+    private void handleClassify(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            respond(exchange, 405, JsonCodec.writeError("use POST"));
+            return;
+        }
+
+        JsonCodec.Request request;
+        try {
+            String body = readBody(exchange);
+            if (body == null) {
+                respond(exchange, 413, JsonCodec.writeError("request is longer than " + MAX_BODY_SIZE + " bytes"));
+                return;
+            }
+            request = JsonCodec.readRequest(body);
+            if (request.getTexts().size() > MAX_TEXTS_PER_REQUEST) {
+                respond(exchange, 413, JsonCodec.writeError("request has more than " + MAX_TEXTS_PER_REQUEST + " texts"));
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, JsonCodec.writeError(e.getMessage()));
+            return;
+        }
+
+        List<ClassifiableText> texts = new ArrayList<>(request.getTexts().size());
+        for (String text : request.getTexts()) {
+            texts.add(textFactory.newClassifiableText(text, Collections.emptySet()));
+        }
+        if (texts.isEmpty()) {
+            respond(exchange, 200, JsonCodec.writeResults(Collections.emptyList()));
+            return;
+        }
+
+        try {
+            // the response is written by a handler thread once the batch is classified
+            batcher.submit(texts).whenCompleteAsync((results, error) ->
+                    respondClassified(exchange, request.isBatch(), results, error), handlers);
+        } catch (RejectedExecutionException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, JsonCodec.writeError("server is overloaded"));
+        }
+    }
+
+    private void respondClassified(HttpExchange exchange, boolean batch, List<List<CharacteristicValue>> results,
+                                   Throwable error) {
+        try {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof TimeoutException) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, JsonCodec.writeError(cause.getMessage()));
+            } else if (cause != null) {
+                respond(exchange, 500, JsonCodec.writeError("classification failed: " + cause));
+            } else {
+                respond(exchange, 200, batch ? JsonCodec.writeResults(results) : JsonCodec.writeResult(results.get(0)));
+            }
+        } catch (IOException e) {
+            log.debug("Response could not be written", e);
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        MicroBatcher current = batcher;
+        boolean up = current.isRunning();
+        String health = String.format(Locale.ROOT,
+                "{\"status\":\"%s\",\"queued\":%d,\"queueCapacity\":%d,\"accepted\":%d,\"shed\":%d,\"expired\":%d,"
+                        + "\"batches\":%d,\"meanBatchSize\":%.2f}",
+                up ? "UP" : "STOPPING", current.getQueueSize(), current.getQueueCapacity(),
+                current.getAcceptedCount(), current.getShedCount(), current.getExpiredCount(),
+                current.getBatchCount(), current.getBatchCount() == 0 ? 0 : current.getMeanBatchSize());
+        respond(exchange, up ? 200 : 503, health);
+    }
+
+    // body of the request in UTF-8, null if it is too long
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+                if (body.size() > MAX_BODY_SIZE) {
+                    return null;
+                }
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package textclassifier2.server;
+
+import textclassifier2.model.CharacteristicValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads texts out of classify requests and writes classification results, the little JSON the server needs.
+ * <p>
+ * A request is an object with either a text field or a texts field holding an array of texts, other fields are skipped:
+ * <p>
+ * {"text": "Поиск решения и реализация задач"} or {"texts": ["Поиск решения", "Реализация задач"]}
+ * <p>
+ * A result of a text is an object with a field per classified characteristic: {"Результат": "VALID"}
+ *
+ * @author ripreal
+ */
+final class JsonCodec {
+
+    static final String TEXT_FIELD = "text";
+    static final String TEXTS_FIELD = "texts";
+    // deepest nesting of skipped objects and arrays, deeper requests are refused before the stack runs out
+    static final int MAX_DEPTH = 64;
+
+    private final String json;
+    private int position;
+
+    private JsonCodec(String json) {
+        this.json = json;
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * @throws IllegalArgumentException if the request is not valid JSON, nests objects and arrays deeper than
+     *                                  {@link #MAX_DEPTH} or has neither a text nor a texts field
+     */
+    static Request readRequest(String json) {
+        return new JsonCodec(json).readRequest();
+    }
+
+    static String writeResult(List<CharacteristicValue> values) {
+        StringBuilder out = new StringBuilder();
+        appendResult(out, values);
+        return out.toString();
+    }
+
+    static String writeResults(List<List<CharacteristicValue>> results) {
+        StringBuilder out = new StringBuilder("{\"results\":[");
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendResult(out, results.get(i));
+        }
+        return out.append("]}").toString();
+    }
+
+    static String writeError(String message) {
+        StringBuilder out = new StringBuilder("{\"error\":");
+        appendString(out, message);
+        return out.append('}').toString();
+    }
+
+    static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    // PRIVATE SECTION
+
+    private static void appendResult(StringBuilder out, List<CharacteristicValue> values) {
+        out.append('{');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendString(out, values.get(i).getCharacteristic().getName());
+            out.append(':');
+            appendString(out, values.get(i).getValue());
+        }
+        out.append('}');
+    }
+
+    private Request readRequest() {
+        List<String> texts = null;
+        boolean batch = false;
+        expect('{');
+        skipWhitespace();
+        if (peek() != '}') {
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+
+                if (key.equals(TEXT_FIELD) && peek() == '"') {
+                    texts = new ArrayList<>();
+                    texts.add(readString());
+                    batch = false;
+                } else if (key.equals(TEXTS_FIELD) && peek() == '[') {
+                    texts = readStrings();
+                    batch = true;
+                } else {
+                    skipValue(1);
+                }
+
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                    continue;
+                }
+                break;
+            }
+        }
+        expect('}');
+        skipWhitespace();
+        if (position != json.length())
+            throw malformed();
+        if (texts == null)
+            throw new IllegalArgumentException("request should have a '" + TEXT_FIELD + "' string or a '"
+                    + TEXTS_FIELD + "' array of strings");
+        return new Request(texts, batch);
+    }
+
+    private List<String> readStrings() {
+        List<String> strings = new ArrayList<>();
+        expect('[');
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return strings;
+        }
+        while (true) {
+            skipWhitespace();
+            strings.add(readString());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+                continue;
+            }
+            expect(']');
+            return strings;
+        }
+    }
+
+    private String readString() {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            char escaped = next();
+            switch (escaped) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if (position + 4 > json.length())
+                        throw malformed();
+                    try {
+                        value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw malformed();
+                    }
+                    position += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+    }
+
+    // skips a value of any type, nested objects and arrays included; depth counts the objects and arrays around it
+    private void skipValue(int depth) {
+        char c = peek();
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            if (depth >= MAX_DEPTH)
+                throw new IllegalArgumentException("JSON nested deeper than " + MAX_DEPTH + " at position " + position);
+            char close = c == '{' ? '}' : ']';
+            position++;
+            skipWhitespace();
+            if (peek() == close) {
+                position++;
+                return;
+            }
+            while (true) {
+                skipWhitespace();
+                if (close == '}') {
+                    readString();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                }
+                skipValue(depth + 1);
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                    continue;
+                }
+                expect(close);
+                return;
+            }
+        } else {
+            // number, true, false or null
+            int start = position;
+            while (position < json.length() && ",}] \t\r\n".indexOf(json.charAt(position)) < 0) {
+                position++;
+            }
+            if (position == start)
+                throw malformed();
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+    }
+
+    private char peek() {
+        if (position >= json.length())
+            throw malformed();
+        return json.charAt(position);
+    }
+
+    private char next() {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private void expect(char c) {
+        if (next() != c)
+            throw malformed();
+    }
+
+    private IllegalArgumentException malformed() {
+        return new IllegalArgumentException("malformed JSON at position " + position);
+    }
+
+    static final class Request {
+        private final List<String> texts;
+        // texts field was given, results go as an array
+        private final boolean batch;
+
+        Request(List<String> texts, boolean batch) {
+            this.texts = texts;
+            this.batch = batch;
+        }
+
+        List<String> getTexts() {return this.texts;}
+
+        boolean isBatch() {return this.batch;}
+    }
+}
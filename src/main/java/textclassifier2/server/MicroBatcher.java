@@ -0,0 +1,245 @@
+package textclassifier2.server;
+
+import org.slf4j.Logger;
+import textclassifier2.classifier.Classifier;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableText;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Groups texts of concurrent requests into batches passed to {@link Classifier#classifyBatch(List)} at once. Requests
+ * wait in a bounded queue; one dispatcher thread takes the first waiting request and adds the following ones until
+ * the batch is full or the first request has waited the longest delay. Under light load a request waits at most the
+ * delay, under heavy load batches fill up at once and the classifier gets whole batches to split across its threads.
+ * <p>
+ * A request which does not fit into the queue is shed at once, a request which waited in the queue longer than the
+ * timeout is completed with {@link TimeoutException} without being classified.
+ *
+ * @author ripreal
+ */
+final class MicroBatcher {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MicroBatcher.class);
+    // how often the dispatcher checks whether it is stopped while the queue is empty
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final Classifier classifier;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final long timeoutNanos;
+    private final BlockingQueue<PendingRequest> queue;
+    private final Thread dispatcher;
+    // taken by submit around the check and the offer and by stop around the flag, so no request is queued after
+    // the dispatcher has seen the batcher stopped with an empty queue
+    private final Object submitLock = new Object();
+    private volatile boolean running = true;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedTexts = new LongAdder();
+
+    // CONSTRUCTORS
+
+    /**
+     * @param maxBatchSize  most texts in a batch, a single larger request makes a batch of its own
+     * @param maxDelayNanos longest time the first request of a batch waits for others
+     * @param queueCapacity most requests waiting in the queue
+     * @param timeoutNanos  longest time a request may wait in the queue
+     */
+    MicroBatcher(Classifier classifier, int maxBatchSize, long maxDelayNanos, int queueCapacity, long timeoutNanos) {
+        if (classifier == null)
+            throw new IllegalArgumentException();
+        if (maxBatchSize < 1 || maxDelayNanos < 0 || queueCapacity < 1 || timeoutNanos < 1)
+            throw new IllegalArgumentException("batch size, queue capacity and timeout should be positive");
+
+        this.classifier = classifier;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelayNanos;
+        this.timeoutNanos = timeoutNanos;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.dispatcher = new Thread(this::dispatch, "micro-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    // CLIENT SECTION
+
+    /**
+     * @return results of the texts in the same order, completed by the dispatcher thread
+     * @throws RejectedExecutionException if the queue is full or the batcher is stopped, the request is shed
+     */
+    CompletableFuture<List<List<CharacteristicValue>>> submit(List<ClassifiableText> texts) {
+        PendingRequest request = new PendingRequest(texts);
+        synchronized (submitLock) {
+            if (!running) {
+                shed.increment();
+                throw new RejectedExecutionException("batcher is stopped");
+            }
+            if (!queue.offer(request)) {
+                shed.increment();
+                throw new RejectedExecutionException("request queue is full");
+            }
+        }
+        accepted.increment();
+        return request.result;
+    }
+
+    /**
+     * Stops taking requests, classifies the waiting ones and stops the dispatcher thread. Requests the dispatcher did
+     * not get to, if it was interrupted, are completed with {@link RejectedExecutionException}.
+     */
+    void stop() {
+        synchronized (submitLock) {
+            running = false;
+        }
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!dispatcher.isAlive()) {
+            PendingRequest request;
+            while ((request = queue.poll()) != null) {
+                request.result.completeExceptionally(new RejectedExecutionException("batcher is stopped"));
+            }
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    int getQueueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    long getShedCount() {
+        return shed.sum();
+    }
+
+    long getExpiredCount() {
+        return expired.sum();
+    }
+
+    long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return average number of texts in a batch, NaN if nothing was classified
+     */
+    double getMeanBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? Double.NaN : (double) batchedTexts.sum() / count;
+    }
+
+    // PRIVATE SECTION
+
+    private void dispatch() {
+        // request taken from the queue which did not fit into the previous batch
+        PendingRequest carried = null;
+        while (running || carried != null || !queue.isEmpty()) {
+            try {
+                PendingRequest first = carried != null ? carried : queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                carried = null;
+                if (first == null || expire(first)) {
+                    continue;
+                }
+
+                List<PendingRequest> batch = new ArrayList<>();
+                batch.add(first);
+                int size = first.texts.size();
+                long deadline = first.enqueued + maxDelayNanos;
+                while (size < maxBatchSize) {
+                    // take what is waiting at once, wait for more only until the deadline
+                    PendingRequest next = queue.poll();
+                    if (next == null) {
+                        long left = deadline - System.nanoTime();
+                        next = left > 0 && running ? queue.poll(left, TimeUnit.NANOSECONDS) : null;
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    if (expire(next)) {
+                        continue;
+                    }
+                    if (size + next.texts.size() > maxBatchSize) {
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                    size += next.texts.size();
+                }
+
+                classify(batch, size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void classify(List<PendingRequest> batch, int size) {
+        List<ClassifiableText> texts = new ArrayList<>(size);
+        for (PendingRequest request : batch) {
+            texts.addAll(request.texts);
+        }
+
+        List<List<CharacteristicValue>> results;
+        try {
+            results = classifier.classifyBatch(texts);
+        } catch (RuntimeException e) {
+            log.warn("Classification of a batch of " + size + " texts failed", e);
+            batch.forEach(request -> request.result.completeExceptionally(e));
+            return;
+        }
+        batches.increment();
+        batchedTexts.add(size);
+
+        int offset = 0;
+        for (PendingRequest request : batch) {
+            int count = request.texts.size();
+            request.result.complete(results.subList(offset, offset + count));
+            offset += count;
+        }
+    }
+
+    // completes the request with a timeout if it waited too long
+    private boolean expire(PendingRequest request) {
+        if (System.nanoTime() - request.enqueued <= timeoutNanos) {
+            return false;
+        }
+        expired.increment();
+        request.result.completeExceptionally(new TimeoutException("request waited in the queue too long"));
+        return true;
+    }
+
+    private static final class PendingRequest {
+        private final List<ClassifiableText> texts;
+        private final long enqueued = System.nanoTime();
+        private final CompletableFuture<List<List<CharacteristicValue>>> result = new CompletableFuture<>();
+
+        PendingRequest(List<ClassifiableText> texts) {
+            this.texts = texts;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package textclassifier2.testdata;
+
+import textclassifier2.model.ClassifiableFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads classifiable texts from a delimited text file (CSV, TSV) in UTF-8. Has the same layout as the sheet read by
+ * {@link ExcelFileReader}: the first column holds texts, the rest hold values of characteristics named in the first
+ * line. Fields may be quoted with {@code "}, a quoted field may contain delimiters, line breaks and doubled quotes.
+ *
+ * @see MappedFileReader
+ */
+public class DelimitedFileReader extends MappedFileReader {
+
+    private final byte delimiter;
+    // characteristic name of every column, index 0 (texts) is always null
+    private String[] names;
+
+    public DelimitedFileReader(File file, ClassifiableFactory textFactory) {
+        this(file, textFactory, ',');
+    }
+
+    public DelimitedFileReader(File file, ClassifiableFactory textFactory, char delimiter) {
+        this(file, textFactory, delimiter, Runtime.getRuntime().availableProcessors(), DEFAULT_RANGE_SIZE);
+    }
+
+    public DelimitedFileReader(File file, ClassifiableFactory textFactory, char delimiter, int threadCount, int rangeSize) {
+        super(file, textFactory, threadCount, rangeSize);
+
+        if (delimiter > 127 || delimiter == '"' || delimiter == '\n' || delimiter == '\r')
+            throw new IllegalArgumentException("delimiter should be an ASCII character other than quote or line break");
+        this.delimiter = (byte) delimiter;
+    }
+
+    @Override
+    protected int readHeader(ByteBuffer head, FieldDecoder decoder) throws IOException {
+        List<String> header = new ArrayList<>();
+        int position = head.limit() > 0 ? parseFields(head, 0, decoder, header, false) : 0;
+
+        names = new String[header.size()];
+        for (int i = 1; i < header.size(); i++) {
+            String name = header.get(i);
+            names[i] = name.equals("") ? null : name;
+        }
+        return position;
+    }
+
+    @Override
+    protected boolean newlinesMayBeQuoted() {
+        return true;
+    }
+
+    @Override
+    protected int parseRecord(ByteBuffer buffer, int position, FieldDecoder decoder, List<Record> records) {
+        List<String> fields = new ArrayList<>(names.length);
+        int next = parseFields(buffer, position, decoder, fields, true);
+
+        // skip blank lines
+        if (fields.size() == 1 && fields.get(0).equals("")) {
+            return next;
+        }
+
+        String[] values = new String[names.length];
+        for (int i = 1; i < fields.size() && i < values.length; i++) {
+            values[i] = fields.get(i);
+        }
+        records.add(new Record(fields.get(0), names, values));
+        return next;
+    }
+
+    // PRIVATE SECTION
+
+    /**
+     * Parses fields of one line.
+     *
+     * @param cacheValues decode unquoted characteristic values through the decoder cache
+     * @return position after the line break
+     */
+    private int parseFields(ByteBuffer buffer, int position, FieldDecoder decoder, List<String> fields, boolean cacheValues) {
+        int limit = buffer.limit();
+        int i = position;
+
+        while (true) {
+            boolean quoted = i < limit && buffer.get(i) == '"';
+            int start;
+            int end;
+
+            if (quoted) {
+                start = ++i;
+                while (i < limit) {
+                    if (buffer.get(i) == '"') {
+                        if (i + 1 < limit && buffer.get(i + 1) == '"') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                end = i;
+                // skip closing quote and anything up to the delimiter
+                while (i < limit && buffer.get(i) != delimiter && buffer.get(i) != '\n') {
+                    i++;
+                }
+            } else {
+                start = i;
+                while (i < limit && buffer.get(i) != delimiter && buffer.get(i) != '\n') {
+                    i++;
+                }
+                end = i;
+                if (end > start && buffer.get(end - 1) == '\r') {
+                    end--;
+                }
+            }
+
+            if (quoted) {
+                fields.add(decoder.decode(buffer, start, end, true));
+            } else if (cacheValues && !fields.isEmpty()) {
+                fields.add(decoder.decodeCached(buffer, start, end));
+            } else {
+                fields.add(decoder.decode(buffer, start, end, false));
+            }
+
+            if (i >= limit) {
+                return limit;
+            }
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+            i++; // delimiter
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package textclassifier2.testdata;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes results into a delimited text file (CSV, TSV) in UTF-8 laid out as {@link DelimitedFileReader} reads it:
+ * texts in the first column, values in the next ones under characteristic names in the first line. Fields holding
+ * the delimiter, quotes or line breaks are quoted.
+ */
+public class DelimitedResultWriter implements ResultWriter {
+
+    private final char delimiter;
+    private final Writer out;
+
+    /**
+     * @param append write after the lines of the file if it is not empty, the header is not written again then
+     */
+    public DelimitedResultWriter(File file, List<String> characteristicNames, char delimiter, boolean append)
+            throws IOException {
+        if (file == null || characteristicNames == null)
+            throw new IllegalArgumentException();
+        if (delimiter == '"' || delimiter == '\n' || delimiter == '\r')
+            throw new IllegalArgumentException("delimiter should be other than quote or line break");
+
+        this.delimiter = delimiter;
+        boolean continued = append && file.length() > 0;
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, continued), StandardCharsets.UTF_8));
+        if (!continued) {
+            write(TEXT_COLUMN, characteristicNames);
+        }
+    }
+
+    @Override
+    public void write(String text, List<String> values) throws IOException {
+        writeField(text);
+        for (String value : values) {
+            out.write(delimiter);
+            writeField(value);
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    // PRIVATE SECTION
+
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == delimiter || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -1,37 +1,76 @@
 package textclassifier2.testdata;
 
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
 
 import org.slf4j.Logger;
-import textclassifier2.CharacteristicUtils;
+import org.xml.sax.SAXException;
 import textclassifier2.model.Characteristic;
 import textclassifier2.model.CharacteristicValue;
 import textclassifier2.model.ClassifiableFactory;
 import textclassifier2.model.ClassifiableText;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Reads classifiable texts from an xlsx sheet without loading the workbook into memory. First column of the sheet
+ * holds texts, the rest hold values of characteristics named in the first row.
+ * <p>
+ * The sheet is streamed with POI event API: {@link XSSFReader} gives the raw sheet XML, which is pulled row by row,
+ * and cell strings are resolved through {@link ReadOnlySharedStringsTable}. Every {@link #next()} returns at most
+ * chunk size texts, so heap use depends on the chunk size (and the shared strings table), not on the number of rows.
+ * Characteristics and their values are shared between chunks: a value gets its order number when it is met for the
+ * first time, so order numbers stay stable across chunks.
+ */
 public class ExcelFileReader implements TestDataReader {
 
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(ExcelFileReader.class);
     private final File file;
     private final int sheetNumber;
     private final ClassifiableFactory textFactory;
+    private final int chunkSize;
     private boolean hasNext = true;
 
+    // streaming state, opened on first read
+    private OPCPackage pkg;
+    private InputStream sheetStream;
+    private XMLStreamReader sheet;
+    private ReadOnlySharedStringsTable sharedStrings;
+    // characteristic of every column, index 0 (texts) is always null
+    private List<Characteristic> characteristics;
+    private final Map<Characteristic, Map<String, CharacteristicValue>> valuesByName = new HashMap<>();
+
     public ExcelFileReader(File file, int sheetNumber, ClassifiableFactory textFactory) {
+        this(file, sheetNumber, textFactory, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ExcelFileReader(File file, int sheetNumber, ClassifiableFactory textFactory, int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize should be positive");
+
         this.file = file;
         this.sheetNumber = sheetNumber;
         this.textFactory = textFactory;
+        this.chunkSize = chunkSize;
     }
 
     @Override
@@ -39,47 +78,41 @@ public class ExcelFileReader implements TestDataReader {
         return hasNext;
     }
 
+    /**
+     * @return next chunk of at most chunk size texts. The last chunk may be empty.
+     */
     @Override
     public ClassifiableData next() throws IOException {
-        hasNext = false;
-        List<ClassifiableText> texts = toClassifiableTexts();
-        if (texts.size() > 0) {
-            Set<Characteristic> characteristics = toCharacteristics(texts);
-            Set<CharacteristicValue> charVals = toCharacteristicValues(texts);
-            return new TestDataReader.ClassifiableData(texts, characteristics, charVals);
+        if (!hasNext) {
+            return TestDataReader.ClassifiableData.empty();
         }
-        return TestDataReader.ClassifiableData.empty();
+        List<ClassifiableText> texts = readChunk(chunkSize);
+        return toClassifiableData(texts);
     }
 
     @Override
     public ClassifiableData readAll() throws IOException {
-        return next();
+        List<ClassifiableText> texts = new ArrayList<>();
+        while (hasNext) {
+            texts.addAll(readChunk(Integer.MAX_VALUE));
+        }
+        return toClassifiableData(texts);
     }
 
     @Override
     public void close() throws Exception {
+        hasNext = false;
+        closeSheet();
     }
 
     public List<ClassifiableText> toClassifiableTexts() throws IOException {
-        if (!file.exists() ||
-                sheetNumber < 1) {
-            throw new IOException(
-                String.format("Excel file with path %s not exist or has wrong format!", file.getAbsolutePath()));
-        }
-        List<ClassifiableText> texts = new ArrayList<>();
-        try (XSSFWorkbook excelFile = new XSSFWorkbook(new FileInputStream(file))) {
-            XSSFSheet sheet = excelFile.getSheetAt(sheetNumber - 1);
-
-            // at least two rows
-            if (sheet.getLastRowNum() > 0) {
-                texts = getClassifiableTexts(sheet);
-            } else {
-                log.info("Excel sheet (#" + sheetNumber + ") is empty");
-            }
-        } catch (IllegalArgumentException e) {
-            throw new IOException("Excel sheet (#" + sheetNumber + ") is not found");
+        try (ExcelFileReader reader = new ExcelFileReader(file, sheetNumber, textFactory, chunkSize)) {
+            return reader.readAll().getClassifiableTexts();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
         }
-        return texts;
     }
 
     public Set<Characteristic> toCharacteristics(List<ClassifiableText> texts) {
@@ -96,59 +129,230 @@ public class ExcelFileReader implements TestDataReader {
             .collect(Collectors.toSet());
     }
 
+    private ClassifiableData toClassifiableData(List<ClassifiableText> texts) {
+        if (texts.size() > 0) {
+            Set<Characteristic> characteristics = toCharacteristics(texts);
+            Set<CharacteristicValue> charVals = toCharacteristicValues(texts);
+            return new TestDataReader.ClassifiableData(texts, characteristics, charVals);
+        }
+        return TestDataReader.ClassifiableData.empty();
+    }
+
     // WORK WITH SHEET
 
-    private List<ClassifiableText> getClassifiableTexts(XSSFSheet sheet) {
-        List<Characteristic> characteristics = getCharacteristics(sheet);
+    private List<ClassifiableText> readChunk(int size) throws IOException {
         List<ClassifiableText> classifiableTexts = new ArrayList<>();
+        try {
+            if (sheet == null) {
+                openSheet();
+            }
+
+            List<String> row;
+            while (classifiableTexts.size() < size && (row = readRow()) != null) {
+                Set<CharacteristicValue> characteristicsValues = getCharacteristicsValues(row);
+                String text = row.isEmpty() || row.get(0) == null ? "" : row.get(0);
 
-        // start from second row
-        for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-            Set<CharacteristicValue> characteristicsValues = getCharacteristicsValues(sheet.getRow(i), characteristics);
+                // exclude empty rows
+                if (!text.equals("")) {
+                    classifiableTexts.add(textFactory.newClassifiableText(text, characteristicsValues));
+                }
+            }
 
-            // exclude empty rows
-            if (!sheet.getRow(i).getCell(0).getStringCellValue().equals("")) {
-                classifiableTexts.add(textFactory.newClassifiableText(sheet.getRow(i).getCell(0).getStringCellValue(), characteristicsValues));
+            if (classifiableTexts.size() < size) {
+                hasNext = false;
+                closeSheet();
             }
+        } catch (XMLStreamException e) {
+            hasNext = false;
+            closeSheet();
+            throw new IOException("Excel sheet (#" + sheetNumber + ") has wrong format", e);
         }
+        return classifiableTexts;
+    }
 
-        //todo: now it's error prone approach. Value's order and parent should be filled somewhere ese.
-        for (Characteristic characteristic : characteristics) {
-            int i = 1;
-            for (CharacteristicValue characteristicValue : characteristic.getPossibleValues()) {
-                characteristicValue.setOrderNumber(i++);
+    private void openSheet() throws IOException, XMLStreamException {
+        if (!file.exists() ||
+                sheetNumber < 1) {
+            hasNext = false;
+            throw new IOException(
+                String.format("Excel file with path %s not exist or has wrong format!", file.getAbsolutePath()));
+        }
+
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            sharedStrings = new ReadOnlySharedStringsTable(pkg);
+
+            Iterator<InputStream> sheets = xssfReader.getSheetsData();
+            for (int i = 1; sheets.hasNext(); i++) {
+                InputStream stream = sheets.next();
+                if (i == sheetNumber) {
+                    sheetStream = stream;
+                    break;
+                }
+                stream.close();
             }
+        } catch (OpenXML4JException | SAXException e) {
+            closeSheet();
+            hasNext = false;
+            throw new IOException(
+                String.format("Excel file with path %s not exist or has wrong format!", file.getAbsolutePath()), e);
         }
 
-        return classifiableTexts;
+        if (sheetStream == null) {
+            closeSheet();
+            hasNext = false;
+            throw new IOException("Excel sheet (#" + sheetNumber + ") is not found");
+        }
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        sheet = factory.createXMLStreamReader(sheetStream);
+
+        characteristics = getCharacteristics(readRow());
+        if (characteristics == null) {
+            log.info("Excel sheet (#" + sheetNumber + ") is empty");
+        }
+    }
+
+    private void closeSheet() throws IOException {
+        try {
+            if (sheet != null) {
+                sheet.close();
+            }
+        } catch (XMLStreamException ignored) {
+        }
+        if (sheetStream != null) {
+            sheetStream.close();
+        }
+        if (pkg != null) {
+            // opened read only, nothing to save
+            pkg.revert();
+        }
+        sheet = null;
+        sheetStream = null;
+        pkg = null;
+        sharedStrings = null;
     }
 
-    private Set<CharacteristicValue> getCharacteristicsValues(Row row, List<Characteristic> characteristics) {
+    /**
+     * Reads cells of the next row of the sheet.
+     *
+     * @return cell values by column index, missing cells are null; null if there are no rows left
+     */
+    private List<String> readRow() throws XMLStreamException {
+        if (sheet == null) {
+            return null;
+        }
+
+        // move to the next row
+        while (true) {
+            int event = sheet.next();
+            if (event == XMLStreamConstants.END_DOCUMENT) {
+                return null;
+            }
+            if (event == XMLStreamConstants.START_ELEMENT && sheet.getLocalName().equals("row")) {
+                break;
+            }
+        }
+
+        List<String> row = new ArrayList<>();
+        int column = 0;
+        while (true) {
+            int event = sheet.next();
+            if (event == XMLStreamConstants.END_ELEMENT && sheet.getLocalName().equals("row")) {
+                return row;
+            }
+            if (event == XMLStreamConstants.START_ELEMENT && sheet.getLocalName().equals("c")) {
+                String reference = sheet.getAttributeValue(null, "r");
+                if (reference != null) {
+                    column = toColumnIndex(reference);
+                }
+                String value = readCell(sheet.getAttributeValue(null, "t"));
+                while (row.size() <= column) {
+                    row.add(null);
+                }
+                row.set(column++, value);
+            }
+        }
+    }
+
+    // reads cell content up to the end of the "c" element
+    private String readCell(String type) throws XMLStreamException {
+        StringBuilder value = new StringBuilder();
+        boolean inValue = false;
+
+        while (true) {
+            int event = sheet.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                // "v" holds value or shared string index, "t" holds text of inline string
+                inValue = sheet.getLocalName().equals("v") || sheet.getLocalName().equals("t");
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (sheet.getLocalName().equals("c")) {
+                    break;
+                }
+                inValue = false;
+            } else if (inValue && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                value.append(sheet.getText());
+            }
+        }
+
+        if ("s".equals(type) && value.length() > 0) {
+            return sharedStrings.getEntryAt(Integer.parseInt(value.toString().trim()));
+        }
+        return value.toString();
+    }
+
+    // "AB12" -> 27
+    private static int toColumnIndex(String reference) {
+        int column = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            char c = reference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    private Set<CharacteristicValue> getCharacteristicsValues(List<String> row) {
         Set<CharacteristicValue> characteristicsValues = new HashSet<>();
 
-        for (int i = 1; i < row.getLastCellNum(); i++) {
-            Characteristic characteristic = characteristics.get(i - 1);
-            String valueName = row.getCell(i).getStringCellValue();
+        for (int i = 1; i < row.size() && i < characteristics.size(); i++) {
+            Characteristic characteristic = characteristics.get(i);
+            String valueName = row.get(i);
+            if (characteristic == null || valueName == null) {
+                continue;
+            }
 
-            CharacteristicValue value = CharacteristicUtils.findByValue(
-                    characteristic.getPossibleValues(), valueName, (val) -> textFactory.newCharacteristicValue(val, 0, characteristic));
+            Map<String, CharacteristicValue> values = valuesByName.computeIfAbsent(characteristic, (c) -> new HashMap<>());
+            CharacteristicValue value = values.get(valueName);
             if (value == null) {
-                value = textFactory.newCharacteristicValue(valueName, 0, characteristic);
+                // order number is given once, when the value is met for the first time
+                value = textFactory.newCharacteristicValue(valueName, values.size() + 1, characteristic);
+                values.put(valueName, value);
+                characteristic.addPossibleValue(value);
             }
-            characteristic.addPossibleValue(value);
             characteristicsValues.add(value);
         }
 
         return characteristicsValues;
     }
 
-    private List<Characteristic> getCharacteristics(XSSFSheet sheet) {
+    private List<Characteristic> getCharacteristics(List<String> header) {
+        if (header == null) {
+            return null;
+        }
 
         List<Characteristic> characteristics = new ArrayList<>();
+        characteristics.add(null);
 
         // first row from second to last columns contains Characteristics names
-        for (int i = 1; i < sheet.getRow(0).getLastCellNum(); i++) {
-            characteristics.add(textFactory.newCharacteristic(sheet.getRow(0).getCell(i).getStringCellValue()));
+        for (int i = 1; i < header.size(); i++) {
+            String name = header.get(i);
+            characteristics.add(name == null || name.equals("") ? null : textFactory.newCharacteristic(name));
         }
 
         return characteristics;
@@ -0,0 +1,93 @@
+package textclassifier2.testdata;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes results into an xlsx sheet laid out as {@link ExcelFileReader} reads it: texts in the first column, values in
+ * the next ones under characteristic names in the first row.
+ * <p>
+ * Rows are streamed with POI {@link SXSSFWorkbook}: only a window of rows is kept in memory, older ones go into
+ * compressed temporary files, so heap use does not depend on the number of rows. A sheet full of rows is continued on
+ * the next one. The file itself is written on close only, so an xlsx cannot be appended to; a failed run still writes
+ * the rows written so far on close.
+ */
+public class ExcelResultWriter implements ResultWriter {
+
+    private static final int ROW_WINDOW_SIZE = 100;
+    private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    private static final int MAX_TEXT_LENGTH = SpreadsheetVersion.EXCEL2007.getMaxTextLength();
+
+    private final File file;
+    private final List<String> characteristicNames;
+    private final SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW_SIZE);
+    private Sheet sheet;
+    private int nextRow;
+
+    public ExcelResultWriter(File file, List<String> characteristicNames) {
+        if (file == null || characteristicNames == null)
+            throw new IllegalArgumentException();
+
+        this.file = file;
+        this.characteristicNames = characteristicNames;
+        workbook.setCompressTempFiles(true);
+    }
+
+    @Override
+    public void write(String text, List<String> values) {
+        if (sheet == null || nextRow == MAX_ROWS) {
+            newSheet();
+        }
+
+        Row row = sheet.createRow(nextRow++);
+        setCell(row, 0, text);
+        for (int i = 0; i < values.size(); i++) {
+            setCell(row, i + 1, values.get(i));
+        }
+    }
+
+    @Override
+    public void flush() {
+        // rows beyond the window are flushed by SXSSF itself, the file is written on close
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            if (sheet == null) {
+                newSheet();
+            }
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    // PRIVATE SECTION
+
+    private void newSheet() {
+        sheet = workbook.createSheet();
+        nextRow = 0;
+        Row header = sheet.createRow(nextRow++);
+        setCell(header, 0, TEXT_COLUMN);
+        for (int i = 0; i < characteristicNames.size(); i++) {
+            setCell(header, i + 1, characteristicNames.get(i));
+        }
+    }
+
+    private static void setCell(Row row, int column, String value) {
+        if (value != null) {
+            // longer strings are refused by Excel
+            row.createCell(column).setCellValue(value.length() > MAX_TEXT_LENGTH ? value.substring(0, MAX_TEXT_LENGTH) : value);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package textclassifier2.testdata;
+
+import textclassifier2.model.ClassifiableFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads classifiable texts from a JSON lines file in UTF-8: one JSON object per line, the text field holds the text
+ * and every other field is a characteristic with the field value as characteristic value. For example:
+ * <p>
+ * {"text": "Поиск решения и реализация задач", "Результат": "VALID"}
+ * <p>
+ * Numbers and booleans are taken as written, nulls, nested objects and arrays are skipped.
+ *
+ * @see MappedFileReader
+ */
+public class JsonLinesFileReader extends MappedFileReader {
+
+    public static final String DEFAULT_TEXT_FIELD = "text";
+
+    private final String textField;
+
+    public JsonLinesFileReader(File file, ClassifiableFactory textFactory) {
+        this(file, textFactory, DEFAULT_TEXT_FIELD);
+    }
+
+    public JsonLinesFileReader(File file, ClassifiableFactory textFactory, String textField) {
+        this(file, textFactory, textField, Runtime.getRuntime().availableProcessors(), DEFAULT_RANGE_SIZE);
+    }
+
+    public JsonLinesFileReader(File file, ClassifiableFactory textFactory, String textField, int threadCount, int rangeSize) {
+        super(file, textFactory, threadCount, rangeSize);
+
+        if (textField == null)
+            throw new IllegalArgumentException();
+        this.textField = textField;
+    }
+
+    @Override
+    protected int readHeader(ByteBuffer head, FieldDecoder decoder) {
+        return 0;
+    }
+
+    @Override
+    protected boolean newlinesMayBeQuoted() {
+        // JSON escapes line breaks inside strings
+        return false;
+    }
+
+    @Override
+    protected int parseRecord(ByteBuffer buffer, int position, FieldDecoder decoder, List<Record> records)
+            throws IOException {
+        int end = position;
+        while (end < buffer.limit() && buffer.get(end) != '\n') {
+            end++;
+        }
+
+        int i = skipWhitespace(buffer, position, end);
+        if (i < end) {
+            records.add(parseObject(buffer, i, end, decoder));
+        }
+        return end + 1;
+    }
+
+    // PRIVATE SECTION
+
+    private Record parseObject(ByteBuffer buffer, int i, int end, FieldDecoder decoder) throws IOException {
+        String text = null;
+        List<String> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+
+        i = expect(buffer, i, end, '{');
+        i = skipWhitespace(buffer, i, end);
+        if (i < end && buffer.get(i) == '}') {
+            return new Record(null, new String[0], new String[0]);
+        }
+
+        while (true) {
+            i = skipWhitespace(buffer, i, end);
+            int keyEnd = findStringEnd(buffer, expect(buffer, i, end, '"'), end);
+            String key = readString(buffer, i + 1, keyEnd, decoder, true);
+            i = skipWhitespace(buffer, keyEnd + 1, end);
+            i = skipWhitespace(buffer, expect(buffer, i, end, ':'), end);
+
+            if (i >= end) {
+                throw malformed();
+            }
+
+            String value;
+            byte b = buffer.get(i);
+            if (b == '"') {
+                int valueEnd = findStringEnd(buffer, i + 1, end);
+                value = readString(buffer, i + 1, valueEnd, decoder, !key.equals(textField));
+                i = valueEnd + 1;
+            } else if (b == '{' || b == '[') {
+                i = skipNested(buffer, i, end);
+                value = null;
+            } else {
+                int start = i;
+                while (i < end && buffer.get(i) != ',' && buffer.get(i) != '}' && !isWhitespace(buffer.get(i))) {
+                    i++;
+                }
+                value = decoder.decodeCached(buffer, start, i);
+                if (value.equals("null")) {
+                    value = null;
+                }
+            }
+
+            if (key.equals(textField)) {
+                text = value;
+            } else {
+                names.add(key);
+                values.add(value);
+            }
+
+            i = skipWhitespace(buffer, i, end);
+            if (i < end && buffer.get(i) == ',') {
+                i++;
+                continue;
+            }
+            expect(buffer, i, end, '}');
+            break;
+        }
+
+        return new Record(text, names.toArray(new String[0]), values.toArray(new String[0]));
+    }
+
+    // position of the closing quote of the string starting at i
+    private int findStringEnd(ByteBuffer buffer, int i, int end) throws IOException {
+        while (i < end) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                return i;
+            }
+            i += b == '\\' ? 2 : 1;
+        }
+        throw malformed();
+    }
+
+    private String readString(ByteBuffer buffer, int from, int to, FieldDecoder decoder, boolean cache)
+            throws IOException {
+        boolean escaped = false;
+        for (int i = from; i < to && !escaped; i++) {
+            escaped = buffer.get(i) == '\\';
+        }
+        if (!escaped) {
+            return cache ? decoder.decodeCached(buffer, from, to) : decoder.decode(buffer, from, to, false);
+        }
+
+        decoder.reset();
+        int i = from;
+        while (i < to) {
+            if (buffer.get(i) != '\\') {
+                i = decoder.append(buffer, i, to);
+                continue;
+            }
+            if (i + 1 >= to) {
+                throw malformed();
+            }
+            byte c = buffer.get(i + 1);
+            switch (c) {
+                case 'b': decoder.append('\b'); break;
+                case 'f': decoder.append('\f'); break;
+                case 'n': decoder.append('\n'); break;
+                case 'r': decoder.append('\r'); break;
+                case 't': decoder.append('\t'); break;
+                case 'u':
+                    if (i + 6 > to) {
+                        throw malformed();
+                    }
+                    int code = 0;
+                    for (int k = i + 2; k < i + 6; k++) {
+                        int digit = Character.digit(buffer.get(k), 16);
+                        if (digit < 0) {
+                            throw malformed();
+                        }
+                        code = code * 16 + digit;
+                    }
+                    decoder.append((char) code);
+                    i += 4;
+                    break;
+                default:
+                    decoder.append((char) c);
+            }
+            i += 2;
+        }
+        return decoder.result();
+    }
+
+    // position after the object or array starting at i
+    private int skipNested(ByteBuffer buffer, int i, int end) throws IOException {
+        int depth = 0;
+        while (i < end) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                i = findStringEnd(buffer, i + 1, end);
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        throw malformed();
+    }
+
+    private int expect(ByteBuffer buffer, int i, int end, char c) throws IOException {
+        if (i >= end || buffer.get(i) != c) {
+            throw malformed();
+        }
+        return i + 1;
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int i, int end) {
+        while (i < end && isWhitespace(buffer.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static IOException malformed() {
+        return new IOException("Malformed JSON lines record");
+    }
+}
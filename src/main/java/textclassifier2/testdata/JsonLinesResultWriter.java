@@ -0,0 +1,85 @@
+package textclassifier2.testdata;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes results into a JSON lines file in UTF-8 laid out as {@link JsonLinesFileReader} reads it, one object per
+ * text:
+ * <p>
+ * {"text": "Поиск решения и реализация задач", "Результат": "VALID"}
+ * <p>
+ * Characteristics the text got no value of are left out.
+ */
+public class JsonLinesResultWriter implements ResultWriter {
+
+    private final List<String> characteristicNames;
+    private final Writer out;
+
+    /**
+     * @param append write after the lines of the file if it exists
+     */
+    public JsonLinesResultWriter(File file, List<String> characteristicNames, boolean append) throws IOException {
+        if (file == null || characteristicNames == null)
+            throw new IllegalArgumentException();
+
+        this.characteristicNames = characteristicNames;
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void write(String text, List<String> values) throws IOException {
+        out.write('{');
+        writeString(TEXT_COLUMN);
+        out.write(':');
+        writeString(text);
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) != null) {
+                out.write(',');
+                writeString(characteristicNames.get(i));
+                out.write(':');
+                writeString(values.get(i));
+            }
+        }
+        out.write("}\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    // PRIVATE SECTION
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
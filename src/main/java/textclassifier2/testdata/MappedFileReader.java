@@ -0,0 +1,462 @@
+package textclassifier2.testdata;
+
+import textclassifier2.model.Characteristic;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableFactory;
+import textclassifier2.model.ClassifiableText;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Base of readers of line oriented text files (one record per line, UTF-8). The file is read through a memory-mapped
+ * {@link FileChannel} and split into byte ranges that end on record boundaries; ranges are parsed in parallel straight
+ * from the mapped bytes, texts are decoded into strings once, and repeated characteristic values are resolved from raw
+ * bytes without decoding them again. Every {@link #next()} parses as many ranges as there are threads.
+ * <p>
+ * The file and the threads parsing it are taken by the first {@link #next()} and given back once the last range is
+ * read; a reader left before its end should be closed.
+ * <p>
+ * Parsed records are turned into {@link ClassifiableText} in file order on the calling thread, so characteristic
+ * values get the same order numbers as with {@link ExcelFileReader}: a value is numbered when it is met first.
+ *
+ * @see DelimitedFileReader
+ * @see JsonLinesFileReader
+ */
+public abstract class MappedFileReader implements TestDataReader {
+
+    public static final int DEFAULT_RANGE_SIZE = 16 * 1024 * 1024;
+
+    // window used to scan the file for range boundaries
+    private static final int SCAN_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+    private final ClassifiableFactory textFactory;
+    private final int threadCount;
+    private final int rangeSize;
+    // decoder of every parsing thread, its cache of values is kept from range to range
+    private final ThreadLocal<FieldDecoder> decoders = ThreadLocal.withInitial(FieldDecoder::new);
+    private boolean hasNext = true;
+
+    private FileChannel channel;
+    private ForkJoinPool pool;
+    // record aligned offsets, range i is [boundaries[i], boundaries[i + 1])
+    private List<Long> boundaries;
+    private int nextRange;
+
+    private final Map<String, Characteristic> characteristicsByName = new HashMap<>();
+    private final Map<Characteristic, Map<String, CharacteristicValue>> valuesByName = new HashMap<>();
+
+    protected MappedFileReader(File file, ClassifiableFactory textFactory, int threadCount, int rangeSize) {
+        if (file == null || textFactory == null || threadCount < 1 || rangeSize < 1)
+            throw new IllegalArgumentException();
+
+        this.file = file;
+        this.textFactory = textFactory;
+        this.threadCount = threadCount;
+        this.rangeSize = rangeSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    public ClassifiableData next() throws IOException {
+        if (!hasNext) {
+            return TestDataReader.ClassifiableData.empty();
+        }
+        if (channel == null) {
+            open();
+        }
+
+        int to = Math.min(boundaries.size() - 1, nextRange + threadCount);
+        List<Future<List<Record>>> parsed = new ArrayList<>();
+        for (int i = nextRange; i < to; i++) {
+            long start = boundaries.get(i);
+            long end = boundaries.get(i + 1);
+            parsed.add(pool.submit(() -> parseRange(start, end)));
+        }
+        nextRange = to;
+        if (nextRange >= boundaries.size() - 1) {
+            hasNext = false;
+        }
+
+        List<ClassifiableText> texts = new ArrayList<>();
+        try {
+            for (Future<List<Record>> records : parsed) {
+                for (Record record : records.get()) {
+                    toClassifiableText(record, texts);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+
+        if (!hasNext) {
+            release();
+        }
+        return toClassifiableData(texts);
+    }
+
+    @Override
+    public ClassifiableData readAll() throws IOException {
+        List<ClassifiableText> texts = new ArrayList<>();
+        while (hasNext) {
+            texts.addAll(next().getClassifiableTexts());
+        }
+        return toClassifiableData(texts);
+    }
+
+    @Override
+    public void close() throws Exception {
+        hasNext = false;
+        release();
+    }
+
+    // FORMAT SECTION
+
+    /**
+     * Reads the header of the file if the format has one.
+     *
+     * @param head    beginning of the file
+     * @param decoder decoder to read header values with
+     * @return offset of the first data record in the file
+     */
+    protected abstract int readHeader(ByteBuffer head, FieldDecoder decoder) throws IOException;
+
+    /**
+     * @return true if a line break can be part of a record (quoted field), so record boundaries can only be found by
+     * scanning the file from the start
+     */
+    protected abstract boolean newlinesMayBeQuoted();
+
+    /**
+     * Parses one record starting at position.
+     *
+     * @param buffer   mapped range
+     * @param position start of the record, not at the end of the range
+     * @param decoder  decoder owned by the parsing thread
+     * @param records  list to add the parsed record to, blank lines add nothing
+     * @return position right after the record and its line break
+     */
+    protected abstract int parseRecord(ByteBuffer buffer, int position, FieldDecoder decoder, List<Record> records)
+            throws IOException;
+
+    // PRIVATE SECTION
+
+    private void open() throws IOException {
+        if (!file.exists()) {
+            hasNext = false;
+            throw new IOException(String.format("File with path %s not exist!", file.getAbsolutePath()));
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        long size = channel.size();
+        MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, SCAN_WINDOW_SIZE));
+        int bom = hasBom(head) ? 3 : 0;
+        long dataStart = bom + readHeader(slice(head, bom, head.limit()), new FieldDecoder());
+
+        boundaries = findBoundaries(dataStart, size);
+        nextRange = 0;
+        pool = new ForkJoinPool(threadCount);
+    }
+
+    private void release() throws IOException {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        pool = null;
+        if (channel != null) {
+            channel.close();
+        }
+        channel = null;
+    }
+
+    private List<Long> findBoundaries(long start, long size) throws IOException {
+        List<Long> result = new ArrayList<>();
+        result.add(start);
+
+        long position = start;
+        boolean quoted = false;
+        while (position < size) {
+            long target = position + rangeSize;
+            if (target >= size) {
+                break;
+            }
+
+            long recordStart = -1;
+            if (newlinesMayBeQuoted()) {
+                // track quotes from the previous boundary on, a line break inside quotes does not end a record
+                long scanned = position;
+                while (recordStart < 0 && scanned < size) {
+                    int length = (int) Math.min(SCAN_WINDOW_SIZE, size - scanned);
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, scanned, length);
+                    for (int i = 0; i < length; i++) {
+                        byte b = window.get(i);
+                        if (b == '"') {
+                            quoted = !quoted;
+                        } else if (b == '\n' && !quoted && scanned + i >= target) {
+                            recordStart = scanned + i + 1;
+                            break;
+                        }
+                    }
+                    scanned += length;
+                }
+            } else {
+                long scanned = target;
+                while (recordStart < 0 && scanned < size) {
+                    int length = (int) Math.min(SCAN_WINDOW_SIZE, size - scanned);
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, scanned, length);
+                    for (int i = 0; i < length; i++) {
+                        if (window.get(i) == '\n') {
+                            recordStart = scanned + i + 1;
+                            break;
+                        }
+                    }
+                    scanned += length;
+                }
+            }
+
+            if (recordStart < 0 || recordStart >= size) {
+                break;
+            }
+            if (recordStart - position > Integer.MAX_VALUE) {
+                throw new IOException("Record at offset " + position + " is too long");
+            }
+            result.add(recordStart);
+            position = recordStart;
+        }
+
+        if (size - position > Integer.MAX_VALUE) {
+            throw new IOException("Record at offset " + position + " is too long");
+        }
+        if (size > start) {
+            result.add(size);
+        }
+        return result;
+    }
+
+    private List<Record> parseRange(long start, long end) throws IOException {
+        List<Record> records = new ArrayList<>();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        FieldDecoder decoder = decoders.get();
+
+        int position = 0;
+        while (position < buffer.limit()) {
+            position = parseRecord(buffer, position, decoder, records);
+        }
+        return records;
+    }
+
+    private void toClassifiableText(Record record, List<ClassifiableText> texts) {
+        Set<CharacteristicValue> characteristicsValues = new HashSet<>();
+
+        for (int i = 0; i < record.names.length; i++) {
+            String valueName = record.values[i];
+            if (record.names[i] == null || valueName == null || valueName.equals("")) {
+                continue;
+            }
+            Characteristic characteristic = characteristicsByName.computeIfAbsent(record.names[i],
+                    textFactory::newCharacteristic);
+
+            Map<String, CharacteristicValue> values = valuesByName.computeIfAbsent(characteristic, (c) -> new HashMap<>());
+            CharacteristicValue value = values.get(valueName);
+            if (value == null) {
+                // order number is given once, when the value is met for the first time
+                value = textFactory.newCharacteristicValue(valueName, values.size() + 1, characteristic);
+                values.put(valueName, value);
+                characteristic.addPossibleValue(value);
+            }
+            characteristicsValues.add(value);
+        }
+
+        // exclude empty texts
+        if (record.text != null && !record.text.equals("")) {
+            texts.add(textFactory.newClassifiableText(record.text, characteristicsValues));
+        }
+    }
+
+    private ClassifiableData toClassifiableData(List<ClassifiableText> texts) {
+        if (texts.isEmpty()) {
+            return TestDataReader.ClassifiableData.empty();
+        }
+
+        Set<CharacteristicValue> charVals = TestDataReader.getCharacteristicValueTetData(texts);
+        Set<Characteristic> characteristics = new HashSet<>();
+        for (CharacteristicValue value : charVals) {
+            characteristics.add(value.getCharacteristic());
+        }
+        return new TestDataReader.ClassifiableData(texts, characteristics, charVals);
+    }
+
+    private static boolean hasBom(ByteBuffer buffer) {
+        return buffer.limit() >= 3
+                && (buffer.get(0) & 0xFF) == 0xEF
+                && (buffer.get(1) & 0xFF) == 0xBB
+                && (buffer.get(2) & 0xFF) == 0xBF;
+    }
+
+    // Buffer casts keep the byte code runnable on Java 8, where ByteBuffer does not override these methods
+    static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer duplicate = buffer.duplicate();
+        ((Buffer) duplicate).limit(to);
+        ((Buffer) duplicate).position(from);
+        return duplicate.slice();
+    }
+
+    /**
+     * Parsed record: text and characteristic values with their names, null value means the record has no value.
+     */
+    protected static final class Record {
+        final String text;
+        final String[] names;
+        final String[] values;
+
+        protected Record(String text, String[] names, String[] values) {
+            this.text = text;
+            this.names = names;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Decodes UTF-8 straight from a buffer into a reusable char array, so a field costs one {@link String} and no
+     * intermediate copies. Not thread safe, every parsing thread has its own decoder.
+     */
+    protected static final class FieldDecoder {
+        // values cached at most, the cache outlives a range and should not grow with a column of unique values
+        private static final int MAX_CACHED_VALUES = 4096;
+
+        private char[] chars = new char[256];
+        private int length;
+        // short repeated values (characteristic values) keyed by their raw bytes
+        private final Map<ByteBuffer, String> cache = new HashMap<>();
+
+        /**
+         * @return decoded bytes [from, to) of the buffer, a doubled quote turns into one if unquote is set
+         */
+        public String decode(ByteBuffer buffer, int from, int to, boolean unquote) {
+            reset();
+            int i = from;
+            while (i < to) {
+                if (unquote && buffer.get(i) == '"' && i + 1 < to && buffer.get(i + 1) == '"') {
+                    i++;
+                }
+                i = append(buffer, i, to);
+            }
+            return result();
+        }
+
+        /**
+         * Same as {@link #decode(ByteBuffer, int, int, boolean)} without unquoting, but returns the same string for
+         * the same bytes.
+         */
+        public String decodeCached(ByteBuffer buffer, int from, int to) {
+            ByteBuffer key = slice(buffer, from, to);
+            String value = cache.get(key);
+            if (value == null) {
+                value = decode(buffer, from, to, false);
+                if (cache.size() < MAX_CACHED_VALUES) {
+                    // the key is copied, a slice would keep the mapped range reachable after it is parsed
+                    ByteBuffer copy = ByteBuffer.allocate(key.remaining()).put(key);
+                    ((Buffer) copy).flip();
+                    cache.put(copy, value);
+                }
+            }
+            return value;
+        }
+
+        public void reset() {
+            length = 0;
+        }
+
+        public void append(char c) {
+            ensureCapacity(1);
+            chars[length++] = c;
+        }
+
+        /**
+         * Decodes one UTF-8 encoded code point, malformed bytes turn into U+FFFD.
+         *
+         * @return position of the next code point
+         */
+        public int append(ByteBuffer buffer, int i, int to) {
+            ensureCapacity(2);
+            int b = buffer.get(i) & 0xFF;
+            if (b < 0x80) {
+                chars[length++] = (char) b;
+                return i + 1;
+            }
+
+            int count;
+            int codePoint;
+            if ((b & 0xE0) == 0xC0) {
+                count = 1;
+                codePoint = b & 0x1F;
+            } else if ((b & 0xF0) == 0xE0) {
+                count = 2;
+                codePoint = b & 0x0F;
+            } else if ((b & 0xF8) == 0xF0) {
+                count = 3;
+                codePoint = b & 0x07;
+            } else {
+                chars[length++] = '\uFFFD';
+                return i + 1;
+            }
+
+            if (i + count >= to) {
+                chars[length++] = '\uFFFD';
+                return i + 1;
+            }
+            for (int k = 1; k <= count; k++) {
+                int next = buffer.get(i + k) & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    chars[length++] = '\uFFFD';
+                    return i + k;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+
+            if (Character.isBmpCodePoint(codePoint)) {
+                chars[length++] = (char) codePoint;
+            } else if (Character.isValidCodePoint(codePoint)) {
+                chars[length++] = Character.highSurrogate(codePoint);
+                chars[length++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[length++] = '\uFFFD';
+            }
+            return i + count + 1;
+        }
+
+        public String result() {
+            return new String(chars, 0, length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > chars.length) {
+                char[] grown = new char[Math.max(chars.length * 2, length + extra)];
+                System.arraycopy(chars, 0, grown, 0, length);
+                chars = grown;
+            }
+        }
+    }
+}
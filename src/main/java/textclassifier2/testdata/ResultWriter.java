@@ -0,0 +1,51 @@
+package textclassifier2.testdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes texts with the values they were classified as. Every format has the layout its reader reads, so written
+ * results can be read back as test data: {@link ExcelResultWriter}, {@link DelimitedResultWriter},
+ * {@link JsonLinesResultWriter}.
+ */
+public interface ResultWriter extends AutoCloseable {
+
+    String TEXT_COLUMN = JsonLinesFileReader.DEFAULT_TEXT_FIELD;
+
+    /**
+     * @param values values of the characteristics the writer was created with in the same order, null where the text
+     *               got no value
+     */
+    void write(String text, List<String> values) throws IOException;
+
+    /**
+     * Pushes written rows out of buffers, so rows written so far survive a failure. Rows of xlsx are kept until close.
+     */
+    void flush() throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Chooses the writer by file extension: xlsx, tsv, csv, otherwise JSON lines.
+     *
+     * @param characteristicNames names of columns after the text column
+     * @param append              write after rows of an existing file
+     * @throws IllegalArgumentException if rows are to be appended to an xlsx file which is not empty, it cannot be
+     *                                  appended to and would be overwritten, see {@link ExcelResultWriter}
+     */
+    static ResultWriter forFile(File file, List<String> characteristicNames, boolean append) throws IOException {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".xlsx")) {
+            if (append && file.length() > 0)
+                throw new IllegalArgumentException("rows cannot be appended to " + file + ", write them into another file");
+            return new ExcelResultWriter(file, characteristicNames);
+        } else if (name.endsWith(".tsv")) {
+            return new DelimitedResultWriter(file, characteristicNames, '\t', append);
+        } else if (name.endsWith(".csv")) {
+            return new DelimitedResultWriter(file, characteristicNames, ',', append);
+        }
+        return new JsonLinesResultWriter(file, characteristicNames, append);
+    }
+}
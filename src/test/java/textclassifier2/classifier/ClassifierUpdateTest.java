@@ -0,0 +1,183 @@
+package textclassifier2.classifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import textclassifier2.model.CharacteristicValue;
+import textclassifier2.model.ClassifiableFactory;
+import textclassifier2.model.ClassifiableText;
+import textclassifier2.model.modelimp.DefClassifiableFactory;
+import textclassifier2.ngram.NGramStrategy;
+import textclassifier2.testdata.JsonLinesFileReader;
+import textclassifier2.testdata.TestDataReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link Classifier#update(List, ClassifiableFactory)} labels new texts by their characteristic values,
+ * not by the order numbers their reader gave the values: a file of new texts numbers values in the order they appear
+ * in it, which is generally not the order of the file the classifier was built from.
+ *
+ * @author ripreal
+ */
+public class ClassifierUpdateTest {
+
+    private static final String CHARACTERISTIC = "Результат";
+    private static final String[] VALUES = {"VALID", "INVALID", "DOUBT"};
+    private static final int WORDS_PER_VALUE = 30;
+    private static final int NEW_WORDS_PER_VALUE = 5;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final ClassifiableFactory factory = new DefClassifiableFactory();
+
+    @Test
+    public void naiveBayesLearnsNewWordsUnderTheirValues() throws IOException {
+        assertUpdateKeepsValues(builder -> builder.addNaiveBayesClassifierUnit(CHARACTERISTIC, getStrategy()), 0);
+    }
+
+    @Test
+    public void logisticRegressionLearnsNewWordsUnderTheirValues() throws IOException {
+        assertUpdateKeepsValues(builder -> builder
+                .addLogisticRegressionClassifierUnit(CHARACTERISTIC, getStrategy()), 0);
+    }
+
+    // the network starts from random weights and now and then confuses a few of the texts, while with the values of
+    // the new texts mixed up it would classify nearly all of them wrong
+    @Test
+    public void neuralNetworkLearnsNewWordsUnderTheirValues() throws IOException {
+        // fewer than half of the checked texts
+        int allowedMistakes = (NEW_WORDS_PER_VALUE + 1) * VALUES.length / 2 - 1;
+        assertUpdateKeepsValues(builder -> builder
+                .withThreadCount(1)
+                .withTrainingController(new TrainingController().withTargetError(0.0005).withMaxIterations(500))
+                .addNeroClassifierUnit(CHARACTERISTIC, getStrategy()), allowedMistakes);
+    }
+
+    @Test
+    public void updateRefusesUnknownValues() throws IOException {
+        Classifier classifier = build(builder -> builder.addNaiveBayesClassifierUnit(CHARACTERISTIC, getStrategy()));
+
+        File delta = folder.newFile("unknown.jsonl");
+        try (PrintWriter out = new PrintWriter(delta, StandardCharsets.UTF_8.name())) {
+            out.println(line("w0x0 w0x1 w0x2", "ERROR"));
+        }
+        try {
+            classifier.update(read(delta), factory);
+            fail("text of a value the classifier was not built with is accepted");
+        } catch (IllegalArgumentException e) {
+            assertEquals("value 'ERROR' is not a possible value of '" + CHARACTERISTIC
+                    + "' characteristic the classifier was built with", e.getMessage());
+        } finally {
+            classifier.shutdown();
+        }
+    }
+
+    // PRIVATE SECTION
+
+    // builds the classifier from texts of values in order VALID, INVALID, DOUBT and updates it with texts of words it
+    // has and has not seen in order DOUBT, VALID, INVALID, so the values are numbered differently in the two files
+    private void assertUpdateKeepsValues(Function<ClassifierBuilder, ClassifierBuilder> units, int allowedMistakes)
+            throws IOException {
+        Classifier classifier = build(units);
+        try {
+            File delta = folder.newFile("delta.jsonl");
+            Random random = new Random(7);
+            try (PrintWriter out = new PrintWriter(delta, StandardCharsets.UTF_8.name())) {
+                for (int value : new int[]{2, 0, 1}) {
+                    for (int i = 0; i < 20; i++) {
+                        out.println(line(newWord(value, random) + " " + newWord(value, random) + " "
+                                + newWord(value, random) + " общее слово", VALUES[value]));
+                        out.println(line(word(value, random) + " " + word(value, random) + " "
+                                + word(value, random) + " общее слово", VALUES[value]));
+                    }
+                }
+            }
+            classifier.update(read(delta), factory);
+
+            // texts of new words of every value and a text of its known words
+            List<String> mistakes = new ArrayList<>();
+            for (int value = 0; value < VALUES.length; value++) {
+                for (int k = 0; k <= NEW_WORDS_PER_VALUE; k++) {
+                    String words = k < NEW_WORDS_PER_VALUE
+                            ? "n" + value + "x" + k + " n" + value + "x" + (k + 1) % NEW_WORDS_PER_VALUE
+                            : "w" + value + "x0 w" + value + "x1 w" + value + "x2";
+                    String text = words + " общее слово";
+                    String classified = classify(classifier, text);
+                    if (!classified.equals(VALUES[value])) {
+                        mistakes.add(text + " as " + classified + " instead of " + VALUES[value]);
+                    }
+                }
+            }
+            assertTrue(mistakes.toString(), mistakes.size() <= allowedMistakes);
+        } finally {
+            classifier.shutdown();
+        }
+    }
+
+    private Classifier build(Function<ClassifierBuilder, ClassifierBuilder> units) throws IOException {
+        File source = folder.newFile("source.jsonl");
+        Random random = new Random(42);
+        try (PrintWriter out = new PrintWriter(source, StandardCharsets.UTF_8.name())) {
+            for (int i = 0; i < 60; i++) {
+                for (int value = 0; value < VALUES.length; value++) {
+                    StringBuilder text = new StringBuilder();
+                    for (int j = 0; j < 5; j++) {
+                        text.append(word(value, random)).append(' ');
+                    }
+                    out.println(line(text.append("общее слово").toString(), VALUES[value]));
+                }
+            }
+        }
+        return units.apply(ClassifierBuilder.fromJsonLines(source, factory)).build();
+    }
+
+    private List<ClassifiableText> read(File file) throws IOException {
+        try (TestDataReader reader = new JsonLinesFileReader(file, factory)) {
+            return reader.readAll().getClassifiableTexts();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private String classify(Classifier classifier, String text) {
+        ClassifiableText classifiableText = factory.newClassifiableText(text, Collections.emptySet());
+        List<CharacteristicValue> values = classifier.classify(classifiableText);
+        List<String> names = new ArrayList<>();
+        for (CharacteristicValue value : values) {
+            names.add(value.getValue());
+        }
+        return String.join(",", names);
+    }
+
+    private static NGramStrategy getStrategy() {
+        return NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.UNIGRAM);
+    }
+
+    private static String word(int value, Random random) {
+        return "w" + value + "x" + random.nextInt(WORDS_PER_VALUE);
+    }
+
+    private static String newWord(int value, Random random) {
+        return "n" + value + "x" + random.nextInt(NEW_WORDS_PER_VALUE);
+    }
+
+    private static String line(String text, String value) {
+        return "{\"text\": \"" + text + "\", \"" + CHARACTERISTIC + "\": \"" + value + "\"}";
+    }
+}
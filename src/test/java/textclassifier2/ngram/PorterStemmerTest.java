@@ -0,0 +1,168 @@
+package textclassifier2.ngram;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link PorterStemmer} stems words as the regex implementation it replaced did, on a large list of words
+ * made of Russian stems and every ending the rules know.
+ *
+ * @author ripreal
+ */
+public class PorterStemmerTest {
+
+    private static final String[] STEMS = {
+            "", "а", "я", "в", "н", "кн", "дом", "стол", "рук", "нов", "красн", "бега", "чита", "дела", "игра", "сто",
+            "ряд", "мысл", "радост", "смел", "большенн", "длинн", "нужн", "организ", "поиск", "реш", "реализ", "задач",
+            "ёлк", "зелён", "учител", "програм", "строител", "вес", "прыга", "стоя", "сия", "тая"
+    };
+
+    // endings of all groups of the rules, some made of others
+    private static final String[] ENDINGS = {
+            "", "ив", "ивши", "ившись", "ыв", "ывши", "ывшись", "в", "вши", "вшись",
+            "ся", "сь",
+            "ее", "ие", "ые", "ое", "ими", "ыми", "ей", "ий", "ый", "ой", "ем", "им", "ым", "ом", "его", "ого", "ему",
+            "ому", "их", "ых", "ую", "юю", "ая", "яя", "ою", "ею",
+            "ивш", "ывш", "ующ", "нн", "вш", "ющ", "щ",
+            "ила", "ыла", "ена", "ейте", "уйте", "ите", "или", "ыли", "уй", "ил", "ыл", "ен", "ило", "ыло", "ено", "ят",
+            "ует", "уют", "ит", "ыт", "ены", "ить", "ыть", "ишь", "ю", "ла", "на", "ете", "йте", "ли", "й", "л", "н",
+            "ло", "но", "ет", "ют", "ны", "ть", "ешь", "нно",
+            "а", "ев", "ов", "ье", "е", "иями", "ями", "ами", "еи", "ии", "и", "ией", "иям", "ям", "ием", "ам", "о", "у",
+            "ах", "иях", "ях", "ы", "ь", "ию", "ью", "ия", "ья", "я",
+            "ость", "ост", "ейше", "ейш", "ь", "нн", "ейшая", "ейшего", "остью", "остей", "ившийся", "ующиеся",
+            "ннее", "ённый", "ёнными"
+    };
+
+    private static final char[] LETTERS = "абвгдеёжзийклмнопрстуфхцчшщъыьэюяАБВЁЯabcxyz0".toCharArray();
+
+    @Test
+    public void stemsWordsAsBefore() {
+        for (String word : getWords()) {
+            assertEquals(word, RegexStemmer.doStem(word), PorterStemmer.doStem(word));
+        }
+    }
+
+    @Test
+    public void stemsWordsAsBeforeOnceCached() {
+        // second call of a word takes its stem from the cache
+        for (String word : getWords()) {
+            PorterStemmer.doStem(word);
+            assertEquals(word, RegexStemmer.doStem(word), PorterStemmer.doStem(word));
+        }
+    }
+
+    // PRIVATE SECTION
+
+    // all stems with all pairs of endings, upper-cased and broken by line terminators now and then, then random strings
+    private static List<String> getWords() {
+        List<String> words = new ArrayList<>();
+        Random random = new Random(42);
+        for (String stem : STEMS) {
+            for (String first : ENDINGS) {
+                for (String second : ENDINGS) {
+                    String word = stem + first + second;
+                    switch (random.nextInt(20)) {
+                        case 0:
+                            word = word.toUpperCase();
+                            break;
+                        case 1:
+                            word = word + "\n";
+                            break;
+                        case 2:
+                            word = word + "\r\n";
+                            break;
+                        case 3:
+                            int split = random.nextInt(word.length() + 1);
+                            word = word.substring(0, split) + "\n" + word.substring(split);
+                            break;
+                        default:
+                    }
+                    words.add(word);
+                }
+            }
+        }
+        for (int i = 0; i < 100_000; i++) {
+            char[] word = new char[1 + random.nextInt(12)];
+            for (int j = 0; j < word.length; j++) {
+                word[j] = LETTERS[random.nextInt(LETTERS.length)];
+            }
+            words.add(new String(word));
+        }
+        return words;
+    }
+
+    /**
+     * PorterStemmer before the suffix tries.
+     */
+    private static final class RegexStemmer {
+        private static final Pattern PERFECTIVEGROUND = Pattern.compile("((ив|ивши|ившись|ыв|ывши|ывшись)|((?<=[ая])(в|вши|вшись)))$");
+        private static final Pattern REFLEXIVE = Pattern.compile("(с[яь])$");
+        private static final Pattern ADJECTIVE = Pattern.compile("(ее|ие|ые|ое|ими|ыми|ей|ий|ый|ой|ем|им|ым|ом|его|ого|ему|ому|их|ых|ую|юю|ая|яя|ою|ею)$");
+        private static final Pattern PARTICIPLE = Pattern.compile("((ивш|ывш|ующ)|((?<=[ая])(ем|нн|вш|ющ|щ)))$");
+        private static final Pattern VERB = Pattern.compile("((ила|ыла|ена|ейте|уйте|ите|или|ыли|ей|уй|ил|ыл|им|ым|ен|ило|ыло|ено|ят|ует|уют|ит|ыт|ены|ить|ыть|ишь|ую|ю)|((?<=[ая])(ла|на|ете|йте|ли|й|л|ем|н|ло|но|ет|ют|ны|ть|ешь|нно)))$");
+        private static final Pattern NOUN = Pattern.compile("(а|ев|ов|ие|ье|е|иями|ями|ами|еи|ии|и|ией|ей|ой|ий|й|иям|ям|ием|ем|ам|ом|о|у|ах|иях|ях|ы|ь|ию|ью|ю|ия|ья|я)$");
+        private static final Pattern RVRE = Pattern.compile("^(.*?[аеиоуыэюя])(.*)$");
+        private static final Pattern DERIVATIONAL = Pattern.compile(".*[^аеиоуыэюя]+[аеиоуыэюя].*ость?$");
+        private static final Pattern DER = Pattern.compile("ость?$");
+        private static final Pattern SUPERLATIVE = Pattern.compile("(ейше|ейш)$");
+        private static final Pattern I = Pattern.compile("и$");
+        private static final Pattern P = Pattern.compile("ь$");
+        private static final Pattern NN = Pattern.compile("нн$");
+
+        static String doStem(String word) {
+            word = word.toLowerCase();
+            word = word.replace("ё", "e");
+
+            Matcher m = RVRE.matcher(word);
+
+            if (m.matches()) {
+                String pre = m.group(1);
+                String rv = m.group(2);
+                String temp = PERFECTIVEGROUND.matcher(rv).replaceFirst("");
+
+                if (temp.equals(rv)) {
+                    rv = REFLEXIVE.matcher(rv).replaceFirst("");
+                    temp = ADJECTIVE.matcher(rv).replaceFirst("");
+
+                    if (!temp.equals(rv)) {
+                        rv = temp;
+                        rv = PARTICIPLE.matcher(rv).replaceFirst("");
+                    } else {
+                        temp = VERB.matcher(rv).replaceFirst("");
+                        if (temp.equals(rv)) {
+                            rv = NOUN.matcher(rv).replaceFirst("");
+                        } else {
+                            rv = temp;
+                        }
+                    }
+                } else {
+                    rv = temp;
+                }
+
+                rv = I.matcher(rv).replaceFirst("");
+
+                if (DERIVATIONAL.matcher(rv).matches()) {
+                    rv = DER.matcher(rv).replaceFirst("");
+                }
+
+                temp = P.matcher(rv).replaceFirst("");
+                if (temp.equals(rv)) {
+                    rv = SUPERLATIVE.matcher(rv).replaceFirst("");
+                    rv = NN.matcher(rv).replaceFirst("н");
+                } else {
+                    rv = temp;
+                }
+                word = pre + rv;
+            }
+
+            return word;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package textclassifier2.ngram;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link Unigram} and {@link FilteredUnigram} split texts with {@link TokenScanner} into the same words,
+ * in the same order, as the regex splitting they had before.
+ *
+ * @author ripreal
+ */
+public class UnigramTest {
+
+    private static final NGramStrategy UNIGRAM = NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.UNIGRAM);
+    private static final NGramStrategy FILTERED_UNIGRAM =
+            NGramStrategy.getNGramStrategy(NGramStrategy.NGRAM_TYPES.FILTERED_UNIGRAM);
+
+    // letters, digits, every separator of the regex, punctuation and symbols which are not separators, characters
+    // lower-cased depending on context and letters out of the basic plane
+    private static final String[] PIECES = {
+            "Поиск", "решения", "РЕАЛИЗАЦИЯ", "задач", "ёлка", "Ёж", "word", "Text", "x", "я",
+            "2018", "7", "٣", "1С",
+            " ", "\n", "\t", "\r", "$", "+", "<", ">", "№", "=",
+            ".", ",", "!", "?", "-", "—", "_", "(", ")", "[", "]", "«", "»", "\"", "'", ":", ";", "/", "\\", "@", "#",
+            "%", "&", "*", "~", "^", "|", "`", "€", "©",
+            "İstanbul", "ΣΟΦΙΑ", "ΟΔΟΣ",
+            "\uD801\uDC00", "\uD835\uDC00"
+    };
+
+    @Test
+    public void splitsTextsAsBefore() {
+        String[] texts = {
+                "Поиск решения и реализация задач",
+                "How are you doing?",
+                "  Двойные  пробелы,, и знаки!!! ",
+                "Цена: 1500$ + НДС=18% <итого> №42",
+                "строка\nс\tпереводами\r\nстрок",
+                "ёжик и Ёлка",
+                "İstanbul ΟΔΟΣ ΣΟΦΙΑ",
+                "",
+                " ",
+                ".,!?"
+        };
+        for (String text : texts) {
+            assertSplitAsBefore(text);
+        }
+    }
+
+    @Test
+    public void splitsNullAsEmptyText() {
+        assertEquals(0, UNIGRAM.getNGram(null).size());
+        assertEquals(0, FILTERED_UNIGRAM.getNGram(null).size());
+    }
+
+    @Test
+    public void splitsGeneratedTextsAsBefore() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder text = new StringBuilder();
+            int count = random.nextInt(30);
+            for (int j = 0; j < count; j++) {
+                text.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            assertSplitAsBefore(text.toString());
+        }
+    }
+
+    // PRIVATE SECTION
+
+    private static void assertSplitAsBefore(String text) {
+        assertEquals(text, new ArrayList<>(splitUnigram(text)), new ArrayList<>(UNIGRAM.getNGram(text)));
+        assertEquals(text, new ArrayList<>(splitFilteredUnigram(text)), new ArrayList<>(FILTERED_UNIGRAM.getNGram(text)));
+    }
+
+    // Unigram before TokenScanner
+    private static Set<String> splitUnigram(String text) {
+        if (text == null) {
+            text = "";
+        }
+
+        String[] words = text.toLowerCase().split("[ \\pP\n\t\r$+<>№=]");
+
+        Set<String> uniqueValues = new LinkedHashSet<>(Arrays.asList(words));
+        uniqueValues.removeIf(s -> s.equals(""));
+
+        return uniqueValues;
+    }
+
+    // FilteredUnigram before TokenScanner
+    private static Set<String> splitFilteredUnigram(String text) {
+        String cleaned = text != null ? text.toLowerCase().replaceAll("[\\pP\\d]", " ") : "";
+        String[] words = cleaned.split("[ \n\t\r$+<>№=]");
+
+        for (int i = 0; i < words.length; i++) {
+            words[i] = PorterStemmer.doStem(words[i]);
+        }
+
+        Set<String> uniqueValues = new LinkedHashSet<>(Arrays.asList(words));
+        uniqueValues.removeIf(s -> s.equals(""));
+
+        return uniqueValues;
+    }
+}